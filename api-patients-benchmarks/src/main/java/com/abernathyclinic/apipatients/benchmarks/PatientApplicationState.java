@@ -0,0 +1,74 @@
+package com.abernathyclinic.apipatients.benchmarks;
+
+import com.abernathyclinic.apipatients.MicroservicePatientsApplication;
+import com.abernathyclinic.apipatients.service.PatientService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Patients microservice started on an in-memory H2 database seeded with the given number of patients.
+ */
+@State(Scope.Benchmark)
+public class PatientApplicationState {
+    /** Passed as command line arguments so that they override the application.properties of the microservice. */
+    private static final String[] APPLICATION_ARGUMENTS = {
+            "--server.port=0",
+            "--spring.datasource.url=jdbc:h2:mem:patients;MODE=MySQL;DB_CLOSE_DELAY=-1",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=",
+            "--spring.datasource.driver-class-name=org.h2.Driver",
+            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "--spring.jpa.hibernate.ddl-auto=none",
+            "--spring.jpa.show-sql=false",
+            "--logging.level.root=WARN",
+            // benchmark threads are a single client
+            "--patients.throttling.rate-limit.enabled=false"
+    };
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    public ConfigurableApplicationContext context;
+    public PatientService                 patientService;
+    public MockMvc                        mockMvc;
+    public PatientSeeder                  seeder;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(MicroservicePatientsApplication.class)
+                .run(APPLICATION_ARGUMENTS);
+        DataSource dataSource = context.getBean(DataSource.class);
+        new ResourceDatabasePopulator(new ClassPathResource("database/h2-schema.sql")).execute(dataSource);
+        seeder = new PatientSeeder();
+        seeder.seed(new JdbcTemplate(dataSource), rows);
+        patientService = context.getBean(PatientService.class);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * @return ID of a random seeded patient
+     */
+    public int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, rows + 1);
+    }
+}
@@ -0,0 +1,36 @@
+package com.abernathyclinic.apipatients.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * End-to-end calls of PatientRestController through MockMvc: request mapping, service, database and JSON
+ * serialization, without the network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PatientRestControllerBenchmark {
+
+    @Benchmark
+    public MvcResult getPatient(PatientApplicationState state) throws Exception {
+        return state.mockMvc.perform(get("/patient/{id}", state.randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getPatients(PatientApplicationState state) throws Exception {
+        return state.mockMvc.perform(get("/patient").param("size", "50")).andReturn();
+    }
+}
@@ -0,0 +1,91 @@
+package com.abernathyclinic.apipatients.benchmarks;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Seeds the patients table with the patients of database/data.sql, repeated until the requested number of rows is
+ * reached. Repeated patients get a numbered given name so that natural keys stay unique.
+ */
+public final class PatientSeeder {
+    private static final String  DATA_SCRIPT    = "database/data.sql";
+    private static final Pattern PATIENT_VALUES = Pattern.compile(
+            "\\('([^']*)', '([^']*)', [\"']([^\"']*)[\"'], '([^']*)', '([^']*)', '([^']*)'\\)");
+    private static final String  INSERT_PATIENT = "INSERT INTO patients (family, given, date_of_birth, gender, address, phone)"
+            + " VALUES (?, ?, ?, ?, ?, ?)";
+    private static final int     BATCH_SIZE     = 5_000;
+
+    private final List<Patient> templates;
+
+    public PatientSeeder() {
+        this.templates = readTemplates();
+    }
+
+    /**
+     * Inserts patients, with IDs from 1 to the number of rows in an empty table.
+     *
+     * @param jdbcTemplate template on the benchmark database
+     * @param rows         number of patients to insert
+     */
+    public void seed(JdbcTemplate jdbcTemplate, int rows) {
+        List<Patient> batch = new ArrayList<>(BATCH_SIZE);
+        for (int row = 0; row < rows; row++) {
+            batch.add(patient(row));
+            if (batch.size() == BATCH_SIZE || row == rows - 1) {
+                jdbcTemplate.batchUpdate(INSERT_PATIENT, batch, batch.size(), (statement, patient) -> {
+                    statement.setString(1, patient.getFamily());
+                    statement.setString(2, patient.getGiven());
+                    statement.setDate(3, Date.valueOf(patient.getDob()));
+                    statement.setString(4, patient.getSex());
+                    statement.setString(5, patient.getAddress());
+                    statement.setString(6, patient.getPhone());
+                });
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Builds the patient of a row, without ID.
+     *
+     * @param row row number, starting at 0
+     * @return patient based on one of the data.sql patients
+     */
+    public Patient patient(long row) {
+        Patient template = templates.get((int) (row % templates.size()));
+        long copy = row / templates.size();
+        return new Patient(null, template.getFamily(), copy == 0 ? template.getGiven() : template.getGiven() + " " + copy,
+                template.getDob(), template.getSex(), template.getAddress(), template.getPhone());
+    }
+
+    private static List<Patient> readTemplates() {
+        String script;
+        try {
+            script = StreamUtils.copyToString(new ClassPathResource(DATA_SCRIPT).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException readException) {
+            throw new UncheckedIOException(readException);
+        }
+        List<Patient> patients = new ArrayList<>();
+        Matcher values = PATIENT_VALUES.matcher(script);
+        while (values.find()) {
+            patients.add(new Patient(null, values.group(1), values.group(2), LocalDate.parse(values.group(3)),
+                    values.group(4), values.group(5), values.group(6)));
+        }
+        if (patients.isEmpty()) {
+            throw new IllegalStateException("No patient found in " + DATA_SCRIPT);
+        }
+        return patients;
+    }
+}
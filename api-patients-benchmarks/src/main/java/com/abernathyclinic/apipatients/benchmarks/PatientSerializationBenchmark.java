@@ -0,0 +1,125 @@
+package com.abernathyclinic.apipatients.benchmarks;
+
+import com.abernathyclinic.apipatients.configuration.PatientProtobufHttpMessageConverter;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialization of patient lists with the message converters of the /patient API, in each of its formats, with and
+ * without gzip compression. The payload size of each format is printed when a trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientSerializationBenchmark {
+    private static final Type PATIENT_LIST = new ParameterizedTypeReference<List<Patient>>() { }.getType();
+
+    @Param({"50", "500", "5000"})
+    public int size;
+
+    @Param({"json", "smile", "cbor", "protobuf"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private GenericHttpMessageConverter<Object> converter;
+    private List<Patient>                       patients;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        converter = converter(format);
+        PatientSeeder seeder = new PatientSeeder();
+        patients = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            Patient patient = seeder.patient(row);
+            patient.setId(row + 1);
+            patient.setVersion(0);
+            patients.add(patient);
+        }
+        System.out.printf("%n%s, %d patients, gzip %s: %d bytes%n", format, size, gzip, serializePatients().length);
+    }
+
+    @Benchmark
+    public byte[] serializePatients() throws IOException {
+        BufferOutputMessage output = new BufferOutputMessage(gzip);
+        converter.write(patients, PATIENT_LIST, null, output);
+        return output.toByteArray();
+    }
+
+    private static GenericHttpMessageConverter<Object> converter(String format) {
+        // same object mapper configuration as Spring Boot, see ContentNegotiationConfig
+        return switch (format) {
+            case "json" -> new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+            case "smile" -> new MappingJackson2SmileHttpMessageConverter(Jackson2ObjectMapperBuilder.json()
+                    .factory(new SmileFactory()).build());
+            case "cbor" -> new MappingJackson2CborHttpMessageConverter(Jackson2ObjectMapperBuilder.json()
+                    .factory(new CBORFactory()).build());
+            case "protobuf" -> new PatientProtobufHttpMessageConverter(Jackson2ObjectMapperBuilder.json()
+                    .factory(new ProtobufFactory()).build());
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+    }
+
+    /**
+     * Response body kept in memory, gzip compressed like server.compression does when asked.
+     */
+    private static class BufferOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders           headers = new HttpHeaders();
+        private final ByteArrayOutputStream buffer  = new ByteArrayOutputStream(64 * 1024);
+        private final OutputStream          body;
+
+        BufferOutputMessage(boolean gzip) throws IOException {
+            body = gzip ? new GZIPOutputStream(buffer) : buffer;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        byte[] toByteArray() throws IOException {
+            body.close();
+            return buffer.toByteArray();
+        }
+    }
+}
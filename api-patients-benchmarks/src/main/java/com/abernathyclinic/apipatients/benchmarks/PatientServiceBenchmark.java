@@ -0,0 +1,54 @@
+package com.abernathyclinic.apipatients.benchmarks;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hot paths of PatientService against a seeded database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PatientServiceBenchmark {
+    private static final AtomicLong CREATED = new AtomicLong();
+
+    @Benchmark
+    public Patient createPatient(PatientApplicationState state) {
+        Patient patient = state.seeder.patient(ThreadLocalRandom.current().nextInt(state.rows));
+        patient.setFamily("Created " + CREATED.incrementAndGet());
+        return state.patientService.createPatient(patient);
+    }
+
+    @Benchmark
+    public Optional<Patient> getPatientById(PatientApplicationState state) {
+        return state.patientService.getPatientById(state.randomId());
+    }
+
+    @Benchmark
+    public PatientPage getPatients(PatientApplicationState state) {
+        return state.patientService.getPatients(null, 50);
+    }
+
+    @Benchmark
+    public Patient updatePatient(PatientApplicationState state) {
+        int id = state.randomId();
+        Patient patient = state.seeder.patient(id - 1);
+        patient.setId(id);
+        patient.setPhone(String.format("%03d-%03d-%04d", id % 1000, id / 1000 % 1000, ThreadLocalRandom.current().nextInt(10_000)));
+        return state.patientService.updatePatient(patient);
+    }
+}
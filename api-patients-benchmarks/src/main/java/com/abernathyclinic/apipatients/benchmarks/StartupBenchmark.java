@@ -0,0 +1,117 @@
+package com.abernathyclinic.apipatients.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the startup time of the patients microservice fat jar with the class data sharing image built by
+ * mvn package -Pcds. Each image is started several times, alternately, with patients.exit-after-startup so that it
+ * exits once started, and the times logged by Spring Boot are collected. Results are written as CSV to
+ * target/startup-result.csv.
+ * Arguments: number of runs per image, 5 by default, then the api-patients module directory, ../api-patients by
+ * default.
+ */
+public final class StartupBenchmark {
+    private static final String  RESULT_FILE     = "target/startup-result.csv";
+    private static final Pattern STARTED         = Pattern.compile(
+            "Started \\S+ in ([0-9.]+) seconds \\(JVM running for ([0-9.]+)\\)");
+    private static final long    TIMEOUT_MINUTES = 5;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path module = Path.of(args.length > 1 ? args[1] : "../api-patients").toAbsolutePath().normalize();
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        Map<String, List<String>> images = new LinkedHashMap<>();
+        images.put("fat-jar", List.of(java, "-jar", jar(module.resolve("target"), "-exec.jar").toString()));
+        Path cds = module.resolve("target/cds");
+        images.put("cds", List.of(java, "-XX:SharedArchiveFile=" + cds.resolve("api-patients.jsa"),
+                "-jar", cds.resolve("api-patients-cds.jar").toString()));
+
+        Map<String, List<double[]>> timings = new LinkedHashMap<>();
+        images.keySet().forEach(image -> timings.put(image, new ArrayList<>()));
+        for (int run = 1; run <= runs; run++) {
+            for (Map.Entry<String, List<String>> image : images.entrySet()) {
+                double[] timing = start(image.getValue());
+                timings.get(image.getKey()).add(timing);
+                System.out.printf(Locale.ROOT, "%-8s run %d: started in %.3f s, JVM running for %.3f s%n",
+                        image.getKey(), run, timing[0], timing[1]);
+            }
+        }
+
+        Files.createDirectories(Path.of(RESULT_FILE).getParent());
+        try (PrintWriter result = new PrintWriter(Files.newBufferedWriter(Path.of(RESULT_FILE)))) {
+            result.println("image,run,started_seconds,jvm_seconds");
+            System.out.printf("%n%-8s %12s %12s %12s%n", "image", "median (s)", "min (s)", "max (s)");
+            for (Map.Entry<String, List<double[]>> image : timings.entrySet()) {
+                List<double[]> imageTimings = image.getValue();
+                for (int run = 0; run < imageTimings.size(); run++) {
+                    result.printf(Locale.ROOT, "%s,%d,%.3f,%.3f%n", image.getKey(), run + 1,
+                            imageTimings.get(run)[0], imageTimings.get(run)[1]);
+                }
+                double[] jvmSeconds = imageTimings.stream().mapToDouble(timing -> timing[1]).sorted().toArray();
+                System.out.printf(Locale.ROOT, "%-8s %12.3f %12.3f %12.3f%n", image.getKey(),
+                        jvmSeconds[jvmSeconds.length / 2], jvmSeconds[0], jvmSeconds[jvmSeconds.length - 1]);
+            }
+        }
+    }
+
+    private static Path jar(Path directory, String suffix) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No *" + suffix + " in " + directory
+                            + ", build it with mvn package"));
+        }
+    }
+
+    /**
+     * Starts the application once and waits for it to exit.
+     *
+     * @param command java command line of the image
+     * @return seconds to start the application context, then seconds since the JVM start, as logged by Spring Boot
+     */
+    private static double[] start(List<String> command) throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--patients.exit-after-startup=true");
+        arguments.add("--server.port=0");
+        File workingDirectory = Path.of(command.get(command.size() - 1)).getParent().toFile();
+        Process process = new ProcessBuilder(arguments).directory(workingDirectory).redirectErrorStream(true).start();
+        double[] timing = null;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                Matcher started = STARTED.matcher(line);
+                if (started.find()) {
+                    timing = new double[]{Double.parseDouble(started.group(1)), Double.parseDouble(started.group(2))};
+                }
+            }
+        } finally {
+            if (!process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+            }
+        }
+        if (timing == null) {
+            throw new IllegalStateException("Application did not start: " + String.join(" ", command));
+        }
+        return timing;
+    }
+}
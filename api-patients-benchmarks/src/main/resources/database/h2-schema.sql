@@ -0,0 +1,26 @@
+-- H2 version of api-patients database/schema.sql used by benchmarks
+CREATE TABLE patients (
+    patient_id INT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    family VARCHAR(50) NOT NULL,
+    given VARCHAR(50) NOT NULL,
+    date_of_birth DATE NOT NULL,
+    gender VARCHAR(1),
+    address VARCHAR(100),
+    phone VARCHAR(50),
+    version INT NOT NULL DEFAULT 0,
+    blocking_key VARCHAR(12)
+);
+CREATE UNIQUE INDEX uk_patients_natural_key ON patients (family, given, date_of_birth);
+CREATE INDEX ix_patients_blocking_key ON patients (blocking_key);
+CREATE TABLE patient_changes (
+    change_id BIGINT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    patient_id INT NOT NULL,
+    change_type VARCHAR(6) NOT NULL,
+    version INT,
+    changed_at TIMESTAMP(3) NOT NULL
+);
+CREATE INDEX ix_patient_changes_changed_at ON patient_changes (changed_at);
+CREATE TABLE patient_id_blocks (
+    shard INT NOT NULL PRIMARY KEY,
+    next_block BIGINT NOT NULL
+);
@@ -2,12 +2,19 @@ package com.abernathyclinic.apipatients;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MicroservicePatientsApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(MicroservicePatientsApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(MicroservicePatientsApplication.class, args);
+		// patients.exit-after-startup stops the application once started, to train the CDS archive or time startup
+		if (context.getEnvironment().getProperty("patients.exit-after-startup", Boolean.class, false)) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -0,0 +1,25 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Enables the Caffeine caches in front of the patient repository. Size, time to live and statistics are set by the
+ * spring.cache.caffeine.spec property.
+ * <p>
+ * The caching advice runs outside the transaction advice so that evictions happen once the transaction is committed,
+ * otherwise a concurrent read could cache the patient as it was before the commit.
+ */
+@Configuration
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
+public class CacheConfig {
+    /**
+     * Patients by ID.
+     */
+    public static final String PATIENTS                = "patients";
+    /**
+     * Patients by family name, given name and date of birth.
+     */
+    public static final String PATIENTS_BY_NATURAL_KEY = "patientsByNaturalKey";
+}
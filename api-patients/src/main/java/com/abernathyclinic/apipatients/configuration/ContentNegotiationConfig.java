@@ -0,0 +1,55 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Lets clients pick a compact encoding of patients with the Accept header: Smile (application/x-jackson-smile) and
+ * CBOR (application/cbor), binary forms of the JSON documents, or Protocol Buffers (application/x-protobuf) following
+ * proto/patient.proto. JSON stays the default, the binary converters come after the JSON one.
+ * <p>
+ * Binary encodings are configured like the JSON one, with the spring.jackson properties.
+ */
+@Configuration
+public class ContentNegotiationConfig implements WebMvcConfigurer {
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder;
+
+    public ContentNegotiationConfig(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder) {
+        this.objectMapperBuilder = objectMapperBuilder;
+    }
+
+    /**
+     * Replaces the object mappers of the Smile and CBOR converters Spring MVC registers by default, and adds the
+     * Protocol Buffers converter last.
+     *
+     * @param converters converters of Spring MVC
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2SmileHttpMessageConverter smileConverter) {
+                smileConverter.setObjectMapper(builder().factory(new SmileFactory()).build());
+            } else if (converter instanceof MappingJackson2CborHttpMessageConverter cborConverter) {
+                cborConverter.setObjectMapper(builder().factory(new CBORFactory()).build());
+            }
+        }
+        converters.add(new PatientProtobufHttpMessageConverter(builder().factory(new ProtobufFactory()).build()));
+    }
+
+    /**
+     * @return Spring Boot configured builder, a new one each time
+     */
+    private Jackson2ObjectMapperBuilder builder() {
+        return objectMapperBuilder.getIfAvailable(Jackson2ObjectMapperBuilder::new);
+    }
+}
@@ -0,0 +1,28 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Rejects the requests that do not come from the local host with 403 Forbidden. Guards the actuator endpoints which
+ * change the application, such as loggers, the service having no Spring Security.
+ */
+public class LocalOnlyFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress()) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Only available from the local host.");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
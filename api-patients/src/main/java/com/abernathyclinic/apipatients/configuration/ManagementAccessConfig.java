@@ -0,0 +1,25 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.springframework.boot.actuate.autoconfigure.endpoint.web.WebEndpointProperties;
+import org.springframework.boot.actuate.autoconfigure.web.ManagementContextConfiguration;
+import org.springframework.boot.actuate.autoconfigure.web.ManagementContextType;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Configures the management context, which runs on the management port (management.server.port). Prometheus and
+ * health stay reachable by the monitoring hosts, while the loggers endpoint, which changes log levels, only answers
+ * local callers, see LocalOnlyFilter. Registered in
+ * META-INF/spring/org.springframework.boot.actuate.autoconfigure.web.ManagementContextConfiguration.imports.
+ */
+@ManagementContextConfiguration(value = ManagementContextType.ANY, proxyBeanMethods = false)
+public class ManagementAccessConfig {
+
+    @Bean
+    public FilterRegistrationBean<LocalOnlyFilter> localOnlyLoggersFilter(WebEndpointProperties webEndpointProperties) {
+        String loggers = webEndpointProperties.getBasePath() + "/loggers";
+        FilterRegistrationBean<LocalOnlyFilter> registration = new FilterRegistrationBean<>(new LocalOnlyFilter());
+        registration.addUrlPatterns(loggers, loggers + "/*");
+        return registration;
+    }
+}
@@ -0,0 +1,55 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics of the patients microservice, exposed with the Hikari, cache, Hibernate and HTTP request metrics of Spring
+ * Boot on /actuator/prometheus. Percentile histograms are enabled in application.properties.
+ */
+@Configuration
+public class MetricsConfig {
+    /**
+     * Timer of the PatientService methods, tagged with class, method and exception.
+     */
+    public static final String SERVICE_TIMER   = "patients.service";
+    /**
+     * Counter of the handled patient exceptions, tagged with exception.
+     */
+    public static final String EXCEPTIONS      = "patients.exceptions";
+    /**
+     * Counter of the coalesced reads, tagged with read and outcome (leader, shared or timeout), see SingleFlight.
+     */
+    public static final String SINGLE_FLIGHT   = "patients.single.flight";
+    /**
+     * Counter of the possible duplicates found, tagged with source (create or import), see PatientDuplicateDetector.
+     */
+    public static final String DUPLICATES      = "patients.duplicates";
+    /**
+     * Counter of the requests rejected with 429 Too Many Requests, tagged with reason (rate-limit or bulkhead) and
+     * bulkhead, see ThrottlingInterceptor.
+     */
+    public static final String THROTTLED       = "patients.throttled";
+    /**
+     * Gauge of the calls in progress in each bulkhead, tagged with bulkhead.
+     */
+    public static final String BULKHEAD_ACTIVE = "patients.bulkhead.active";
+    /**
+     * Counter of the patients counted differently by the demographic statistics than by the database when they are
+     * reconciled, see PatientStatistics.
+     */
+    public static final String STATS_DRIFT     = "patients.stats.drift";
+
+    /**
+     * Records the methods annotated with @Timed.
+     *
+     * @param meterRegistry registry of the application
+     * @return aspect timing the annotated methods
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -0,0 +1,126 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads and writes patients as Protocol Buffers messages of the proto/patient.proto schema, with Jackson so that
+ * the model classes need no generated code. A patient is a Patient message, a list of patients a PatientList message
+ * and a batch a PatientBatch message.
+ */
+public class PatientProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final String    APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+    public static final MediaType APPLICATION_PROTOBUF       = MediaType.parseMediaType(APPLICATION_PROTOBUF_VALUE);
+    private static final String   SCHEMA                     = "proto/patient.proto";
+
+    private final ObjectMapper   objectMapper;
+    private final ProtobufSchema patientSchema;
+    private final ProtobufSchema patientListSchema;
+    private final ProtobufSchema patientBatchSchema;
+
+    /**
+     * @param objectMapper object mapper with a ProtobufFactory, configured like the JSON one
+     */
+    public PatientProtobufHttpMessageConverter(ObjectMapper objectMapper) {
+        super(APPLICATION_PROTOBUF);
+        if (!(objectMapper.getFactory() instanceof ProtobufFactory)) {
+            throw new IllegalArgumentException("Object mapper must use a ProtobufFactory.");
+        }
+        this.objectMapper = objectMapper;
+        NativeProtobufSchema schema;
+        try (InputStream proto = new ClassPathResource(SCHEMA).getInputStream()) {
+            schema = ProtobufSchemaLoader.std.loadNative(proto, true);
+        } catch (IOException loadException) {
+            throw new UncheckedIOException("Could not load " + SCHEMA, loadException);
+        }
+        patientSchema = schema.forType("Patient");
+        patientListSchema = schema.forType("PatientList");
+        patientBatchSchema = schema.forType("PatientBatch");
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return schemaFor(clazz) != null;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return schemaFor(type) == patientSchema && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return schemaFor(type != null ? type : clazz) != null && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return readInternal(Patient.class, inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return objectMapper.readerFor(Patient.class).with(patientSchema).readValue(inputMessage.getBody());
+        } catch (IOException readException) {
+            throw new HttpMessageNotReadableException("Invalid Protocol Buffers patient: " + readException.getMessage(),
+                    readException, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        ProtobufSchema schema = schemaFor(type != null ? type : value.getClass());
+        if (schema == null) {
+            throw new HttpMessageNotWritableException("No Protocol Buffers message for " + type);
+        }
+        // lists are wrapped, a message cannot be repeated at the root
+        Object message = schema == patientListSchema ? Map.of("patients", value) : value;
+        // dob is a string field, whatever the JSON configuration
+        byte[] body = objectMapper.writer(schema).without(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .writeValueAsBytes(message);
+        outputMessage.getHeaders().setContentLength(body.length);
+        StreamUtils.copy(body, outputMessage.getBody());
+    }
+
+    /**
+     * @return schema of the message of a type, null if the type has no message
+     */
+    private ProtobufSchema schemaFor(Type type) {
+        ResolvableType resolvableType = ResolvableType.forType(type);
+        Class<?> clazz = resolvableType.resolve(Object.class);
+        if (Patient.class.isAssignableFrom(clazz)) {
+            return patientSchema;
+        }
+        if (PatientBatch.class.isAssignableFrom(clazz)) {
+            return patientBatchSchema;
+        }
+        if (Collection.class.isAssignableFrom(clazz)) {
+            Class<?> elementClass = resolvableType.asCollection().resolveGeneric(0);
+            return elementClass != null && Patient.class.isAssignableFrom(elementClass) ? patientListSchema : null;
+        }
+        return null;
+    }
+}
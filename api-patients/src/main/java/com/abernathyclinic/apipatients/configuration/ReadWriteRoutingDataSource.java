@@ -0,0 +1,132 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Sends read-only transactions to a replica and everything else to the primary database. Must be wrapped in a
+ * LazyConnectionDataSourceProxy so that the connection is only fetched once the transaction is read-only or not.
+ * <p>
+ * The sessions that wrote are remembered during the read-your-writes window, and their reads stay on the primary
+ * database meanwhile. The current session is set by ReadYourWritesFilter. Reads whose results are cached for every
+ * session also go to the primary database, see readFromPrimary.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    private static final String               PRIMARY       = "primary";
+    private static final ThreadLocal<String>  SESSION       = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final List<HikariDataSource>      replicas;
+    private final ReplicaProperties.Selection selection;
+    private final AtomicInteger               nextReplica = new AtomicInteger();
+    private final Cache<String, Boolean>      recentWriters;
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                      ReplicaProperties.Selection selection, Duration readYourWritesWindow) {
+        this.replicas = List.copyOf(replicas);
+        this.selection = selection;
+        this.recentWriters = readYourWritesWindow.isZero() ? null
+                : Caffeine.newBuilder().expireAfterWrite(readYourWritesWindow).build();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int index = 0; index < replicas.size(); index++) {
+            targets.put(index, replicas.get(index));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Sets the session of the current thread, for read-your-writes consistency.
+     *
+     * @param session session identifier, null to clear it
+     */
+    public static void setCurrentSession(String session) {
+        if (session == null) {
+            SESSION.remove();
+        } else {
+            SESSION.set(session);
+        }
+    }
+
+    /**
+     * Sends the read-only transactions started by reads to the primary database. Used for the reads that populate the
+     * patient caches: a replica lagging behind a write would otherwise cache the previous patient for every session
+     * once the write evicted it.
+     *
+     * @param reads reads starting their own transactions
+     * @return result of the reads
+     */
+    public static <T> T readFromPrimary(Supplier<T> reads) {
+        Boolean previous = PRIMARY_READS.get();
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_READS.remove();
+            }
+        }
+    }
+
+    /**
+     * Tells whether the session of the current thread wrote during the read-your-writes window. Its reads must then
+     * not share the result of a read started by another session, possibly before the write.
+     *
+     * @return true if the reads of the current session stay on the primary database
+     */
+    public boolean isCurrentSessionPinned() {
+        String session = SESSION.get();
+        return recentWriters != null && session != null && recentWriters.getIfPresent(session) != null;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String session = SESSION.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (recentWriters != null && session != null) {
+                recentWriters.put(session, Boolean.TRUE);
+            }
+            return PRIMARY;
+        }
+        if (replicas.isEmpty() || PRIMARY_READS.get() != null || isCurrentSessionPinned()) {
+            return PRIMARY;
+        }
+        return selection == ReplicaProperties.Selection.LEAST_CONNECTIONS ? leastConnectedReplica() : roundRobinReplica();
+    }
+
+    private int roundRobinReplica() {
+        return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+    }
+
+    private int leastConnectedReplica() {
+        return IntStream.range(0, replicas.size()).boxed()
+                .min(Comparator.comparingInt(index -> activeConnections(replicas.get(index))))
+                .orElseThrow();
+    }
+
+    private static int activeConnections(HikariDataSource replica) {
+        // the pool MX bean is only available once the pool is started
+        return replica.getHikariPoolMXBean() == null ? 0 : replica.getHikariPoolMXBean().getActiveConnections();
+    }
+
+    /**
+     * Closes the replica pools, the primary pool is a bean of its own.
+     */
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+    }
+}
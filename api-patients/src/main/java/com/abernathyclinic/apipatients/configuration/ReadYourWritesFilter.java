@@ -0,0 +1,37 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+/**
+ * Identifies the session of a request for read-your-writes consistency: the HTTP session of the web pages, or the
+ * X-Session-Id header that other services can send.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    /**
+     * Header identifying the session of a client without HTTP session.
+     */
+    public static final String SESSION_HEADER = "X-Session-Id";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String session = request.getHeader(SESSION_HEADER);
+        HttpSession httpSession = request.getSession(false);
+        if (session == null && httpSession != null) {
+            session = httpSession.getId();
+        }
+        ReadWriteRoutingDataSource.setCurrentSession(session);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadWriteRoutingDataSource.setCurrentSession(null);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas of the patients database, see ReplicaDataSourceConfig.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "patients.datasource")
+public class ReplicaProperties {
+    /**
+     * How a replica is chosen for a read-only transaction.
+     */
+    public enum Selection {
+        ROUND_ROBIN,
+        LEAST_CONNECTIONS
+    }
+
+    /**
+     * Replicas, read-only transactions stay on the primary database if there is none.
+     */
+    private List<Replica> replicas = new ArrayList<>();
+    private Selection     selection = Selection.ROUND_ROBIN;
+    /**
+     * Time during which the reads of a session that wrote go to the primary database, so that they see their writes
+     * whatever the replication lag. Disabled if zero.
+     */
+    private Duration      readYourWritesWindow = Duration.ZERO;
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
@@ -0,0 +1,76 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends connections to the shard selected for the current thread, the first shard if none is. Must be wrapped in a
+ * LazyConnectionDataSourceProxy so that the connection of a transaction is only fetched once its shard is selected.
+ * Shards are selected by PatientShards.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    private final List<HikariDataSource> otherShards;
+
+    /**
+     * @param firstShard  shard 0, a bean of its own
+     * @param otherShards shards 1 to n, closed with this data source
+     */
+    public ShardRoutingDataSource(DataSource firstShard, List<HikariDataSource> otherShards) {
+        this.otherShards = List.copyOf(otherShards);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(0, firstShard);
+        for (int index = 0; index < otherShards.size(); index++) {
+            targets.put(index + 1, otherShards.get(index));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(firstShard);
+    }
+
+    /**
+     * Selects the shard of the current thread.
+     *
+     * @param shard shard index, null to clear it
+     */
+    public static void setCurrentShard(Integer shard) {
+        if (shard == null) {
+            SHARD.remove();
+        } else {
+            SHARD.set(shard);
+        }
+    }
+
+    /**
+     * @return shard selected for the current thread, null if none is
+     */
+    public static Integer getCurrentShard() {
+        return SHARD.get();
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return otherShards.size() + 1;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = SHARD.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Closes the pools of the shards after the first one.
+     */
+    @Override
+    public void close() {
+        otherShards.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,61 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash sharding of the patients, enabled when a second shard is configured with patients.sharding.shards[n].url. The
+ * database configured with the spring.datasource properties is shard 0. Each patient lives on the shard of their ID,
+ * see PatientShards. Cannot be combined with read replicas.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(prefix = "patients.sharding", name = "shards[0].url")
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource firstShardDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource firstShardDataSource,
+                                                         ShardingProperties shardingProperties) {
+        List<HikariDataSource> otherShards = new ArrayList<>();
+        for (ShardingProperties.Shard shard : shardingProperties.getShards()) {
+            HikariDataSource shardDataSource = new HikariDataSource();
+            shardDataSource.setPoolName("shard-" + (otherShards.size() + 1));
+            shardDataSource.setJdbcUrl(shard.getUrl());
+            shardDataSource.setUsername(shard.getUsername());
+            shardDataSource.setPassword(shard.getPassword());
+            shardDataSource.setDriverClassName(firstShardDataSource.getDriverClassName());
+            shardDataSource.setMaximumPoolSize(firstShardDataSource.getMaximumPoolSize());
+            shardDataSource.setConnectionTimeout(firstShardDataSource.getConnectionTimeout());
+            otherShards.add(shardDataSource);
+        }
+        return new ShardRoutingDataSource(firstShardDataSource, otherShards);
+    }
+
+    /**
+     * Data source used by JPA and JdbcTemplate.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+}
@@ -0,0 +1,29 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shards of the patients database, see ShardingConfig.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "patients.sharding")
+public class ShardingProperties {
+    /**
+     * Shards after the first one, which is the database configured with the spring.datasource properties.
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Shard {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
@@ -1,15 +1,25 @@
 package com.abernathyclinic.apipatients.configuration;
 
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfoHandlerMapping;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
+import springfox.documentation.spring.web.plugins.WebMvcRequestHandlerProvider;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+import java.lang.reflect.Field;
+import java.util.List;
+
 @Configuration
 @EnableSwagger2
+@Profile("!reactive")
 public class SwaggerConfig {
 	@Bean
 	public Docket api() {
@@ -19,4 +29,30 @@ public class SwaggerConfig {
 				.paths(PathSelectors.regex("/patient.*"))
 				.build();
 	}
+
+	/**
+	 * Hides the actuator handler mappings from Springfox, which fails on mappings using path patterns.
+	 *
+	 * @return post processor of the Springfox request handler provider
+	 */
+	@Bean
+	public static BeanPostProcessor springfoxHandlerProviderBeanPostProcessor() {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+				if (bean instanceof WebMvcRequestHandlerProvider) {
+					List<RequestMappingInfoHandlerMapping> mappings = handlerMappings(bean);
+					mappings.removeIf(mapping -> mapping.getPatternParser() != null);
+				}
+				return bean;
+			}
+
+			@SuppressWarnings("unchecked")
+			private List<RequestMappingInfoHandlerMapping> handlerMappings(Object bean) {
+				Field field = ReflectionUtils.findField(bean.getClass(), "handlerMappings");
+				ReflectionUtils.makeAccessible(field);
+				return (List<RequestMappingInfoHandlerMapping>) ReflectionUtils.getField(field, bean);
+			}
+		};
+	}
 }
@@ -0,0 +1,74 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs servlet requests, and the PatientService calls they make, on virtual threads when patients.threads.mode is
+ * virtual. Requests blocked on database I/O then no longer hold a Tomcat worker thread, so concurrency is bounded by
+ * the Hikari pool instead, see spring.datasource.hikari.maximum-pool-size.
+ * <p>
+ * Virtual threads need Java 21 or later: on an older runtime the application fails to start rather than running
+ * requests on unbounded platform threads. The executor is shut down when the context stops, Tomcat does not shut
+ * down executors it did not create.
+ */
+@Configuration
+@ConditionalOnProperty(name = "patients.threads.mode", havingValue = "virtual")
+public class ThreadingConfig {
+    private final ExecutorService virtualThreads;
+
+    public ThreadingConfig() {
+        this.virtualThreads = virtualThreadPerTaskExecutor().orElseThrow(() -> new IllegalStateException(
+                "Virtual threads are not available on Java " + Runtime.version().feature()
+                        + ", patients.threads.mode=virtual needs Java 21 or later."));
+    }
+
+    /**
+     * Replaces the Tomcat worker pool by a virtual thread per request.
+     *
+     * @return customizer of the Tomcat connector
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreads);
+    }
+
+    /**
+     * Runs asynchronous requests, such as the streamed patient listing, on virtual threads as well.
+     *
+     * @return executor used by Spring MVC for asynchronous requests
+     */
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(virtualThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreads.shutdown();
+    }
+
+    /**
+     * Looks the virtual thread executor up by reflection so that the application still compiles on Java 17.
+     *
+     * @return executor starting a virtual thread per task, empty if the runtime has no virtual threads
+     */
+    static Optional<ExecutorService> virtualThreadPerTaskExecutor() {
+        try {
+            return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException unavailable) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler method whose requests are rate limited per client and run in the bulkhead of their category, see
+ * ThrottlingInterceptor.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Throttled {
+    /**
+     * Kinds of requests, each with its own bulkhead.
+     */
+    enum Category {
+        /**
+         * Requests reading many patients: listing, search, export.
+         */
+        LISTING,
+        /**
+         * Requests reading patients by ID.
+         */
+        READ,
+        /**
+         * Requests creating, updating, deleting or importing patients.
+         */
+        WRITE
+    }
+
+    Category value();
+}
@@ -0,0 +1,56 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.service.Bulkhead;
+import com.abernathyclinic.apipatients.service.TokenBucketRateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps a client flooding the patient API from starving the other clients and the patient web pages: each client is
+ * rate limited, and listings, reads by ID and writes run in separate bulkheads, so that an overload of one kind of
+ * request is rejected with 429 Too Many Requests instead of taking every Tomcat thread and Hikari connection.
+ * <p>
+ * Listings and exports hold a connection while they stream, up to spring.mvc.async.request-timeout, so the bulkheads
+ * together must stay below the Hikari pool, leaving connections to the patient web pages and background jobs.
+ */
+@Slf4j
+@Configuration
+@Profile("!reactive")
+@EnableConfigurationProperties(ThrottlingProperties.class)
+public class ThrottlingConfig implements WebMvcConfigurer {
+    private final ThrottlingProperties throttlingProperties;
+    private final int                  maximumPoolSize;
+
+    public ThrottlingConfig(ThrottlingProperties throttlingProperties,
+                            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maximumPoolSize) {
+        this.throttlingProperties = throttlingProperties;
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        ThrottlingProperties.RateLimit rateLimit = throttlingProperties.getRateLimit();
+        TokenBucketRateLimiter rateLimiter = rateLimit.isEnabled()
+                ? new TokenBucketRateLimiter(rateLimit.getRequestsPerSecond(), rateLimit.getBurst(), rateLimit.getStripes())
+                : null;
+        int bulkheadsSize = throttlingProperties.getBulkheads().values().stream().mapToInt(Integer::intValue).sum();
+        if (throttlingProperties.getBulkheads().size() < Throttled.Category.values().length || bulkheadsSize >= maximumPoolSize) {
+            log.warn("The patient API bulkheads can take the {} database connections, the patient web pages may wait for them.",
+                    maximumPoolSize);
+        }
+        Map<Throttled.Category, Bulkhead> bulkheads = new EnumMap<>(Throttled.Category.class);
+        throttlingProperties.getBulkheads().forEach((category, maxConcurrentCalls) ->
+                bulkheads.put(category, new Bulkhead(category.name().toLowerCase(Locale.ROOT), maxConcurrentCalls)));
+        registry.addInterceptor(new ThrottlingInterceptor(rateLimiter, rateLimit.getClientHeader(),
+                rateLimit.getTrustedProxies(), bulkheads, throttlingProperties.getBulkheadRetryAfter()));
+    }
+}
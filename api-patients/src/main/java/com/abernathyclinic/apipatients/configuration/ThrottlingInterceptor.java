@@ -0,0 +1,99 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.exceptions.TooManyRequestsException;
+import com.abernathyclinic.apipatients.service.Bulkhead;
+import com.abernathyclinic.apipatients.service.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rejects the requests of the handler methods annotated with {@link Throttled} with a TooManyRequestsException, so
+ * a 429 Too Many Requests response, when their client exceeds its rate or when their bulkhead is full. Rejections are
+ * counted by the {@value MetricsConfig#THROTTLED} counter.
+ * <p>
+ * The bulkhead is held until the request completes, including the streaming of asynchronous responses. Clients are
+ * identified by the client header only on requests of trusted proxies, by their address otherwise.
+ */
+@Slf4j
+public class ThrottlingInterceptor implements AsyncHandlerInterceptor {
+    private static final String BULKHEAD_ATTRIBUTE = ThrottlingInterceptor.class.getName() + ".bulkhead";
+
+    private final TokenBucketRateLimiter            rateLimiter;
+    private final String                            clientHeader;
+    private final Set<String>                       trustedProxies;
+    private final Map<Throttled.Category, Bulkhead> bulkheads;
+    private final Duration                          bulkheadRetryAfter;
+
+    /**
+     * @param rateLimiter        rate limiter of the clients, null to disable rate limiting
+     * @param clientHeader       header identifying the client, the client address is used without it
+     * @param trustedProxies     addresses whose client header is trusted
+     * @param bulkheads          bulkhead of each category, unlimited for a missing category
+     * @param bulkheadRetryAfter Retry-After of the requests rejected because their bulkhead is full
+     */
+    public ThrottlingInterceptor(TokenBucketRateLimiter rateLimiter, String clientHeader, Set<String> trustedProxies,
+                                 Map<Throttled.Category, Bulkhead> bulkheads, Duration bulkheadRetryAfter) {
+        this.rateLimiter = rateLimiter;
+        this.clientHeader = clientHeader;
+        this.trustedProxies = Set.copyOf(trustedProxies);
+        this.bulkheads = bulkheads;
+        this.bulkheadRetryAfter = bulkheadRetryAfter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the dispatch ending an asynchronous request was admitted with the request
+        if (!(handler instanceof HandlerMethod handlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        Throttled throttled = handlerMethod.getMethodAnnotation(Throttled.class);
+        if (throttled == null) {
+            return true;
+        }
+        if (rateLimiter != null) {
+            String client = client(request);
+            Duration retryAfter = rateLimiter.tryAcquire(client);
+            if (!retryAfter.isZero()) {
+                log.debug("Client {} exceeded its request rate", client);
+                Metrics.counter(MetricsConfig.THROTTLED, "reason", "rate-limit", "bulkhead", "none").increment();
+                throw new TooManyRequestsException("Request rate exceeded, please slow down.", retryAfter);
+            }
+        }
+        Bulkhead bulkhead = bulkheads.get(throttled.value());
+        if (bulkhead == null) {
+            return true;
+        }
+        if (!bulkhead.tryAcquire()) {
+            log.debug("Too many concurrent {} requests", bulkhead.getName());
+            Metrics.counter(MetricsConfig.THROTTLED, "reason", "bulkhead", "bulkhead", bulkhead.getName()).increment();
+            throw new TooManyRequestsException("Too many concurrent requests, please try again later.", bulkheadRetryAfter);
+        }
+        request.setAttribute(BULKHEAD_ATTRIBUTE, bulkhead);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(BULKHEAD_ATTRIBUTE) instanceof Bulkhead bulkhead) {
+            request.removeAttribute(BULKHEAD_ATTRIBUTE);
+            bulkhead.release();
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        if (!trustedProxies.contains(request.getRemoteAddr())) {
+            return request.getRemoteAddr();
+        }
+        String client = request.getHeader(clientHeader);
+        return client != null && !client.isBlank() ? client : request.getRemoteAddr();
+    }
+}
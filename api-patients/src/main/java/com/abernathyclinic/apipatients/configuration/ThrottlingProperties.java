@@ -0,0 +1,56 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rate limits and bulkheads of the patient API, see ThrottlingConfig.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "patients.throttling")
+public class ThrottlingProperties {
+    private RateLimit                        rateLimit = new RateLimit();
+    /**
+     * Maximum number of concurrent requests of each category, unlimited for a missing category.
+     */
+    private Map<Throttled.Category, Integer> bulkheads = new EnumMap<>(Throttled.Category.class);
+    /**
+     * Retry-After of the requests rejected because their bulkhead is full.
+     */
+    private Duration                         bulkheadRetryAfter = Duration.ofSeconds(1);
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+        private boolean     enabled = true;
+        /**
+         * Sustained request rate of each client.
+         */
+        private double      requestsPerSecond = 50;
+        /**
+         * Requests a client can make at once after being idle.
+         */
+        private int         burst = 100;
+        /**
+         * Number of token buckets clients are spread over, clients sharing a bucket share its rate.
+         */
+        private int         stripes = 1024;
+        /**
+         * Header identifying the client, the client address is used without it.
+         */
+        private String      clientHeader = "X-Client-Id";
+        /**
+         * Addresses of the proxies, such as the gateway, trusted to send the client header. The header is ignored on
+         * requests from other addresses, so that clients cannot take another identity to escape their rate limit.
+         */
+        private Set<String> trustedProxies = new LinkedHashSet<>();
+    }
+}
@@ -1,10 +1,18 @@
 package com.abernathyclinic.apipatients.controller;
 
 import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
+import com.abernathyclinic.apipatients.exceptions.ExceptionCounter;
 import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
 import com.abernathyclinic.apipatients.model.Patient;
 import com.abernathyclinic.apipatients.service.PatientService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -15,25 +23,48 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import javax.validation.Valid;
 import java.util.Optional;
+import java.util.Set;
 
 @Controller
+@Profile("!reactive")
 public class PatientController {
+    /**
+     * Patient properties the list page can be sorted on.
+     */
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of("family", "given", "dob", "sex");
 
     @Autowired
     private PatientService patientService;
 
     /**
-     * Home page for patients. It shows the list of patients from database.
+     * Home page for patients. It shows one page of the list of patients from database.
      *
-     * @param model holder for context data to be passed from controller to the view, contains list of patients
+     * @param model    holder for context data to be passed from controller to the view, contains the page of patients
+     * @param pageable page number, size and sort requested with the page, size and sort parameters
      * @return patients list page
      */
     @GetMapping({"/", "/patient/list"})
-    public String home(Model model) {
-        model.addAttribute("patients", patientService.getPatients());
+    public String home(Model model, @PageableDefault(size = 10, sort = "family") Pageable pageable) {
+        Page<Patient> page = patientService.getPatients(sanitize(pageable));
+        model.addAttribute("page", page);
+        model.addAttribute("patients", page.getContent());
         return "patient/list";
     }
 
+    /**
+     * Keeps only sort orders on sortable properties and adds the ID as tie-breaker so that pages are stable.
+     *
+     * @param pageable requested page
+     * @return page to read
+     */
+    private Pageable sanitize(Pageable pageable) {
+        Sort sort = Sort.by(pageable.getSort().filter(order -> SORTABLE_PROPERTIES.contains(order.getProperty())).toList());
+        if (sort.isUnsorted()) {
+            sort = Sort.by("family");
+        }
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort.and(Sort.by("id")));
+    }
+
     /**
      * Shows add patient form. User should provide at least a family name, a given name and a date of birth
      *
@@ -50,18 +81,17 @@ public class PatientController {
      *
      * @param patient            patient to be added
      * @param result             result of form validation
-     * @param model              holder for context data to be passed from controller to the view, contains list of patients
      * @param redirectAttributes redirection attributes, contains success popup
      * @return add patient page if an error occurred, list of patients otherwise
      */
     @PostMapping("/patient/add")
-    public String addPatient(@Valid Patient patient, BindingResult result, Model model, RedirectAttributes redirectAttributes) {
+    public String addPatient(@Valid Patient patient, BindingResult result, RedirectAttributes redirectAttributes) {
         if (!result.hasErrors()) {
             try {
                 patientService.createPatient(patient);
                 redirectAttributes.addFlashAttribute("success", "Patient " + patient.getFamily() + " " + patient.getGiven() + " was successfully created.");
-                model.addAttribute("patients", patientService.getPatients());
             } catch (AlreadyExistsException alreadyExistsException) {
+                ExceptionCounter.count(alreadyExistsException);
                 redirectAttributes.addFlashAttribute("error", "Error while trying to add patient " + patient.getFamily() + " " + patient.getGiven() + ":\n"+ alreadyExistsException.getMessage());
             }
             // redirect to list of patients page
@@ -94,7 +124,7 @@ public class PatientController {
      * @param id                 ID of patient to be updated
      * @param patient            updated patient
      * @param result             result of validation form
-     * @param model              holder for context data to be passed from controller to the view, contains patient to update and list of patients
+     * @param model              holder for context data to be passed from controller to the view, contains patient to update
      * @param redirectAttributes redirection attributes, contains success popup
      * @return list of patients if update is successful, update patient page otherwise
      */
@@ -113,9 +143,11 @@ public class PatientController {
             patientService.updatePatient(patient);
             redirectAttributes.addFlashAttribute("success", "Patient " + patient.getFamily() + " " + patient.getGiven() + " was successfully updated.");
         } catch (PatientNotFoundException notFoundException) {
+            ExceptionCounter.count(notFoundException);
             redirectAttributes.addFlashAttribute("error", "Error while trying to update patient " + patient.getFamily() + " " + patient.getGiven() + ":\n"+ notFoundException.getMessage());
+        } catch (ObjectOptimisticLockingFailureException concurrentUpdateException) {
+            redirectAttributes.addFlashAttribute("error", "Patient " + patient.getFamily() + " " + patient.getGiven() + " was modified by someone else in the meantime, please try again.");
         }
-        model.addAttribute("patients", patientService.getPatients());
         return "redirect:/patient/list";
     }
 
@@ -123,12 +155,11 @@ public class PatientController {
      * Deletes a patient.
      *
      * @param id                 ID of patient to be deleted
-     * @param model              holder for context data to be passed from controller to the view, contains list of patients
      * @param redirectAttributes redirection attributes, contains success or failure popup
      * @return list of patients page
      */
     @GetMapping("/patient/delete/{id}")
-    public String deletePatient(@PathVariable("id") Integer id, Model model, RedirectAttributes redirectAttributes) {
+    public String deletePatient(@PathVariable("id") Integer id, RedirectAttributes redirectAttributes) {
         // Find Patient by ID
         Optional<Patient> existingPatient = patientService.getPatientById(id);
         // and delete the patient
@@ -140,7 +171,6 @@ public class PatientController {
             redirectAttributes.addFlashAttribute("error", "Patient with ID " + id + " does not exist.");
         }
         // return to Patient list
-        model.addAttribute("patients", patientService.getPatients());
         return "redirect:/patient/list";
     }
 }
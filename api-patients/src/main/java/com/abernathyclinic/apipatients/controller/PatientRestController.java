@@ -1,63 +1,531 @@
 package com.abernathyclinic.apipatients.controller;
 
+import com.abernathyclinic.apipatients.configuration.PatientProtobufHttpMessageConverter;
+import com.abernathyclinic.apipatients.configuration.Throttled;
 import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
 import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
+import com.abernathyclinic.apipatients.exceptions.PreconditionFailedException;
+import com.abernathyclinic.apipatients.model.DuplicateCandidate;
+import com.abernathyclinic.apipatients.model.ImportReport;
 import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientBatch;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.model.PatientFieldsPage;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import com.abernathyclinic.apipatients.model.PatientSearchCriteria;
+import com.abernathyclinic.apipatients.model.PatientStats;
+import com.abernathyclinic.apipatients.service.PatientChangeFeed;
+import com.abernathyclinic.apipatients.service.PatientDuplicateDetector;
+import com.abernathyclinic.apipatients.service.PatientExportService;
+import com.abernathyclinic.apipatients.service.PatientFields;
+import com.abernathyclinic.apipatients.service.PatientImportService;
 import com.abernathyclinic.apipatients.service.PatientService;
+import com.abernathyclinic.apipatients.service.PatientStatistics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 @RestController
 @RequestMapping("/patient")
+@Profile("!reactive")
 public class PatientRestController {
+    /**
+     * Media type of the streamed listing: one JSON patient per line.
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * Media type of imported CSV content.
+     */
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    /**
+     * Media type of Smile, binary JSON, see ContentNegotiationConfig.
+     */
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    /**
+     * Header holding the cursor of the next page of the listing.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Header holding the sequence number of the last change received, sent by event sources when they reconnect.
+     */
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+    private static final byte[]    NEWLINE            = {'\n'};
+
     @Autowired
     PatientService patientService;
 
-    @GetMapping
-    public List<Patient> getPatients() {
-        return patientService.getPatients();
+    @Autowired
+    PatientImportService patientImportService;
+
+    @Autowired
+    ObjectProvider<PatientChangeFeed> patientChangeFeed;
+
+    @Autowired
+    PatientExportService patientExportService;
+
+    @Autowired
+    PatientDuplicateDetector patientDuplicateDetector;
+
+    @Autowired
+    PatientStatistics patientStatistics;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${patients.changes.max-stream-duration:PT10M}")
+    Duration maxChangeStreamDuration;
+
+    /**
+     * Lists one page of patients ordered by ID. The cursor of the next page, if any, is returned in the
+     * X-Next-Cursor header and in a Link header with the "next" relation.
+     *
+     * The page has an entity tag computed from the IDs and versions of its patients, so that a client sending it back in
+     * an If-None-Match header gets a 304 Not Modified response if the page did not change.
+     *
+     * Patients are written as JSON, Smile, CBOR or Protocol Buffers depending on the Accept header, see
+     * ContentNegotiationConfig. The entity tag is weak since it is shared by every format, and by the compressed
+     * responses, which Tomcat does not compress when the entity tag is strong.
+     *
+     * @param cursor  cursor of the page to read, first page if omitted
+     * @param size    page size, configured default if omitted
+     * @param request current request, to check the If-None-Match header
+     * @return patients of the page, null if not modified
+     */
+    @Throttled(Throttled.Category.LISTING)
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            PatientProtobufHttpMessageConverter.APPLICATION_PROTOBUF_VALUE})
+    public ResponseEntity<List<Patient>> getPatients(@RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer size,
+                                                     WebRequest request) {
+        PatientPage page = patientService.getPatients(cursor, size);
+        String eTag = eTag(page);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT);
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.getNextCursor())
+                    .toUriString();
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor())
+                    .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page.getPatients());
+    }
+
+    /**
+     * Lists one page of patients ordered by ID like {@link #getPatients(String, Integer, WebRequest)}, with the
+     * requested properties only. Only the corresponding columns are read from the database.
+     *
+     * @param fields  comma separated patient properties among id, family, given, dob, sex, address, phone and version,
+     *                the ID is always returned
+     * @param cursor  cursor of the page to read, first page if omitted
+     * @param size    page size, configured default if omitted
+     * @param request current request, to check the If-None-Match header
+     * @return selected properties of the patients of the page, null if not modified
+     */
+    @Throttled(Throttled.Category.LISTING)
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE},
+            params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getPatientFields(@RequestParam String fields,
+                                                                      @RequestParam(required = false) String cursor,
+                                                                      @RequestParam(required = false) Integer size,
+                                                                      WebRequest request) {
+        PatientFieldsPage page = patientService.getPatients(cursor, size, PatientFields.parse(fields));
+        String eTag = eTag(page.getPatients() + page.getNextCursor());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT);
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.getNextCursor())
+                    .toUriString();
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor())
+                    .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page.getPatients());
+    }
+
+    /**
+     * Streams every patient as newline delimited JSON, reading them from the database as they are written so that
+     * memory use stays flat whatever the number of patients. Selected with the Accept: application/x-ndjson header.
+     *
+     * @return streamed response body
+     */
+    @Throttled(Throttled.Category.LISTING)
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPatients() {
+        StreamingResponseBody body = outputStream -> patientService.streamPatients(patient -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(patient));
+                outputStream.write('\n');
+            } catch (IOException writeException) {
+                throw new UncheckedIOException(writeException);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    /**
+     * Exports patients ordered by ID as CSV or newline delimited JSON, streamed from the database as they are read. The
+     * content is gzip compressed by Tomcat when the client accepts it, see server.compression. With the since
+     * parameter, only the patients changed in the time range are exported, for incremental exports.
+     *
+     * @param format csv (default) or ndjson
+     * @param since  start of the range of change times, included, ISO-8601 instant, full export if omitted
+     * @param until  end of the range of change times, excluded, ISO-8601 instant, now if omitted
+     * @return streamed content, 410 Gone if changes since the start of the range are no longer retained or are not
+     * recorded
+     */
+    @Throttled(Throttled.Category.LISTING)
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPatients(@RequestParam(defaultValue = "csv") String format,
+                                                                @RequestParam(required = false) Instant since,
+                                                                @RequestParam(required = false) Instant until) {
+        PatientExportService.Format exportFormat = PatientExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        patientExportService.checkRange(since, until);
+        StreamingResponseBody body = outputStream -> patientExportService.export(outputStream, exportFormat, since, until);
+        return ResponseEntity.ok()
+                .contentType(exportFormat == PatientExportService.Format.CSV
+                        ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("patients." + exportFormat.name().toLowerCase(Locale.ROOT))
+                        .build().toString())
+                .body(body);
+    }
+
+    /**
+     * Streams patient creations, updates and deletions as server-sent events, or as newline delimited JSON with the
+     * Accept: application/x-ndjson header. Each change has a sequence number, used as event ID: a subscriber resumes
+     * the stream after the last change it received with the Last-Event-ID header or the after parameter. Without
+     * them, the stream starts with the latest changes. The stream ends after patients.changes.max-stream-duration,
+     * subscribers are expected to reconnect.
+     *
+     * @param after       sequence number of the last change received
+     * @param lastEventId sequence number of the last change received, sent by event sources, takes precedence
+     * @param accept      accepted media types
+     * @return stream of changes, 410 Gone if changes following the sequence number were purged: patients must then be
+     * read again, 404 Not Found if the change feed is disabled
+     */
+    @GetMapping(value = "/changes", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ResponseBodyEmitter> streamChanges(@RequestParam(required = false) Long after,
+                                                             @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) Long lastEventId,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        PatientChangeFeed changeFeed = patientChangeFeed.getIfAvailable();
+        if (changeFeed == null) {
+            return ResponseEntity.notFound().build();
+        }
+        List<MediaType> acceptedTypes = MediaType.parseMediaTypes(accept);
+        boolean ndjson = acceptedTypes.stream().anyMatch(APPLICATION_NDJSON::equalsTypeAndSubtype)
+                && acceptedTypes.stream().noneMatch(MediaType.TEXT_EVENT_STREAM::equalsTypeAndSubtype);
+        // leaves the stream time to end by itself
+        long timeout = maxChangeStreamDuration.plusMinutes(1).toMillis();
+        ResponseBodyEmitter emitter = ndjson ? new ResponseBodyEmitter(timeout) : new SseEmitter(timeout);
+        PatientChangeFeed.ChangeWriter writer = ndjson ? ndjsonWriter(emitter) : sseWriter((SseEmitter) emitter);
+        Future<?> stream = changeFeed.stream(lastEventId != null ? lastEventId : after, writer, failure -> {
+            if (failure == null) {
+                emitter.complete();
+            } else {
+                emitter.completeWithError(failure);
+            }
+        });
+        emitter.onCompletion(() -> stream.cancel(true));
+        emitter.onTimeout(() -> stream.cancel(true));
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .contentType(ndjson ? APPLICATION_NDJSON : MediaType.TEXT_EVENT_STREAM)
+                .body(emitter);
+    }
+
+    private static PatientChangeFeed.ChangeWriter sseWriter(SseEmitter emitter) {
+        return new PatientChangeFeed.ChangeWriter() {
+            @Override
+            public void write(PatientChange change) throws IOException {
+                emitter.send(SseEmitter.event()
+                        .id(change.getSequence().toString())
+                        .name(change.getType().name())
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void heartbeat() throws IOException {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+            }
+        };
+    }
+
+    private PatientChangeFeed.ChangeWriter ndjsonWriter(ResponseBodyEmitter emitter) {
+        return new PatientChangeFeed.ChangeWriter() {
+            @Override
+            public void write(PatientChange change) throws IOException {
+                byte[] json = objectMapper.writeValueAsBytes(change);
+                byte[] line = new byte[json.length + 1];
+                System.arraycopy(json, 0, line, 0, json.length);
+                line[json.length] = '\n';
+                emitter.send(line, APPLICATION_NDJSON);
+            }
+
+            @Override
+            public void heartbeat() throws IOException {
+                // blank lines are skipped by NDJSON readers
+                emitter.send(NEWLINE, APPLICATION_NDJSON);
+            }
+        };
+    }
+
+    /**
+     * Searches patients by case-insensitive family and given name prefixes, date of birth range or birth year, sex
+     * and phone prefix.
+     *
+     * @param criteria search filters, all optional
+     * @param pageable page number and size
+     * @return page of matching patients ordered by family name, given name and ID
+     */
+    @Throttled(Throttled.Category.LISTING)
+    @GetMapping("/search")
+    public Page<Patient> searchPatients(PatientSearchCriteria criteria, @PageableDefault(size = 20) Pageable pageable) {
+        return patientService.searchPatients(criteria, pageable);
     }
 
+    /**
+     * Lists the pairs of patients who may be the same person entered twice, with names spelled differently.
+     *
+     * @param minScore score from 0 to 1 from which pairs are listed, patients.duplicates.threshold if omitted
+     * @param limit    maximum number of listed pairs
+     * @return possible duplicates, most likely first
+     */
+    @Throttled(Throttled.Category.LISTING)
+    @GetMapping("/duplicates")
+    public List<DuplicateCandidate> getDuplicates(@RequestParam(required = false) Double minScore,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        return patientDuplicateDetector.findDuplicates(minScore, limit);
+    }
+
+    /**
+     * Gets the patient counts by sex, age bracket and birth decade, from counters kept up to date on each write instead
+     * of reading the patients.
+     *
+     * @return statistics of all patients
+     */
+    @Throttled(Throttled.Category.READ)
+    @GetMapping("/stats")
+    public PatientStats getStats() {
+        return patientStatistics.getStats();
+    }
+
+    /**
+     * Gets many patients in one call, for instance all the patients of a report.
+     *
+     * @param ids patient IDs, at most patients.batch.max-size
+     * @return found patients in the order of the IDs and IDs of the patients who do not exist
+     */
+    @Throttled(Throttled.Category.READ)
+    @PostMapping("/batch")
+    public PatientBatch getPatientsByIds(@RequestBody List<Integer> ids) {
+        return patientService.getPatientsByIds(ids);
+    }
+
+    @Throttled(Throttled.Category.WRITE)
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public Patient createPatient(Patient patient) throws AlreadyExistsException {
         return patientService.createPatient(patient);
     }
 
+    /**
+     * Imports patients from CSV content. The first line is a header naming the columns among family, given, dob, sex,
+     * address and phone.
+     *
+     * @param content CSV content, UTF-8 encoded
+     * @return import report listing rejected rows
+     * @throws IOException if the content cannot be read
+     */
+    @Throttled(Throttled.Category.WRITE)
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    public ImportReport importCsv(InputStream content) throws IOException {
+        return patientImportService.importPatients(content, PatientImportService.Format.CSV);
+    }
+
+    /**
+     * Imports patients from newline delimited JSON content, one JSON patient per line.
+     *
+     * @param content NDJSON content, UTF-8 encoded
+     * @return import report listing rejected rows
+     * @throws IOException if the content cannot be read
+     */
+    @Throttled(Throttled.Category.WRITE)
+    @PostMapping(value = "/import", consumes = APPLICATION_NDJSON_VALUE)
+    public ImportReport importNdjson(InputStream content) throws IOException {
+        return patientImportService.importPatients(content, PatientImportService.Format.NDJSON);
+    }
+
+    /**
+     * Gets a patient. The response has the patient version as entity tag, a client sending it back in an
+     * If-None-Match header gets a 304 Not Modified response if the patient did not change. The response varies by
+     * Accept, see eTag(Patient).
+     *
+     * @param id      patient ID
+     * @param request current request, to check the If-None-Match header
+     * @return patient, null if not modified
+     */
+    @Throttled(Throttled.Category.READ)
     @GetMapping("/{id}")
-    public Patient getPatient(@PathVariable String id) {
-        return patientService.getPatientById(Integer.valueOf(id))
+    public ResponseEntity<Patient> getPatient(@PathVariable String id, WebRequest request) {
+        Patient patient = patientService.getPatientById(Integer.valueOf(id))
+                .orElseThrow(() -> new PatientNotFoundException("Patient with the provided ID does not exist."));
+        String eTag = eTag(patient);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(patient);
+    }
+
+    /**
+     * Gets the requested properties of a patient. Only the corresponding columns are read from the database.
+     *
+     * @param id      patient ID
+     * @param fields  comma separated patient properties, the ID is always returned
+     * @param request current request, to check the If-None-Match header
+     * @return selected properties of the patient, null if not modified
+     */
+    @Throttled(Throttled.Category.READ)
+    @GetMapping(value = "/{id}", params = "fields")
+    public ResponseEntity<Map<String, Object>> getPatientFields(@PathVariable String id, @RequestParam String fields,
+                                                                WebRequest request) {
+        Map<String, Object> patient = patientService.getPatientById(Integer.valueOf(id), PatientFields.parse(fields))
                 .orElseThrow(() -> new PatientNotFoundException("Patient with the provided ID does not exist."));
+        String eTag = eTag(patient.toString());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(patient);
     }
 
+    /**
+     * Updates a patient. If an If-Match header is provided, the update is rejected with 412 Precondition Failed when
+     * the patient was modified since the entity tag was read.
+     *
+     * @param id      patient ID
+     * @param ifMatch entity tag of the patient as read by the client, optional
+     * @param patient updated patient
+     * @return updated patient with its new entity tag
+     */
+    @Throttled(Throttled.Category.WRITE)
     @PutMapping("/{id}")
-    public Patient updatePatient(@PathVariable String id, @RequestBody Patient patient) {
-        if (patientService.getPatientById(Integer.valueOf(id)).isEmpty()) {
-            throw new PatientNotFoundException("Patient with the provided ID does not exist.");
+    public ResponseEntity<Patient> updatePatient(@PathVariable String id,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                 @RequestBody Patient patient) {
+        patient.setId(Integer.valueOf(id));
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            patient.setVersion(parseVersion(ifMatch));
         }
-        return patientService.updatePatient(patient);
+        Patient updatedPatient = patientService.updatePatient(patient);
+        return ResponseEntity.ok().eTag(eTag(updatedPatient)).varyBy(HttpHeaders.ACCEPT).body(updatedPatient);
     }
 
+    @Throttled(Throttled.Category.WRITE)
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deletePatient(@PathVariable String id) {
         Assert.notNull(id, "ID must not be empty");
-        if (patientService.getPatientById(Integer.valueOf(id)).isEmpty()) {
-            throw new PatientNotFoundException("Patient with the provided ID does not exist.");
+        Patient patient = patientService.getPatientById(Integer.valueOf(id))
+                .orElseThrow(() -> new PatientNotFoundException("Patient with the provided ID does not exist."));
+        patientService.deletePatient(patient);
+    }
+
+    /**
+     * Builds the strong entity tag of a patient from their version. The tag is shared by the JSON, Smile, CBOR and
+     * Protocol Buffers responses: they encode the same properties, so a client may read a patient in one format and
+     * update it with the If-Match header in another, which compares versions strongly. Shared caches keep the formats
+     * apart thanks to the Vary: Accept header, and single patients are below the compression threshold.
+     */
+    static String eTag(Patient patient) {
+        return "\"" + (patient.getVersion() == null ? 0 : patient.getVersion()) + "\"";
+    }
+
+    /**
+     * Builds the weak entity tag of a page of patients from the IDs and versions of its patients.
+     */
+    static String eTag(PatientPage page) {
+        StringBuilder content = new StringBuilder();
+        for (Patient patient : page.getPatients()) {
+            content.append(patient.getId()).append(':').append(patient.getVersion()).append(',');
         }
-        patientService.deletePatient(patientService.getPatientById(Integer.valueOf(id)).get());
+        content.append(page.getNextCursor());
+        return "W/\"" + DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
     }
 
+    /**
+     * Builds the weak entity tag of a selection of patient properties from their values.
+     */
+    private static String eTag(String content) {
+        return "W/\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Reads the patient version from an If-Match header holding a single strong entity tag.
+     *
+     * @throws PreconditionFailedException if the header is not a strong entity tag of a patient
+     */
+    static Integer parseVersion(String ifMatch) {
+        String eTag = ifMatch.trim();
+        if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            try {
+                return Integer.valueOf(eTag.substring(1, eTag.length() - 1));
+            } catch (NumberFormatException notAVersion) {
+                // reported below
+            }
+        }
+        throw new PreconditionFailedException("If-Match header does not match the patient: " + ifMatch);
+    }
 }
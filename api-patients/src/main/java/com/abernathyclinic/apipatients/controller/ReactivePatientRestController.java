@@ -0,0 +1,136 @@
+package com.abernathyclinic.apipatients.controller;
+
+import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.ReactivePatientService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.abernathyclinic.apipatients.controller.PatientRestController.APPLICATION_NDJSON_VALUE;
+import static com.abernathyclinic.apipatients.controller.PatientRestController.NEXT_CURSOR_HEADER;
+
+/**
+ * WebFlux variant of PatientRestController, backed by ReactivePatientService. Active with the reactive profile.
+ */
+@RestController
+@RequestMapping("/patient")
+@Profile("reactive")
+public class ReactivePatientRestController {
+    @Autowired
+    ReactivePatientService patientService;
+
+    /**
+     * Lists one page of patients ordered by ID, with the same cursor, Link and entity tag headers as
+     * PatientRestController.
+     *
+     * @param cursor   cursor of the page to read, first page if omitted
+     * @param size     page size, configured default if omitted
+     * @param exchange current exchange, to check the If-None-Match header
+     * @return patients of the page, empty if not modified
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<Patient>>> getPatients(@RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer size,
+                                                           ServerWebExchange exchange) {
+        return patientService.getPatients(cursor, size).flatMap(page -> {
+            String eTag = PatientRestController.eTag(page);
+            if (exchange.checkNotModified(eTag)) {
+                return Mono.empty();
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag);
+            if (page.getNextCursor() != null) {
+                String next = UriComponentsBuilder.fromUri(exchange.getRequest().getURI())
+                        .replaceQueryParam("cursor", page.getNextCursor())
+                        .toUriString();
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor())
+                        .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            }
+            return Mono.just(response.body(page.getPatients()));
+        });
+    }
+
+    /**
+     * Streams every patient as newline delimited JSON. Patients are read from the database as the client consumes
+     * them. Selected with the Accept: application/x-ndjson header.
+     *
+     * @return all patients
+     */
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public Flux<Patient> streamPatients() {
+        return patientService.streamPatients();
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Patient> createPatient(Patient patient) {
+        return patientService.createPatient(patient);
+    }
+
+    /**
+     * Gets a patient, with their version as entity tag.
+     *
+     * @param id       patient ID
+     * @param exchange current exchange, to check the If-None-Match header
+     * @return patient, empty if not modified
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Patient>> getPatient(@PathVariable String id, ServerWebExchange exchange) {
+        return patientService.getPatientById(Integer.valueOf(id))
+                .switchIfEmpty(Mono.error(() -> new PatientNotFoundException("Patient with the provided ID does not exist.")))
+                .flatMap(patient -> {
+                    String eTag = PatientRestController.eTag(patient);
+                    return exchange.checkNotModified(eTag) ? Mono.empty() : Mono.just(ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(patient));
+                });
+    }
+
+    /**
+     * Updates a patient. If an If-Match header is provided, the update is rejected with 412 Precondition Failed when
+     * the patient was modified since the entity tag was read. Without it, the version of the body is checked if any.
+     *
+     * @param id      patient ID
+     * @param ifMatch entity tag of the patient as read by the client, optional
+     * @param patient updated patient
+     * @return updated patient with its new entity tag
+     */
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<Patient>> updatePatient(@PathVariable String id,
+                                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                       @RequestBody Patient patient) {
+        patient.setId(Integer.valueOf(id));
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            patient.setVersion(PatientRestController.parseVersion(ifMatch));
+        }
+        return patientService.updatePatient(patient)
+                .map(updatedPatient -> ResponseEntity.ok().eTag(PatientRestController.eTag(updatedPatient))
+                        .varyBy(HttpHeaders.ACCEPT).body(updatedPatient));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deletePatient(@PathVariable String id) {
+        return patientService.getPatientById(Integer.valueOf(id))
+                .switchIfEmpty(Mono.error(() -> new PatientNotFoundException("Patient with the provided ID does not exist.")))
+                .flatMap(patientService::deletePatient);
+    }
+}
@@ -1,7 +1,11 @@
 package com.abernathyclinic.apipatients.exceptions;
 
+import com.abernathyclinic.apipatients.model.Patient;
+
 /**
  * Exception thrown when the patient already exists in database.
+ * <p>
+ * An expected outcome answered with a 400, without stack trace like PatientNotFoundException.
  */
 public class AlreadyExistsException extends RuntimeException {
     /**
@@ -10,6 +14,15 @@ public class AlreadyExistsException extends RuntimeException {
      * @param message Exception message.
      */
     public AlreadyExistsException(String message) {
-        super(message);
+        super(message, null, false, false);
+    }
+
+    /**
+     * @param patient patient who already exists
+     * @return exception naming the patient
+     */
+    public static AlreadyExistsException of(Patient patient) {
+        return new AlreadyExistsException("Patient " + patient.getFamily() + " " + patient.getGiven() + ", born the "
+                + patient.getDob() + " already exists.");
     }
 }
@@ -0,0 +1,17 @@
+package com.abernathyclinic.apipatients.exceptions;
+
+/**
+ * Exception thrown when the change feed is resumed after a change which is no longer retained. Expected outcome,
+ * without stack trace.
+ */
+public class ChangesExpiredException extends RuntimeException {
+    /**
+     * Exception thrown when changes following the requested sequence number were purged, the subscriber has to read
+     * all patients again.
+     *
+     * @param message Exception message.
+     */
+    public ChangesExpiredException(String message) {
+        super(message, null, false, false);
+    }
+}
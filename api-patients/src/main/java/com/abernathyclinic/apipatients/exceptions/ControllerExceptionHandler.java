@@ -1,36 +1,104 @@
 package com.abernathyclinic.apipatients.exceptions;
 
+import com.abernathyclinic.apipatients.model.Problem;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.validation.ConstraintViolationException;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
- * Exception thrown when a resource is not found.
+ * Turns the exceptions of the API into application/problem+json responses (RFC 7807).
+ * <p>
+ * Client errors and overload are expected outcomes: they are counted, and logged at INFO without stack trace, a few
+ * times per interval for each exception class (patients.logging.sampled-errors-per-interval). Only unexpected errors,
+ * answered with a 500, are logged at ERROR with their stack trace.
  */
 @Slf4j
 @RestControllerAdvice
 public class ControllerExceptionHandler {
+    private final ErrorLogSampler sampler;
+
+    public ControllerExceptionHandler(@Value("${patients.logging.sampled-errors-per-interval:10}") int maxPerInterval,
+                                      @Value("${patients.logging.sampling-interval:PT1M}") Duration interval) {
+        this.sampler = new ErrorLogSampler(maxPerInterval, interval);
+    }
 
     @ExceptionHandler(PatientNotFoundException.class)
-    @ResponseStatus(HttpStatus.NOT_FOUND)
-    public String patientNotFoundException(PatientNotFoundException notFoundException) {
-        log.error("Patient was not found.", notFoundException);
-        return "Patient was not found:\n" + notFoundException.getMessage();
+    public ResponseEntity<Problem> patientNotFoundException(PatientNotFoundException notFoundException) {
+        return expected(HttpStatus.NOT_FOUND, notFoundException);
+    }
+
+    @ExceptionHandler({AlreadyExistsException.class, ConstraintViolationException.class,
+            IllegalArgumentException.class})
+    public ResponseEntity<Problem> badRequestException(RuntimeException badRequestException) {
+        return expected(HttpStatus.BAD_REQUEST, badRequestException);
+    }
+
+    @ExceptionHandler({PreconditionFailedException.class, ObjectOptimisticLockingFailureException.class})
+    public ResponseEntity<Problem> preconditionFailedException(RuntimeException preconditionFailedException) {
+        return expected(HttpStatus.PRECONDITION_FAILED, preconditionFailedException);
+    }
+
+    @ExceptionHandler(ChangesExpiredException.class)
+    public ResponseEntity<Problem> changesExpiredException(ChangesExpiredException changesExpiredException) {
+        return expected(HttpStatus.GONE, changesExpiredException);
     }
 
-    @ExceptionHandler(AlreadyExistsException.class)
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public String alreadyExistsException(AlreadyExistsException alreadyExistsException) {
-        log.error("Illegal argument value.", alreadyExistsException);
-        return "Illegal argument value:\n" + alreadyExistsException.getMessage();
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Problem> rejectedExecutionException(RejectedExecutionException rejectedExecutionException) {
+        // the message of the executor is not meant for clients
+        return expected(HttpStatus.SERVICE_UNAVAILABLE, rejectedExecutionException,
+                "Too many concurrent streams, please try again later.");
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Problem> tooManyRequestsException(TooManyRequestsException tooManyRequestsException) {
+        ResponseEntity<Problem> response = expected(HttpStatus.TOO_MANY_REQUESTS, tooManyRequestsException);
+        long retryAfterSeconds = Math.max(1, (tooManyRequestsException.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(response.getBody());
     }
 
     @ExceptionHandler(Exception.class)
-    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
-    public String returnMessage(Exception exception) {
+    public ResponseEntity<Problem> returnMessage(Exception exception) {
         log.error("An error occurred.", exception);
-        return "An error occurred:\n " + exception.getMessage();
+        ExceptionCounter.count(exception);
+        return problem(HttpStatus.INTERNAL_SERVER_ERROR, exception.getMessage());
+    }
+
+    /**
+     * Counts an expected exception and logs it, if not sampled out, with its message only.
+     *
+     * @param status    status of the response
+     * @param exception handled exception
+     * @return problem response with the message of the exception as detail
+     */
+    private ResponseEntity<Problem> expected(HttpStatus status, Exception exception) {
+        return expected(status, exception, exception.getMessage());
+    }
+
+    private ResponseEntity<Problem> expected(HttpStatus status, Exception exception, String detail) {
+        ExceptionCounter.count(exception);
+        long suppressed = sampler.sample(exception.getClass().getName());
+        if (suppressed >= 0 && log.isInfoEnabled()) {
+            log.info("{} {}: {} ({} similar errors not logged)", status.value(), exception.getClass().getSimpleName(),
+                    exception.getMessage(), suppressed);
+        }
+        return problem(status, detail);
+    }
+
+    private static ResponseEntity<Problem> problem(HttpStatus status, String detail) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .body(new Problem(status.getReasonPhrase(), status.value(), detail));
     }
 }
@@ -0,0 +1,68 @@
+package com.abernathyclinic.apipatients.exceptions;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often a repetitive error is logged: at most a number of times per interval for each key, the next logged
+ * occurrence telling how many were suppressed in between. Keys must be few, such as exception classes.
+ */
+public class ErrorLogSampler {
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final int                 maxPerInterval;
+    private final long                intervalNanos;
+    private final LongSupplier        clock;
+
+    /**
+     * @param maxPerInterval occurrences of a key logged per interval
+     * @param interval       sampling interval
+     */
+    public ErrorLogSampler(int maxPerInterval, Duration interval) {
+        this(maxPerInterval, interval, System::nanoTime);
+    }
+
+    /**
+     * @param clock time in nanoseconds, System::nanoTime out of tests
+     */
+    ErrorLogSampler(int maxPerInterval, Duration interval, LongSupplier clock) {
+        this.maxPerInterval = maxPerInterval;
+        this.intervalNanos = interval.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Records an occurrence of an error.
+     *
+     * @param key kind of error
+     * @return -1 if the occurrence should not be logged, otherwise the number of occurrences suppressed since the
+     *         last logged one
+     */
+    public long sample(String key) {
+        Window window = windows.computeIfAbsent(key, newKey -> new Window(clock.getAsLong()));
+        long now = clock.getAsLong();
+        long start = window.start.get();
+        // one caller starts the new window, the others count in it
+        if (now - start >= intervalNanos && window.start.compareAndSet(start, now)) {
+            window.logged.set(0);
+        }
+        if (window.logged.incrementAndGet() <= maxPerInterval) {
+            return window.suppressed.getAndSet(0);
+        }
+        window.suppressed.incrementAndGet();
+        return -1;
+    }
+
+    private static class Window {
+        private final AtomicLong    start;
+        private final AtomicInteger logged     = new AtomicInteger();
+        private final AtomicLong    suppressed = new AtomicLong();
+
+        Window(long start) {
+            this.start = new AtomicLong(start);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.abernathyclinic.apipatients.exceptions;
+
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Counts handled exceptions in the global meter registry, to which Spring Boot adds the Prometheus registry.
+ */
+public final class ExceptionCounter {
+
+    private ExceptionCounter() {
+    }
+
+    /**
+     * Increments the counter of the exception class.
+     *
+     * @param exception handled exception
+     */
+    public static void count(Exception exception) {
+        Metrics.counter(MetricsConfig.EXCEPTIONS, "exception", exception.getClass().getSimpleName()).increment();
+    }
+}
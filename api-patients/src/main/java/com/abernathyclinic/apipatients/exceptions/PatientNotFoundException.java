@@ -1,7 +1,12 @@
 package com.abernathyclinic.apipatients.exceptions;
 
+import com.abernathyclinic.apipatients.model.Patient;
+
 /**
  * Exception thrown when the patient to be updated or deleted does not exist.
+ * <p>
+ * A missing patient is an expected outcome, answered with a 404, so the exception has no stack trace: filling it in
+ * would cost more than the rest of the request.
  */
 public class PatientNotFoundException extends RuntimeException {
     /**
@@ -10,6 +15,15 @@ public class PatientNotFoundException extends RuntimeException {
      * @param message Exception message.
      */
     public PatientNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
+    }
+
+    /**
+     * @param patient patient who does not exist
+     * @return exception naming the patient
+     */
+    public static PatientNotFoundException of(Patient patient) {
+        return new PatientNotFoundException("Patient " + patient.getFamily() + " " + patient.getGiven()
+                + " born the " + patient.getDob() + " does not exist.");
     }
 }
@@ -0,0 +1,16 @@
+package com.abernathyclinic.apipatients.exceptions;
+
+/**
+ * Exception thrown when a conditional request does not match the current state of the patient. Expected outcome,
+ * without stack trace.
+ */
+public class PreconditionFailedException extends RuntimeException {
+    /**
+     * Exception thrown when the If-Match header of a request does not match the patient to be updated.
+     *
+     * @param message Exception message.
+     */
+    public PreconditionFailedException(String message) {
+        super(message, null, false, false);
+    }
+}
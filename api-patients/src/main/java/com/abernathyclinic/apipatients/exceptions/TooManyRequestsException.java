@@ -0,0 +1,27 @@
+package com.abernathyclinic.apipatients.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a request is rejected to protect the service from overload. Thrown in numbers under load,
+ * so without stack trace.
+ */
+public class TooManyRequestsException extends RuntimeException {
+    private final Duration retryAfter;
+
+    /**
+     * Exception thrown when the client exceeded its request rate, or when too many requests of the same kind are in
+     * progress.
+     *
+     * @param message    Exception message.
+     * @param retryAfter Time after which the client may try again.
+     */
+    public TooManyRequestsException(String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
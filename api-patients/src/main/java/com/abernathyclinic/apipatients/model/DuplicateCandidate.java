@@ -0,0 +1,18 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Two patients who may be the same person, see PatientDuplicateDetector.
+ */
+@Getter
+@AllArgsConstructor
+public class DuplicateCandidate {
+    private Integer patientId;
+    private Integer duplicateId;
+    /**
+     * Likelihood that both patients are the same person, from 0 to 1.
+     */
+    private double  score;
+}
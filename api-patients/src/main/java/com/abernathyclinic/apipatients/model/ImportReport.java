@@ -0,0 +1,91 @@
+package com.abernathyclinic.apipatients.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import of patients.
+ */
+@Getter
+public class ImportReport {
+    /**
+     * Maximum number of rejected rows listed in the report, further rejected rows are only counted.
+     */
+    @JsonIgnore
+    private final int maxReportedErrors;
+    /**
+     * Number of data rows read, header excluded.
+     */
+    private int rows;
+    /**
+     * Number of patients saved to database.
+     */
+    private int imported;
+    /**
+     * Number of rows rejected because the patient already exists or appears earlier in the same import.
+     */
+    private int duplicates;
+    /**
+     * Number of imported rows whose patient may be an existing patient or an earlier row with a name spelled
+     * differently, see PatientDuplicateDetector. Such rows count as duplicates instead when
+     * patients.duplicates.on-create is REJECT.
+     */
+    private int possibleDuplicates;
+    /**
+     * Number of rows rejected because they could not be parsed or are invalid.
+     */
+    private int invalid;
+    /**
+     * Rejected rows, up to the configured maximum number of reported errors.
+     */
+    private final List<RowError> errors = new ArrayList<>();
+
+    public ImportReport(int maxReportedErrors) {
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    public void rowRead() {
+        rows++;
+    }
+
+    public void imported(int count) {
+        imported += count;
+    }
+
+    public void duplicate(long row, String message) {
+        duplicates++;
+        report(row, message);
+    }
+
+    public void possibleDuplicate() {
+        possibleDuplicates++;
+    }
+
+    public void invalid(long row, String message) {
+        invalid++;
+        report(row, message);
+    }
+
+    private void report(long row, String message) {
+        if (errors.size() < maxReportedErrors) {
+            errors.add(new RowError(row, message));
+        }
+    }
+
+    /**
+     * Rejected row of an import.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class RowError {
+        /**
+         * Line number of the row in the imported content, starting at 1.
+         */
+        private long   row;
+        private String message;
+    }
+}
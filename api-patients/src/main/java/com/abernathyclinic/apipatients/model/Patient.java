@@ -1,7 +1,7 @@
 package com.abernathyclinic.apipatients.model;
 
-
-import lombok.AllArgsConstructor;
+import com.abernathyclinic.apipatients.service.PatientMatcher;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -9,24 +9,30 @@ import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "patients")
+@Table(name = "patients", uniqueConstraints = @UniqueConstraint(name = "uk_patients_natural_key",
+        columnNames = {"family", "given", "date_of_birth"}))
 @Getter
 @Setter
-@AllArgsConstructor
 @NoArgsConstructor
 public class Patient {
+    /**
+     * Allocated by PatientIdGenerator when the patient is created, its value modulo the number of shards is the shard
+     * of the patient.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "patient_id")
     private Integer id;
     @Size(max = 50, message = "Maximum of {max} characters")
@@ -36,12 +42,51 @@ public class Patient {
     @NotBlank(message = "First name is mandatory")
     private String given;
     @DateTimeFormat(pattern = "yyyy-MM-dd")
+    @NotNull(message = "Date of birth is mandatory")
+    @Column(name = "date_of_birth")
     private LocalDate dob;
     @Size(max = 1, message = "Maximum of {max} character, select either Male or Female")
     @Pattern(regexp = "[MF]")
+    @Column(name = "gender")
     private String sex;
     @Size(max = 50, message = "Maximum of {max} characters")
     private String address;
     @Pattern(regexp = "^([0-9]{3}-[0-9]{3}-[0-9]{4})?$", message = "Phone number must be in 123-456-7890 format")
     private String phone;
+    /**
+     * Incremented on each update, used for optimistic locking and as entity tag of the patient resource.
+     */
+    @Version
+    private Integer version;
+    /**
+     * Phonetic code of the family name and year of birth, indexed to find possible duplicates, see PatientMatcher.
+     */
+    @JsonIgnore
+    @Column(name = "blocking_key")
+    private String blockingKey;
+
+    public Patient(Integer id, String family, String given, LocalDate dob, String sex, String address, String phone) {
+        this(id, family, given, dob, sex, address, phone, null);
+    }
+
+    public Patient(Integer id, String family, String given, LocalDate dob, String sex, String address, String phone,
+                   Integer version) {
+        this.id = id;
+        this.family = family;
+        this.given = given;
+        this.dob = dob;
+        this.sex = sex;
+        this.address = address;
+        this.phone = phone;
+        this.version = version;
+    }
+
+    /**
+     * Computes the blocking key from the family name and date of birth, before the patient is written.
+     */
+    @PrePersist
+    @PreUpdate
+    public void updateBlockingKey() {
+        blockingKey = PatientMatcher.blockingKey(family, dob);
+    }
 }
@@ -0,0 +1,22 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Patients read by ID in one call.
+ */
+@Getter
+@AllArgsConstructor
+public class PatientBatch {
+    /**
+     * Found patients, in the order of the requested IDs.
+     */
+    private List<Patient> patients;
+    /**
+     * Requested IDs of patients who do not exist, in request order.
+     */
+    private List<Integer> missingIds;
+}
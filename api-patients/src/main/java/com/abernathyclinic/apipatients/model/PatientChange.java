@@ -0,0 +1,61 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Creation, update or deletion of a patient, recorded in the patient_changes table in the same transaction as the
+ * change itself and streamed to subscribers of the change feed.
+ */
+@Entity
+@Table(name = "patient_changes")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientChange {
+    /**
+     * Kinds of changes.
+     */
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    /**
+     * Sequence number of the change, increasing with the order in which changes were recorded. Subscribers resume
+     * the feed after the last sequence number they received.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "change_id")
+    private Long sequence;
+    @Column(name = "patient_id")
+    private Integer patientId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type")
+    private Type type;
+    /**
+     * Version of the patient after the change, null for a deletion.
+     */
+    private Integer version;
+    @Column(name = "changed_at")
+    private Instant changedAt;
+
+    public PatientChange(Integer patientId, Type type, Integer version) {
+        this(null, patientId, type, version, Instant.now());
+    }
+}
@@ -0,0 +1,26 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * Sex and date of birth of a patient, what patients are counted by in the demographic statistics, see
+ * PatientStatistics.
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class PatientDemographics {
+    /**
+     * M, F or null if unknown.
+     */
+    private String    sex;
+    private LocalDate dob;
+
+    public PatientDemographics(Patient patient) {
+        this(patient.getSex(), patient.getDob());
+    }
+}
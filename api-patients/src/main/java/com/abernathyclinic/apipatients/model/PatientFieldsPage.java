@@ -0,0 +1,23 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of patients read with keyset pagination on the patient ID, with a selection of their properties only.
+ */
+@Getter
+@AllArgsConstructor
+public class PatientFieldsPage {
+    /**
+     * Selected properties of the patients of the page, ordered by ID.
+     */
+    private List<Map<String, Object>> patients;
+    /**
+     * Opaque token to pass as cursor to get the next page, null if this is the last page.
+     */
+    private String nextCursor;
+}
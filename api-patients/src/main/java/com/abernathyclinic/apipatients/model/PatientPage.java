@@ -0,0 +1,22 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of patients read with keyset pagination on the patient ID.
+ */
+@Getter
+@AllArgsConstructor
+public class PatientPage {
+    /**
+     * Patients of the page, ordered by ID.
+     */
+    private List<Patient> patients;
+    /**
+     * Opaque token to pass as cursor to get the next page, null if this is the last page.
+     */
+    private String nextCursor;
+}
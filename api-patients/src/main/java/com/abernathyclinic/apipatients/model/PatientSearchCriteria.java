@@ -0,0 +1,49 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Filters of a patient search. Every filter is optional, a patient must match all provided filters.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientSearchCriteria {
+    /**
+     * Case and accent insensitive prefix of the family name.
+     */
+    private String family;
+    /**
+     * Case and accent insensitive prefix of the given name.
+     */
+    private String given;
+    /**
+     * Earliest date of birth, inclusive.
+     */
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate dobFrom;
+    /**
+     * Latest date of birth, inclusive.
+     */
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate dobTo;
+    /**
+     * Year of birth.
+     */
+    private Integer birthYear;
+    /**
+     * Sex, M or F.
+     */
+    private String sex;
+    /**
+     * Prefix of the phone number, only digits are compared.
+     */
+    private String phone;
+}
@@ -0,0 +1,32 @@
+package com.abernathyclinic.apipatients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Patient counts by sex, age bracket and birth decade, see PatientStatistics.
+ */
+@Getter
+@AllArgsConstructor
+public class PatientStats {
+    private long              total;
+    /**
+     * Counts by sex: M, F and unknown.
+     */
+    private Map<String, Long> bySex;
+    /**
+     * Counts by age bracket, such as 18-29, youngest first.
+     */
+    private Map<String, Long> byAgeBracket;
+    /**
+     * Counts by birth decade, such as 1960s, oldest first.
+     */
+    private Map<String, Long> byBirthDecade;
+    /**
+     * Day the ages are computed at.
+     */
+    private LocalDate         asOf;
+}
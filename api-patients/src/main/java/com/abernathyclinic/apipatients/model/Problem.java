@@ -0,0 +1,21 @@
+package com.abernathyclinic.apipatients.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Error response body following RFC 7807, sent as application/problem+json. The type is omitted, meaning
+ * about:blank: the title is then the reason phrase of the status.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Problem {
+    private String  title;
+    private int     status;
+    /**
+     * Explanation specific to this occurrence of the problem.
+     */
+    private String  detail;
+}
@@ -0,0 +1,60 @@
+package com.abernathyclinic.apipatients.repository;
+
+import com.abernathyclinic.apipatients.model.PatientChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads the patient changes outbox. Reads are not read-only transactions so that they are served by the primary
+ * database: a lagging read replica would make the change feed skip changes.
+ */
+@Repository
+public interface PatientChangeRepository extends JpaRepository<PatientChange, Long> {
+    /**
+     * Reads the changes recorded after the provided sequence number.
+     *
+     * @param sequence sequence number of the last known change, 0 to read from the first one
+     * @param pageable maximum number of changes, the page number must be 0
+     * @return changes ordered by sequence number
+     */
+    @Transactional
+    List<PatientChange> findBySequenceGreaterThanOrderBySequenceAsc(Long sequence, Pageable pageable);
+
+    /**
+     * Reads the sequence number of the last change recorded before the provided instant.
+     *
+     * @param changedAt change time upper bound, excluded
+     * @return last sequence number or empty optional if there is no such change
+     */
+    @Transactional
+    @Query("select max(c.sequence) from PatientChange c where c.changedAt < ?1")
+    Optional<Long> findMaxSequenceBefore(Instant changedAt);
+
+    /**
+     * Reads the sequence number of the oldest retained change.
+     *
+     * @return first sequence number or empty optional if there is no change
+     */
+    @Transactional
+    @Query("select min(c.sequence) from PatientChange c")
+    Optional<Long> findMinSequence();
+
+    /**
+     * Deletes the changes recorded before the provided instant.
+     *
+     * @param changedAt oldest retained change time
+     * @return number of deleted changes
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PatientChange c where c.changedAt < ?1")
+    int deleteByChangedAtBefore(Instant changedAt);
+}
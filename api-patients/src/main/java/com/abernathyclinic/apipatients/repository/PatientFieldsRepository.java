@@ -0,0 +1,30 @@
+package com.abernathyclinic.apipatients.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads a selection of patient properties only, so that unneeded columns are neither read from database nor
+ * serialized. Implemented by PatientFieldsRepositoryImpl and exposed by PatientRepository.
+ */
+public interface PatientFieldsRepository {
+    /**
+     * Reads one page of patients whose ID is greater than the provided one (keyset pagination).
+     *
+     * @param fields patient properties to read, must include id
+     * @param id     ID of the last patient of the previous page, 0 for the first page
+     * @param limit  maximum number of patients to read
+     * @return patient properties by name, in the order of the fields, patients ordered by ID
+     */
+    List<Map<String, Object>> findFieldsByIdGreaterThan(List<String> fields, Integer id, int limit);
+
+    /**
+     * Reads a patient by ID.
+     *
+     * @param fields patient properties to read
+     * @param id     patient ID
+     * @return patient properties by name, in the order of the fields, or empty optional
+     */
+    Optional<Map<String, Object>> findFieldsById(List<String> fields, Integer id);
+}
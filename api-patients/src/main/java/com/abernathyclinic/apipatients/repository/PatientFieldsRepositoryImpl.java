@@ -0,0 +1,65 @@
+package com.abernathyclinic.apipatients.repository;
+
+import com.abernathyclinic.apipatients.model.Patient;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Builds a criteria query selecting the requested properties only, and maps its tuples to ordered maps.
+ */
+public class PatientFieldsRepositoryImpl implements PatientFieldsRepository {
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findFieldsByIdGreaterThan(List<String> fields, Integer id, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Patient> patient = query.from(Patient.class);
+        query.multiselect(selections(patient, fields))
+                .where(builder.greaterThan(patient.get("id"), id))
+                .orderBy(builder.asc(patient.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList()
+                .stream()
+                .map(tuple -> toMap(tuple, fields))
+                .toList();
+    }
+
+    @Override
+    public Optional<Map<String, Object>> findFieldsById(List<String> fields, Integer id) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Patient> patient = query.from(Patient.class);
+        query.multiselect(selections(patient, fields))
+                .where(builder.equal(patient.get("id"), id));
+        return entityManager.createQuery(query)
+                .getResultList()
+                .stream()
+                .findFirst()
+                .map(tuple -> toMap(tuple, fields));
+    }
+
+    private static List<Selection<?>> selections(Root<Patient> patient, List<String> fields) {
+        return fields.stream().<Selection<?>>map(field -> patient.get(field).alias(field)).toList();
+    }
+
+    private static Map<String, Object> toMap(Tuple tuple, List<String> fields) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (String field : fields) {
+            properties.put(field, tuple.get(field));
+        }
+        return properties;
+    }
+}
@@ -1,14 +1,131 @@
 package com.abernathyclinic.apipatients.repository;
 
+import com.abernathyclinic.apipatients.configuration.CacheConfig;
 import com.abernathyclinic.apipatients.model.Patient;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, Integer> {
+public interface PatientRepository extends JpaRepository<Patient, Integer>, PatientFieldsRepository {
+    /**
+     * Finds a patient by ID. Found patients are cached until they are updated or deleted through PatientService, which
+     * reads them from the primary database, see ReadWriteRoutingDataSource.readFromPrimary.
+     *
+     * @param id patient ID
+     * @return found patient or empty optional
+     */
+    @Cacheable(cacheNames = CacheConfig.PATIENTS, key = "#p0", unless = "#result == null")
     Optional<Patient> findById(Integer id);
+
+    /**
+     * Finds a patient by natural key. Found patients are cached until a patient is updated or deleted through
+     * PatientService, absent patients are not cached. Read from the primary database like findById.
+     *
+     * @param family family name
+     * @param given  given name
+     * @param dob    date of birth
+     * @return found patient or empty optional
+     */
+    @Cacheable(cacheNames = CacheConfig.PATIENTS_BY_NATURAL_KEY, key = "{#p0, #p1, #p2}", unless = "#result == null")
     Optional<Patient> findByFamilyAndGivenAndDob(String family, String given, LocalDate dob);
+
+    /**
+     * Reads the current version of a patient, bypassing the cache.
+     *
+     * @param id patient ID
+     * @return version of the patient or empty optional if the patient does not exist
+     */
+    @Query("select p.version from Patient p where p.id = ?1")
+    Optional<Integer> findVersionById(Integer id);
+
+    /**
+     * Updates a patient and increments their version with a single statement, without reading them first. If the
+     * patient has a version, the update is only applied if it is still the current version.
+     *
+     * @param patient patient holding the ID, the new values and optionally the version read by the client
+     * @return number of updated patients, 0 if the patient does not exist or was modified since the version was read
+     */
+    @Modifying
+    @Query("update Patient p set p.family = :#{#patient.family}, p.given = :#{#patient.given}, p.dob = :#{#patient.dob},"
+            + " p.sex = :#{#patient.sex}, p.address = :#{#patient.address}, p.phone = :#{#patient.phone},"
+            + " p.blockingKey = :#{T(com.abernathyclinic.apipatients.service.PatientMatcher).blockingKey(#patient.family, #patient.dob)},"
+            + " p.version = p.version + 1"
+            + " where p.id = :#{#patient.id} and (:#{#patient.version} is null or p.version = :#{#patient.version})")
+    int updatePatient(@Param("patient") Patient patient);
+
+    /**
+     * Finds the patients of blocks, to look for the possible duplicates of a patient, see PatientMatcher.
+     *
+     * @param blockingKeys blocking keys
+     * @return patients having one of the blocking keys
+     */
+    List<Patient> findByBlockingKeyIn(Collection<String> blockingKeys);
+
+    /**
+     * Finds patients written before blocking keys existed.
+     *
+     * @param pageable maximum number of patients
+     * @return patients without blocking key
+     */
+    List<Patient> findByBlockingKeyIsNull(Pageable pageable);
+
+    /**
+     * Sets the blocking key of a patient without changing their version.
+     *
+     * @param id          patient ID
+     * @param blockingKey blocking key, see PatientMatcher
+     * @return number of updated patients
+     */
+    @Modifying
+    @Query("update Patient p set p.blockingKey = ?2 where p.id = ?1")
+    int updateBlockingKey(Integer id, String blockingKey);
+
+    /**
+     * Deletes a patient with a single statement, without reading them first.
+     *
+     * @param id patient ID
+     * @return number of deleted patients, 0 if the patient does not exist
+     */
+    @Modifying
+    @Query("delete from Patient p where p.id = ?1")
+    int deletePatientById(Integer id);
+
+    /**
+     * Reads one page of patients whose ID is greater than the provided one (keyset pagination).
+     *
+     * @param id       ID of the last patient of the previous page, 0 for the first page
+     * @param pageable page size, the page number must be 0
+     * @return patients ordered by ID
+     */
+    @Transactional(readOnly = true)
+    List<Patient> findByIdGreaterThanOrderByIdAsc(Integer id, Pageable pageable);
+
+    /**
+     * Streams all patients ordered by ID. Patients are built with a constructor expression so that they are not
+     * attached to the persistence context and can be garbage collected once written.
+     * Must be consumed inside a transaction and closed afterwards.
+     *
+     * @return stream of all patients
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select new com.abernathyclinic.apipatients.model.Patient(p.id, p.family, p.given, p.dob, p.sex, p.address, p.phone, p.version)"
+            + " from Patient p order by p.id")
+    Stream<Patient> streamAllByOrderByIdAsc();
 }
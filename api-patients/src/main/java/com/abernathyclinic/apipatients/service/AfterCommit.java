@@ -0,0 +1,32 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers the updates of in-memory state, such as the search index or the patient statistics, to the commit of the
+ * current transaction, so that rolled back writes are not reflected.
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Runs an update after the commit of the current transaction, right away if there is none.
+     *
+     * @param update update of in-memory state
+     */
+    static void run(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+}
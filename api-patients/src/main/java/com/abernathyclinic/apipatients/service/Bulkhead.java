@@ -0,0 +1,51 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of concurrent calls of one kind, so that a flood of them cannot take every request thread and
+ * database connection from the others. Calls over the limit are rejected at once instead of queued.
+ * <p>
+ * Calls in progress are exposed by the {@value MetricsConfig#BULKHEAD_ACTIVE} gauge, tagged with the bulkhead name.
+ */
+public class Bulkhead {
+    private final String    name;
+    private final int       maxConcurrentCalls;
+    private final Semaphore permits;
+
+    /**
+     * @param name               name of the bulkhead, used as metric tag
+     * @param maxConcurrentCalls maximum number of calls in progress
+     */
+    public Bulkhead(String name, int maxConcurrentCalls) {
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        Metrics.gauge(MetricsConfig.BULKHEAD_ACTIVE, Tags.of("bulkhead", name), this, Bulkhead::getActiveCalls);
+    }
+
+    /**
+     * Starts a call if the limit is not reached, {@link #release()} must then be called when it ends.
+     *
+     * @return whether the call can start
+     */
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActiveCalls() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+}
@@ -0,0 +1,354 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.exceptions.ChangesExpiredException;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.repository.PatientChangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Streams the patient changes recorded in the patient_changes table to subscribers. A subscriber first catches up
+ * with the changes recorded after the sequence number it resumes from, then receives new changes as they are
+ * dispatched: after each commit recording changes on this instance, and by polling the table for changes recorded by
+ * other instances.
+ * <p>
+ * Each subscriber has a bounded buffer. When a subscriber is too slow and its buffer is full, further changes are
+ * dropped and the subscriber catches up from the table again, so that slow subscribers neither lose changes nor hold
+ * memory.
+ * <p>
+ * Sequence numbers are allocated when changes are inserted but are only visible once their transaction is committed,
+ * so a change can become visible after a change with a greater sequence number. Changes are streamed up to the first
+ * missing sequence number until the change following it is older than the gap timeout: the missing number then
+ * belongs to a rolled back transaction. Imports, whose transactions are long, time out before the gap timeout.
+ * <p>
+ * Sequence numbers are only ordered within one database, so the feed refuses to start when the patients database is
+ * sharded, see PatientShards: patients.changes.enabled must then be false, which also stops recording changes.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+@ConditionalOnProperty(name = "patients.changes.enabled", matchIfMissing = true)
+public class PatientChangeFeed {
+    /**
+     * Writes the streamed changes to a subscriber.
+     */
+    public interface ChangeWriter {
+        /**
+         * Writes a change.
+         *
+         * @throws IOException if the subscriber is gone
+         */
+        void write(PatientChange change) throws IOException;
+
+        /**
+         * Writes a keep-alive message, when there was no change for the heartbeat interval.
+         *
+         * @throws IOException if the subscriber is gone
+         */
+        void heartbeat() throws IOException;
+    }
+
+    private final PatientChangeRepository changeRepository;
+    private final int                     bufferSize;
+    private final int                     readSize;
+    private final Duration                heartbeatInterval;
+    private final Duration                maxStreamDuration;
+    private final Duration                gapTimeout;
+    private final Duration                retention;
+    private final ThreadPoolExecutor      subscriberExecutor;
+    private final ExecutorService         dispatchExecutor;
+    private final AtomicBoolean           dispatchRequested = new AtomicBoolean();
+    private final Set<Subscription>       subscriptions     = ConcurrentHashMap.newKeySet();
+    /**
+     * Sequence number of the last dispatched change, only meaningful while there are subscribers.
+     */
+    private long lastDispatched;
+
+    public PatientChangeFeed(PatientChangeRepository changeRepository, PatientShards shards,
+                             @Value("${patients.changes.max-subscribers:100}") int maxSubscribers,
+                             @Value("${patients.changes.buffer-size:1000}") int bufferSize,
+                             @Value("${patients.changes.read-size:500}") int readSize,
+                             @Value("${patients.changes.heartbeat-interval:PT15S}") Duration heartbeatInterval,
+                             @Value("${patients.changes.max-stream-duration:PT10M}") Duration maxStreamDuration,
+                             @Value("${patients.changes.gap-timeout:PT2S}") Duration gapTimeout,
+                             @Value("${patients.changes.retention:P7D}") Duration retention) {
+        if (shards.count() > 1) {
+            throw new IllegalStateException("The change feed cannot follow a sharded patients database,"
+                    + " patients.changes.enabled must be false when patients.sharding.shards is set.");
+        }
+        this.changeRepository = changeRepository;
+        this.bufferSize = bufferSize;
+        this.readSize = readSize;
+        this.heartbeatInterval = heartbeatInterval;
+        this.maxStreamDuration = maxStreamDuration;
+        this.gapTimeout = gapTimeout;
+        this.retention = retention;
+        CustomizableThreadFactory subscriberThreads = new CustomizableThreadFactory("patient-changes-");
+        subscriberThreads.setDaemon(true);
+        // one thread per subscriber, subscribers beyond the maximum are rejected instead of queued
+        this.subscriberExecutor = new ThreadPoolExecutor(0, maxSubscribers, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                subscriberThreads);
+        CustomizableThreadFactory dispatchThread = new CustomizableThreadFactory("patient-changes-dispatch-");
+        dispatchThread.setDaemon(true);
+        this.dispatchExecutor = Executors.newSingleThreadExecutor(dispatchThread);
+    }
+
+    /**
+     * Streams the changes recorded after the provided sequence number, then new changes as they are recorded, until
+     * the maximum stream duration is reached. Changes are written by a thread of the feed.
+     *
+     * @param after  sequence number of the last change known by the subscriber, the latest changes if null
+     * @param writer writes the changes to the subscriber
+     * @param onEnd  called when the stream ends, with the failure if it did not end normally
+     * @return the stream, cancelling it with interruption ends it
+     * @throws ChangesExpiredException    if changes following the sequence number were purged
+     * @throws RejectedExecutionException if there are already as many subscribers as the configured maximum
+     */
+    public Future<?> stream(Long after, ChangeWriter writer, Consumer<Throwable> onEnd) {
+        long start = resolveStart(after);
+        Subscription subscription = subscribe();
+        try {
+            return subscriberExecutor.submit(() -> {
+                Throwable failure = null;
+                try {
+                    follow(subscription, start, writer);
+                } catch (IOException disconnected) {
+                    log.debug("Change feed subscriber disconnected", disconnected);
+                } catch (InterruptedException cancelled) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException readFailure) {
+                    log.error("Error while streaming patient changes", readFailure);
+                    failure = readFailure;
+                } finally {
+                    unsubscribe(subscription);
+                }
+                onEnd.accept(failure);
+            });
+        } catch (RejectedExecutionException tooManySubscribers) {
+            unsubscribe(subscription);
+            throw tooManySubscribers;
+        }
+    }
+
+    private long resolveStart(Long after) {
+        if (after == null) {
+            // changes more recent than the gap timeout may still be preceded by uncommitted ones
+            return changeRepository.findMaxSequenceBefore(Instant.now().minus(gapTimeout)).orElse(0L);
+        }
+        Assert.isTrue(after >= 0, "Sequence number must not be negative.");
+        Optional<Long> firstRetained = changeRepository.findMinSequence();
+        if (firstRetained.isPresent() && after + 1 < firstRetained.get()) {
+            throw new ChangesExpiredException("Changes following " + after + " are no longer retained, patients must be read again.");
+        }
+        return after;
+    }
+
+    private void follow(Subscription subscription, long after, ChangeWriter writer) throws IOException, InterruptedException {
+        long last = after;
+        boolean catchUp = true;
+        long deadline = System.nanoTime() + maxStreamDuration.toNanos();
+        while (System.nanoTime() - deadline < 0) {
+            if (subscription.resync() || catchUp) {
+                last = catchUp(last, writer);
+                catchUp = false;
+            }
+            PatientChange change = subscription.poll(heartbeatInterval);
+            if (change == null) {
+                writer.heartbeat();
+            } else if (change.getSequence() > last) {
+                // changes read while catching up may be dispatched again
+                writer.write(change);
+                last = change.getSequence();
+            }
+        }
+    }
+
+    private long catchUp(long after, ChangeWriter writer) throws IOException {
+        long last = after;
+        List<PatientChange> changes;
+        do {
+            changes = readAfter(last);
+            for (PatientChange change : changes) {
+                writer.write(change);
+                last = change.getSequence();
+            }
+        } while (changes.size() == readSize);
+        return last;
+    }
+
+    private List<PatientChange> readAfter(long sequence) {
+        return contiguous(changeRepository.findBySequenceGreaterThanOrderBySequenceAsc(sequence, PageRequest.ofSize(readSize)),
+                sequence, Instant.now().minus(gapTimeout));
+    }
+
+    /**
+     * Keeps the changes up to the first missing sequence number, unless the change following it was recorded before
+     * the gap deadline.
+     *
+     * @param changes     changes ordered by sequence number
+     * @param after       sequence number preceding the first change
+     * @param gapDeadline missing sequence numbers followed by a change recorded before this instant are skipped
+     * @return changes that can be streamed
+     */
+    static List<PatientChange> contiguous(List<PatientChange> changes, long after, Instant gapDeadline) {
+        List<PatientChange> contiguousChanges = new ArrayList<>(changes.size());
+        long expected = after + 1;
+        for (PatientChange change : changes) {
+            if (change.getSequence() != expected && change.getChangedAt().isAfter(gapDeadline)) {
+                break;
+            }
+            contiguousChanges.add(change);
+            expected = change.getSequence() + 1;
+        }
+        return contiguousChanges;
+    }
+
+    private synchronized Subscription subscribe() {
+        if (subscriptions.isEmpty()) {
+            lastDispatched = changeRepository.findMaxSequenceBefore(Instant.now().minus(gapTimeout)).orElse(0L);
+        }
+        Subscription subscription = new Subscription(bufferSize);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Dispatches the changes recorded by a transaction of this instance once it is committed.
+     */
+    @TransactionalEventListener
+    public void onChangesRecorded(PatientChangesRecordedEvent event) {
+        requestDispatch();
+    }
+
+    /**
+     * Dispatches the changes recorded by other instances.
+     */
+    @Scheduled(fixedDelayString = "${patients.changes.poll-interval:PT1S}")
+    public void poll() {
+        requestDispatch();
+    }
+
+    /**
+     * Deletes the changes older than the retention period.
+     */
+    @Scheduled(fixedDelayString = "${patients.changes.purge-interval:PT1H}", initialDelayString = "${patients.changes.purge-interval:PT1H}")
+    public void purge() {
+        int purged = changeRepository.deleteByChangedAtBefore(Instant.now().minus(retention));
+        log.debug("Purged {} patient changes", purged);
+    }
+
+    /**
+     * Dispatches new changes on the dispatch thread, so that writers do not wait for it. Requests made while a
+     * dispatch is pending are merged into it.
+     */
+    private void requestDispatch() {
+        if (!subscriptions.isEmpty() && dispatchRequested.compareAndSet(false, true)) {
+            dispatchExecutor.execute(() -> {
+                dispatchRequested.set(false);
+                try {
+                    dispatch();
+                } catch (RuntimeException readFailure) {
+                    log.error("Error while dispatching patient changes", readFailure);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the changes recorded since the last dispatch and adds them to the buffer of each subscriber.
+     */
+    synchronized void dispatch() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        List<PatientChange> changes;
+        do {
+            changes = readAfter(lastDispatched);
+            for (PatientChange change : changes) {
+                subscriptions.forEach(subscription -> subscription.offer(change));
+                lastDispatched = change.getSequence();
+            }
+        } while (changes.size() == readSize);
+    }
+
+    /**
+     * Number of current subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dispatchExecutor.shutdownNow();
+        // interrupts the subscribers, their streams end
+        subscriberExecutor.shutdownNow();
+    }
+
+    /**
+     * Bounded buffer of the changes dispatched to a subscriber.
+     */
+    private static final class Subscription {
+        private final BlockingQueue<PatientChange> buffer;
+        private final AtomicBoolean                overflowed = new AtomicBoolean();
+
+        private Subscription(int bufferSize) {
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void offer(PatientChange change) {
+            if (!buffer.offer(change)) {
+                overflowed.set(true);
+            }
+        }
+
+        /**
+         * Tells whether changes were dropped, in which case the buffer is emptied and the subscriber must catch up
+         * from the table.
+         */
+        private boolean resync() {
+            if (overflowed.getAndSet(false)) {
+                buffer.clear();
+                return true;
+            }
+            return false;
+        }
+
+        private PatientChange poll(Duration timeout) throws InterruptedException {
+            return buffer.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
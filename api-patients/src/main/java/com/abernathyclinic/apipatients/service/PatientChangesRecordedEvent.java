@@ -0,0 +1,13 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when patient changes are recorded in the patient_changes table. Subscribers of the change feed are
+ * notified once the transaction recording them is committed.
+ */
+public class PatientChangesRecordedEvent extends ApplicationEvent {
+    public PatientChangesRecordedEvent(Object source) {
+        super(source);
+    }
+}
@@ -0,0 +1,132 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.model.Patient;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads patients from CSV lines. The first line is a header naming the columns, among family, given, dob, sex,
+ * address and phone, in any order. Fields may be quoted with double quotes, a double quote inside a quoted field is
+ * escaped by doubling it. Fields cannot span several lines.
+ * Also escapes the fields of exported CSV lines, see {@link #escape(String)}.
+ */
+public class PatientCsvFormat {
+    public static final List<String> COLUMNS = List.of("family", "given", "dob", "sex", "address", "phone");
+
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+
+    /**
+     * Creates a reader for the columns named in the header line.
+     *
+     * @param header first line of the CSV content
+     * @throws IllegalArgumentException if the header names an unknown column or lacks a mandatory one
+     */
+    public PatientCsvFormat(String header) {
+        List<String> columns = split(header);
+        for (int index = 0; index < columns.size(); index++) {
+            String column = columns.get(index).trim().toLowerCase(Locale.ROOT);
+            if (!COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Unknown CSV column: " + column + ". Expected columns are " + COLUMNS);
+            }
+            columnIndexes.put(column, index);
+        }
+        for (String mandatory : List.of("family", "given", "dob")) {
+            if (!columnIndexes.containsKey(mandatory)) {
+                throw new IllegalArgumentException("Missing mandatory CSV column: " + mandatory);
+            }
+        }
+    }
+
+    /**
+     * Reads a patient from a CSV line.
+     *
+     * @param line CSV line
+     * @return patient without ID
+     * @throws IllegalArgumentException if the line is malformed or the date of birth is not in yyyy-MM-dd format
+     */
+    public Patient parse(String line) {
+        List<String> fields = split(line);
+        Patient patient = new Patient();
+        patient.setFamily(field(fields, "family"));
+        patient.setGiven(field(fields, "given"));
+        String dob = field(fields, "dob");
+        try {
+            patient.setDob(dob == null ? null : LocalDate.parse(dob));
+        } catch (DateTimeParseException invalidDate) {
+            throw new IllegalArgumentException("Date of birth must be in yyyy-MM-dd format: " + dob);
+        }
+        patient.setSex(field(fields, "sex"));
+        patient.setAddress(field(fields, "address"));
+        patient.setPhone(field(fields, "phone"));
+        return patient;
+    }
+
+    private String field(List<String> fields, String column) {
+        Integer index = columnIndexes.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Escapes a CSV field: the field is quoted if it contains a comma, a double quote or a line break.
+     *
+     * @param value field value, null for an empty field
+     * @return field as written in a CSV line
+     */
+    public static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Splits a CSV line into fields.
+     *
+     * @param line CSV line
+     * @return unquoted fields
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int index = 0; index < line.length(); index++) {
+            char character = line.charAt(index);
+            if (quoted) {
+                if (character == '"' && index + 1 < line.length() && line.charAt(index + 1) == '"') {
+                    field.append('"');
+                    index++;
+                } else if (character == '"') {
+                    quoted = false;
+                } else {
+                    field.append(character);
+                }
+            } else if (character == '"') {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,47 @@
+package com.abernathyclinic.apipatients.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursor tokens used to paginate patients on their ID.
+ */
+public final class PatientCursor {
+    private static final String PREFIX = "id:";
+
+    private PatientCursor() {
+    }
+
+    /**
+     * Builds the cursor pointing after the given patient ID.
+     *
+     * @param lastId ID of the last patient of the current page
+     * @return opaque cursor token
+     */
+    public static String encode(Integer lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the patient ID a cursor points after.
+     *
+     * @param cursor opaque cursor token, may be null or empty for the first page
+     * @return ID to read after, 0 for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static int decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith(PREFIX)) {
+                return Integer.parseInt(decoded.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException malformed) {
+            // thrown by the Base64 decoder and by Integer.parseInt, reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
@@ -0,0 +1,172 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
+import com.abernathyclinic.apipatients.model.DuplicateCandidate;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.repository.PatientRepository;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Finds patients who may be the same person entered twice, with names spelled differently. Candidates are searched
+ * in the blocks of the patient only, see PatientMatcher: through the indexed blocking_key column when a patient is
+ * created, through the in-memory search index for the duplicates report.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class PatientDuplicateDetector {
+    /**
+     * What to do when a created patient may duplicate an existing one.
+     */
+    public enum OnDuplicate {
+        /**
+         * Create the patient and log the possible duplicates.
+         */
+        WARN,
+        /**
+         * Reject the patient like an exact duplicate.
+         */
+        REJECT
+    }
+
+    @Autowired
+    PatientRepository patientRepository;
+
+    @Autowired
+    PatientSearchIndex searchIndex;
+
+    @Autowired
+    PatientShards shards;
+
+    /**
+     * Score from which two patients are reported as possible duplicates.
+     */
+    @Value("${patients.duplicates.threshold:0.9}")
+    double threshold;
+
+    @Value("${patients.duplicates.on-create:WARN}")
+    OnDuplicate onCreate;
+
+    @Value("${patients.duplicates.backfill-size:1000}")
+    int backfillSize;
+
+    /**
+     * Looks for the existing patients who may be the same person as a patient about to be created, on every shard:
+     * similar names do not hash to the shard of the patient. Must be called outside of any transaction.
+     *
+     * @param patient patient to create
+     * @return possible duplicates, most likely first
+     * @throws AlreadyExistsException if there are possible duplicates and patients.duplicates.on-create is REJECT
+     */
+    public List<DuplicateCandidate> checkNewPatient(Patient patient) {
+        String family = PatientSearchIndex.normalize(patient.getFamily());
+        String given = PatientSearchIndex.normalize(patient.getGiven());
+        List<DuplicateCandidate> duplicates = new ArrayList<>();
+        Set<String> blockingKeys = PatientMatcher.blockingKeys(patient.getFamily(), patient.getDob());
+        if (blockingKeys.isEmpty()) {
+            return duplicates;
+        }
+        List<Patient> candidates = shards.scatter(shard -> patientRepository.findByBlockingKeyIn(blockingKeys))
+                .stream().flatMap(List::stream).toList();
+        for (Patient existing : candidates) {
+            double score = PatientMatcher.score(family, given, patient.getDob(),
+                    PatientSearchIndex.normalize(existing.getFamily()), PatientSearchIndex.normalize(existing.getGiven()),
+                    existing.getDob());
+            if (score >= threshold && !Objects.equals(existing.getId(), patient.getId())) {
+                duplicates.add(new DuplicateCandidate(patient.getId(), existing.getId(), score));
+            }
+        }
+        if (duplicates.isEmpty()) {
+            return duplicates;
+        }
+        duplicates.sort(Comparator.comparingDouble(DuplicateCandidate::getScore).reversed());
+        Metrics.counter(MetricsConfig.DUPLICATES, "source", "create").increment(duplicates.size());
+        String message = "Patient " + patient.getFamily() + " " + patient.getGiven() + ", born the " + patient.getDob()
+                + " may be patient " + duplicates.get(0).getDuplicateId() + ".";
+        if (onCreate == OnDuplicate.REJECT) {
+            throw new AlreadyExistsException(message);
+        }
+        log.warn(message);
+        return duplicates;
+    }
+
+    /**
+     * Lists the pairs of patients who may be the same person, comparing the patients of each block of the in-memory
+     * search index, which holds the patients of every shard.
+     *
+     * @param minScore score from which pairs are listed, patients.duplicates.threshold if null
+     * @param limit    maximum number of listed pairs
+     * @return possible duplicates, most likely first, the lower patient ID first in each pair
+     */
+    public List<DuplicateCandidate> findDuplicates(Double minScore, int limit) {
+        Assert.isTrue(limit > 0, "Limit must be positive.");
+        double scoreThreshold = minScore == null ? threshold : minScore;
+        searchIndex.loadIfNeeded(patients -> shards.streamEach(patientRepository::streamAllByOrderByIdAsc, patients));
+        Set<List<Integer>> pairs = new HashSet<>();
+        List<DuplicateCandidate> duplicates = new ArrayList<>();
+        for (List<PatientSearchIndex.Entry> block : searchIndex.blocks()) {
+            for (int i = 0; i < block.size(); i++) {
+                PatientSearchIndex.Entry entry = block.get(i);
+                for (int j = i + 1; j < block.size(); j++) {
+                    PatientSearchIndex.Entry other = block.get(j);
+                    double score = PatientMatcher.score(entry.getFamily(), entry.getGiven(), entry.getDob(),
+                            other.getFamily(), other.getGiven(), other.getDob());
+                    if (score < scoreThreshold) {
+                        continue;
+                    }
+                    Integer first = Math.min(entry.getId(), other.getId());
+                    Integer second = Math.max(entry.getId(), other.getId());
+                    // patients sharing both blocking keys are compared twice
+                    if (pairs.add(List.of(first, second))) {
+                        duplicates.add(new DuplicateCandidate(first, second, score));
+                    }
+                }
+            }
+        }
+        duplicates.sort(Comparator.comparingDouble(DuplicateCandidate::getScore).reversed()
+                .thenComparing(DuplicateCandidate::getPatientId)
+                .thenComparing(DuplicateCandidate::getDuplicateId));
+        return duplicates.size() > limit ? duplicates.subList(0, limit) : duplicates;
+    }
+
+    /**
+     * Sets the blocking key of patients written before blocking keys existed, a few at a time on each shard.
+     *
+     * @return number of updated patients
+     */
+    @Scheduled(fixedDelayString = "${patients.duplicates.backfill-interval:PT1M}",
+            initialDelayString = "${patients.duplicates.backfill-interval:PT1M}")
+    public int backfillBlockingKeys() {
+        int updated = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            updated += shards.inTransaction(shard, false, () -> {
+                List<Patient> patients = patientRepository.findByBlockingKeyIsNull(PageRequest.ofSize(backfillSize));
+                for (Patient patient : patients) {
+                    patientRepository.updateBlockingKey(patient.getId(),
+                            PatientMatcher.blockingKey(patient.getFamily(), patient.getDob()));
+                }
+                return patients.size();
+            });
+        }
+        if (updated > 0) {
+            log.info("Set the blocking key of {} patients", updated);
+        }
+        return updated;
+    }
+}
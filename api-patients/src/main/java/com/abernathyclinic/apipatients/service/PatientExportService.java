@@ -0,0 +1,169 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.exceptions.ChangesExpiredException;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports patients as CSV or newline delimited JSON. Rows are read with a forward-only cursor, one shard after the
+ * other, and written as they are read, so that memory use does not depend on the number of patients.
+ * <p>
+ * Incremental exports are limited to the patients changed in a time range, found in the patient_changes table of the
+ * shard. Deleted patients are not exported, the change feed reports them.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class PatientExportService {
+    private static final String SELECT_PATIENTS = "SELECT patient_id, family, given, date_of_birth, gender, address, phone, version"
+            + " FROM patients";
+    private static final String CHANGED_IN_RANGE = " WHERE patient_id IN"
+            + " (SELECT patient_id FROM patient_changes WHERE changed_at >= ? AND changed_at < ?)";
+    private static final String CSV_HEADER       = "id," + String.join(",", PatientCsvFormat.COLUMNS) + ",version\n";
+    private static final int    WRITE_BUFFER     = 64 * 1024;
+
+    /**
+     * Supported formats of exported content.
+     */
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    private final JdbcTemplate  jdbcTemplate;
+    private final PatientShards shards;
+    private final ObjectMapper  objectMapper;
+    private final int           fetchSize;
+    private final Duration      changesRetention;
+    private final boolean       changesRecorded;
+
+    public PatientExportService(JdbcTemplate jdbcTemplate, PatientShards shards, ObjectMapper objectMapper,
+                                @Value("${patients.export.fetch-size:1000}") int fetchSize,
+                                @Value("${patients.changes.retention:P7D}") Duration changesRetention,
+                                @Value("${patients.changes.enabled:true}") boolean changesRecorded) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+        this.changesRetention = changesRetention;
+        this.changesRecorded = changesRecorded;
+    }
+
+    /**
+     * Checks the time range of an incremental export.
+     *
+     * @param since start of the range, included, null for a full export
+     * @param until end of the range, excluded, now if null
+     * @throws IllegalArgumentException if the range has an end but no start
+     * @throws ChangesExpiredException  if changes made since the start of the range are no longer retained, or are
+     *                                  not recorded since patients.changes.enabled is false
+     */
+    public void checkRange(Instant since, Instant until) {
+        Assert.isTrue(since != null || until == null, "The start of the range must be provided with its end.");
+        if (since != null && !changesRecorded) {
+            throw new ChangesExpiredException("Changes are not recorded, patients must be exported in full.");
+        }
+        if (since != null && since.isBefore(Instant.now().minus(changesRetention))) {
+            throw new ChangesExpiredException("Changes made since " + since + " are no longer retained, patients must be exported in full.");
+        }
+    }
+
+    /**
+     * Writes patients ordered by ID on each shard, in the requested format. CSV content has a header line with the id, family,
+     * given, dob, sex, address, phone and version columns.
+     *
+     * @param output content output, not closed
+     * @param format content format
+     * @param since  start of the range of change times, included, null for a full export
+     * @param until  end of the range of change times, excluded, now if null
+     * @return number of exported patients
+     * @throws IOException if the content cannot be written
+     */
+    public long export(OutputStream output, Format format, Instant since, Instant until) throws IOException {
+        checkRange(since, until);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER);
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+        }
+        AtomicLong exported = new AtomicLong();
+        RowCallbackHandler rowWriter = resultSet -> {
+            try {
+                if (format == Format.CSV) {
+                    writeCsv(writer, resultSet);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(toPatient(resultSet)));
+                    writer.write('\n');
+                }
+            } catch (IOException writeException) {
+                throw new UncheckedIOException(writeException);
+            }
+            exported.incrementAndGet();
+        };
+        try {
+            Instant end = until == null ? Instant.now() : until;
+            for (int shard = 0; shard < shards.count(); shard++) {
+                // read-only transactions are served by read replicas when there are some
+                shards.inTransaction(shard, true, () -> {
+                    jdbcTemplate.query(connection -> {
+                        PreparedStatement statement = connection.prepareStatement(SELECT_PATIENTS
+                                        + (since == null ? "" : CHANGED_IN_RANGE) + " ORDER BY patient_id",
+                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                        // fetched by chunks with a server side cursor, see useCursorFetch in the datasource URL
+                        statement.setFetchSize(fetchSize);
+                        if (since != null) {
+                            statement.setTimestamp(1, Timestamp.from(since));
+                            statement.setTimestamp(2, Timestamp.from(end));
+                        }
+                        return statement;
+                    }, rowWriter);
+                    return null;
+                });
+            }
+        } catch (UncheckedIOException writeException) {
+            throw writeException.getCause();
+        }
+        writer.flush();
+        log.info("Exported {} patients as {}{}", exported.get(), format, since == null ? "" : ", changed since " + since);
+        return exported.get();
+    }
+
+    private static void writeCsv(Writer writer, ResultSet resultSet) throws SQLException, IOException {
+        writer.write(Integer.toString(resultSet.getInt(1)));
+        for (int column = 2; column <= 7; column++) {
+            writer.write(',');
+            writer.write(PatientCsvFormat.escape(resultSet.getString(column)));
+        }
+        writer.write(',');
+        writer.write(Integer.toString(resultSet.getInt(8)));
+        writer.write('\n');
+    }
+
+    private static Patient toPatient(ResultSet resultSet) throws SQLException {
+        return new Patient(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3),
+                resultSet.getObject(4, LocalDate.class), resultSet.getString(5), resultSet.getString(6),
+                resultSet.getString(7), resultSet.getInt(8));
+    }
+}
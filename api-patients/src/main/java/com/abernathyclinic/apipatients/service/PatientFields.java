@@ -0,0 +1,45 @@
+package com.abernathyclinic.apipatients.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses the fields= parameter selecting the patient properties to read and return.
+ */
+public final class PatientFields {
+    /**
+     * Patient properties that can be requested, as named in the JSON representation of a patient.
+     */
+    public static final Set<String> SELECTABLE = Set.of("id", "family", "given", "dob", "sex", "address", "phone", "version");
+
+    private PatientFields() {
+    }
+
+    /**
+     * Reads the requested fields. The patient ID is always selected, first, so that patients can be identified and
+     * paginated.
+     *
+     * @param fields comma separated patient properties
+     * @return selected properties, without duplicates, in the requested order
+     * @throws IllegalArgumentException if a property is unknown
+     */
+    public static List<String> parse(String fields) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        if (fields != null) {
+            for (String field : fields.split(",")) {
+                String property = field.trim();
+                if (property.isEmpty()) {
+                    continue;
+                }
+                if (!SELECTABLE.contains(property)) {
+                    throw new IllegalArgumentException("Unknown patient field: " + property);
+                }
+                selected.add(property);
+            }
+        }
+        return new ArrayList<>(selected);
+    }
+}
@@ -0,0 +1,106 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Allocates patient IDs that are unique across the shards without relying on AUTO_INCREMENT, see PatientShards.
+ * <p>
+ * Each shard counts blocks of patients.ids.block-size IDs in its patient_id_blocks table. A block is reserved with
+ * one update in a transaction of its own, then its IDs are handed out from memory, so that most creations do not
+ * read the table. The n-th ID of a shard is n * shards + shard: IDs never collide between shards and the shard of a
+ * patient is their ID modulo the number of shards. IDs left in a block when the application stops are skipped.
+ * The first block of a shard starts after the existing patients. ReactivePatientIdGenerator shares the blocks of
+ * shard 0 with the reactive profile.
+ */
+@Component
+@Profile("!reactive")
+public class PatientIdGenerator {
+    private static final String RESERVE_BLOCK = "UPDATE patient_id_blocks SET next_block = next_block + 1 WHERE shard = ?";
+    private static final String SELECT_BLOCK  = "SELECT next_block - 1 FROM patient_id_blocks WHERE shard = ?";
+    private static final String SELECT_MAX_ID = "SELECT COALESCE(MAX(patient_id), 0) FROM patients";
+    private static final String INSERT_SHARD  = "INSERT INTO patient_id_blocks (shard, next_block) VALUES (?, ?)";
+
+    private final JdbcTemplate  jdbcTemplate;
+    private final PatientShards shards;
+    private final int           blockSize;
+    private final Block[]       blocks;
+
+    public PatientIdGenerator(JdbcTemplate jdbcTemplate, PatientShards shards,
+                              @Value("${patients.ids.block-size:100}") int blockSize) {
+        Assert.isTrue(blockSize > 0, "Block size must be positive.");
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.blockSize = blockSize;
+        this.blocks = new Block[shards.count()];
+        for (int shard = 0; shard < blocks.length; shard++) {
+            blocks[shard] = new Block();
+        }
+    }
+
+    /**
+     * Allocates the ID of a new patient.
+     *
+     * @param shard shard on which the patient will be created
+     * @return unused patient ID, whose value modulo the number of shards is the shard
+     * @throws IllegalStateException if the IDs of the shard are exhausted
+     */
+    public int nextId(int shard) {
+        Block block = blocks[shard];
+        long local;
+        synchronized (block) {
+            if (block.next == block.end) {
+                long reserved = reserveBlock(shard);
+                block.next = reserved * blockSize;
+                block.end = block.next + blockSize;
+            }
+            local = block.next++;
+        }
+        long id = local * shards.count() + shard;
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Patient IDs of shard " + shard + " are exhausted.");
+        }
+        return (int) id;
+    }
+
+    /**
+     * Reserves the next block of IDs of a shard, creating the counter of the shard on first use.
+     *
+     * @return reserved block number
+     */
+    private long reserveBlock(int shard) {
+        while (true) {
+            Long reserved = shards.inNewTransaction(shard, () -> {
+                if (jdbcTemplate.update(RESERVE_BLOCK, shard) == 0) {
+                    return null;
+                }
+                return jdbcTemplate.queryForObject(SELECT_BLOCK, Long.class, shard);
+            });
+            if (reserved != null) {
+                return reserved;
+            }
+            try {
+                return shards.inNewTransaction(shard, () -> {
+                    long maxId = jdbcTemplate.queryForObject(SELECT_MAX_ID, Long.class);
+                    long firstBlock = maxId / shards.count() / blockSize + 1;
+                    jdbcTemplate.update(INSERT_SHARD, shard, firstBlock + 1);
+                    return firstBlock;
+                });
+            } catch (DuplicateKeyException concurrentlyCreated) {
+                // another instance created the counter first, reserve a block from it
+            }
+        }
+    }
+
+    /**
+     * IDs of a shard not handed out yet, from next included to end excluded, in units of the shard.
+     */
+    private static final class Block {
+        private long next;
+        private long end;
+    }
+}
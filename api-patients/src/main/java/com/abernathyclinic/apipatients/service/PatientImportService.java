@@ -0,0 +1,365 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import com.abernathyclinic.apipatients.model.ImportReport;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.PatientDuplicateDetector.OnDuplicate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.Assert;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Imports patients in bulk from CSV or newline delimited JSON content. Content is read line by line, duplicates are
+ * detected in memory against the natural keys (family, given, date of birth) of existing patients, possible duplicates
+ * against the blocks of existing patients (see PatientMatcher), and patients are written with JDBC batch inserts, one
+ * transaction per batch and shard, see PatientShards.
+ * <p>
+ * The change feed skips a missing sequence number once the following change is older than
+ * patients.changes.gap-timeout, so batch transactions time out before it: a batch committed later would be missed by
+ * the subscribers.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class PatientImportService {
+    private static final String INSERT_PATIENT      = "INSERT INTO patients (patient_id, family, given, date_of_birth, gender,"
+            + " address, phone, blocking_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CHANGE       = "INSERT INTO patient_changes (patient_id, change_type, version, changed_at)"
+            + " VALUES (?, 'CREATE', 0, ?)";
+    private static final String SELECT_NATURAL_KEYS = "SELECT patient_id, family, given, date_of_birth FROM patients";
+    private static final char   KEY_SEPARATOR       = Character.MIN_VALUE;
+
+    /**
+     * Supported formats of imported content.
+     */
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    private final JdbcTemplate              jdbcTemplate;
+    private final PatientShards             shards;
+    private final PatientIdGenerator        idGenerator;
+    private final ObjectMapper              objectMapper;
+    private final Validator                 validator;
+    private final PatientSearchIndex        searchIndex;
+    private final PatientStatistics         statistics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int                       batchSize;
+    private final int                       maxReportedErrors;
+    private final double                    duplicateThreshold;
+    private final OnDuplicate               onDuplicate;
+    private final boolean                   recordChanges;
+    private final int                       transactionTimeout;
+
+    public PatientImportService(JdbcTemplate jdbcTemplate, PatientShards shards, PatientIdGenerator idGenerator,
+                                ObjectMapper objectMapper, Validator validator, PatientSearchIndex searchIndex,
+                                PatientStatistics statistics, ApplicationEventPublisher eventPublisher,
+                                @Value("${patients.import.batch-size:1000}") int batchSize,
+                                @Value("${patients.import.max-reported-errors:1000}") int maxReportedErrors,
+                                @Value("${patients.duplicates.threshold:0.9}") double duplicateThreshold,
+                                @Value("${patients.duplicates.on-create:WARN}") OnDuplicate onDuplicate,
+                                @Value("${patients.changes.enabled:true}") boolean recordChanges,
+                                @Value("${patients.changes.gap-timeout:PT2S}") Duration gapTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.idGenerator = idGenerator;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.searchIndex = searchIndex;
+        this.statistics = statistics;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.duplicateThreshold = duplicateThreshold;
+        this.onDuplicate = onDuplicate;
+        this.recordChanges = recordChanges;
+        // transaction timeouts are in seconds, the timeout must be strictly shorter than the gap timeout
+        this.transactionTimeout = (int) ((gapTimeout.toMillis() - 1) / 1000);
+        Assert.isTrue(!recordChanges || transactionTimeout > 0,
+                "patients.changes.gap-timeout must be longer than one second to bound the import transactions.");
+    }
+
+    /**
+     * Imports patients. Rows that cannot be parsed, are invalid or duplicate a patient are reported and skipped, other
+     * rows are saved.
+     *
+     * @param content imported content, UTF-8 encoded
+     * @param format  format of the content
+     * @return report of the import
+     * @throws IOException              if the content cannot be read
+     * @throws IllegalArgumentException if the CSV header is invalid
+     */
+    public ImportReport importPatients(InputStream content, Format format) throws IOException {
+        ImportReport report = new ImportReport(maxReportedErrors);
+        Set<String> knownKeys = new HashSet<>();
+        Map<String, List<BlockMember>> blocks = new HashMap<>();
+        loadNaturalKeys(knownKeys, blocks);
+        List<Patient> batch = new ArrayList<>(batchSize);
+        List<Long> batchLineNumbers = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8))) {
+            PatientCsvFormat csvFormat = null;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && csvFormat == null) {
+                    csvFormat = new PatientCsvFormat(line);
+                    continue;
+                }
+                report.rowRead();
+                Patient patient;
+                try {
+                    patient = format == Format.CSV ? csvFormat.parse(line) : parseJson(line);
+                } catch (IllegalArgumentException parseException) {
+                    report.invalid(lineNumber, parseException.getMessage());
+                    continue;
+                }
+                Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+                if (!violations.isEmpty()) {
+                    report.invalid(lineNumber, violations.stream()
+                            .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+                    continue;
+                }
+                if (!knownKeys.add(naturalKey(patient.getFamily(), patient.getGiven(), patient.getDob().toString()))) {
+                    report.duplicate(lineNumber, "Patient " + patient.getFamily() + " " + patient.getGiven()
+                            + ", born the " + patient.getDob() + " already exists.");
+                    continue;
+                }
+                String possibleDuplicate = findPossibleDuplicate(blocks, patient, lineNumber);
+                if (possibleDuplicate != null) {
+                    Metrics.counter(MetricsConfig.DUPLICATES, "source", "import").increment();
+                    if (onDuplicate == OnDuplicate.REJECT) {
+                        report.duplicate(lineNumber, possibleDuplicate);
+                        continue;
+                    }
+                    report.possibleDuplicate();
+                }
+                batch.add(patient);
+                batchLineNumbers.add(lineNumber);
+                if (batch.size() == batchSize) {
+                    report.imported(insert(batch, batchLineNumbers, report));
+                    batch.clear();
+                    batchLineNumbers.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                report.imported(insert(batch, batchLineNumbers, report));
+            }
+        } finally {
+            if (report.getImported() > 0) {
+                // imported patients did not go through the search index, it is loaded again on next search
+                searchIndex.invalidate();
+            }
+        }
+        log.info("Imported {} patients out of {} rows, {} duplicates, {} invalid rows",
+                report.getImported(), report.getRows(), report.getDuplicates(), report.getInvalid());
+        return report;
+    }
+
+    private Patient parseJson(String line) {
+        try {
+            Patient patient = objectMapper.readValue(line, Patient.class);
+            patient.setId(null);
+            return patient;
+        } catch (JsonProcessingException invalidJson) {
+            throw new IllegalArgumentException("Invalid JSON: " + invalidJson.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Reads the natural keys of all existing patients, on every shard, and groups them by blocking key.
+     *
+     * @param keys   filled with the natural keys, see {@link #naturalKey(String, String, String)}
+     * @param blocks filled with the patients of each blocking key
+     */
+    private void loadNaturalKeys(Set<String> keys, Map<String, List<BlockMember>> blocks) {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            shards.inTransaction(shard, true, () -> {
+                jdbcTemplate.query(connection -> {
+                            PreparedStatement statement = connection.prepareStatement(SELECT_NATURAL_KEYS);
+                            statement.setFetchSize(batchSize);
+                            return statement;
+                        },
+                        (RowCallbackHandler) resultSet -> {
+                            String family = resultSet.getString(2);
+                            String given = resultSet.getString(3);
+                            LocalDate dob = resultSet.getObject(4, LocalDate.class);
+                            keys.add(naturalKey(family, given, dob.toString()));
+                            addToBlocks(blocks, new BlockMember("patient " + resultSet.getInt(1), family, given, dob));
+                        });
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Looks for a patient, existing or imported from an earlier row, who may be the same person as an imported
+     * patient, then adds the imported patient to its blocks.
+     *
+     * @return message naming the possible duplicate, null if there is none
+     */
+    private String findPossibleDuplicate(Map<String, List<BlockMember>> blocks, Patient patient, long lineNumber) {
+        BlockMember member = new BlockMember("row " + lineNumber, patient.getFamily(), patient.getGiven(), patient.getDob());
+        String possibleDuplicate = null;
+        for (String blockingKey : member.blockingKeys()) {
+            for (BlockMember other : blocks.getOrDefault(blockingKey, List.of())) {
+                if (PatientMatcher.score(member.family(), member.given(), member.dob(),
+                        other.family(), other.given(), other.dob()) >= duplicateThreshold) {
+                    possibleDuplicate = "Patient " + patient.getFamily() + " " + patient.getGiven() + ", born the "
+                            + patient.getDob() + " may be " + other.name() + ".";
+                    break;
+                }
+            }
+            if (possibleDuplicate != null) {
+                break;
+            }
+        }
+        addToBlocks(blocks, member);
+        return possibleDuplicate;
+    }
+
+    private static void addToBlocks(Map<String, List<BlockMember>> blocks, BlockMember member) {
+        for (String blockingKey : member.blockingKeys()) {
+            blocks.computeIfAbsent(blockingKey, key -> new ArrayList<>(2)).add(member);
+        }
+    }
+
+    /**
+     * Inserts patients on the shards of their natural keys, with one JDBC batch per shard in its own transaction. If a
+     * patient of a batch was created since the natural keys were loaded, the unique key rejects the batch and its
+     * patients are inserted one by one instead so that only the duplicates are skipped.
+     *
+     * @param patients    patients to insert
+     * @param lineNumbers line numbers of the patients, for the report
+     * @param report      report of the import, duplicates are added to it
+     * @return number of inserted patients
+     */
+    private int insert(List<Patient> patients, List<Long> lineNumbers, ImportReport report) {
+        Map<Integer, List<Integer>> indexesByShard = new TreeMap<>();
+        for (int index = 0; index < patients.size(); index++) {
+            Patient patient = patients.get(index);
+            int shard = shards.shardOf(patient.getFamily(), patient.getGiven(), patient.getDob());
+            patient.setId(idGenerator.nextId(shard));
+            indexesByShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(index);
+        }
+        int imported = 0;
+        for (Map.Entry<Integer, List<Integer>> shardIndexes : indexesByShard.entrySet()) {
+            int shard = shardIndexes.getKey();
+            List<Patient> shardPatients = shardIndexes.getValue().stream().map(patients::get).toList();
+            try {
+                batchInsert(shard, shardPatients);
+                imported += shardPatients.size();
+            } catch (DuplicateKeyException concurrentlyCreated) {
+                for (int index : shardIndexes.getValue()) {
+                    Patient patient = patients.get(index);
+                    try {
+                        batchInsert(shard, List.of(patient));
+                        imported++;
+                    } catch (DuplicateKeyException duplicate) {
+                        report.duplicate(lineNumbers.get(index), "Patient " + patient.getFamily() + " "
+                                + patient.getGiven() + ", born the " + patient.getDob() + " already exists.");
+                    }
+                }
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Inserts patients and records their creation for the change feed if enabled, in one transaction on their shard,
+     * then counts them in the demographic statistics. The transaction is bounded by the gap timeout of the change feed
+     * when changes are recorded.
+     *
+     * @throws org.springframework.transaction.TransactionTimedOutException if the batch takes longer than the timeout
+     */
+    private void batchInsert(int shard, List<Patient> patients) {
+        int timeout = recordChanges ? transactionTimeout : TransactionDefinition.TIMEOUT_DEFAULT;
+        shards.inNewTransaction(shard, timeout, () -> {
+            jdbcTemplate.batchUpdate(INSERT_PATIENT, patients, patients.size(),
+                    (statement, patient) -> {
+                        statement.setInt(1, patient.getId());
+                        statement.setString(2, patient.getFamily());
+                        statement.setString(3, patient.getGiven());
+                        statement.setDate(4, Date.valueOf(patient.getDob()));
+                        statement.setString(5, patient.getSex());
+                        statement.setString(6, patient.getAddress());
+                        statement.setString(7, patient.getPhone());
+                        statement.setString(8, PatientMatcher.blockingKey(patient.getFamily(), patient.getDob()));
+                    });
+            if (!recordChanges) {
+                return null;
+            }
+            Timestamp changedAt = Timestamp.from(Instant.now());
+            jdbcTemplate.batchUpdate(INSERT_CHANGE, patients, patients.size(),
+                    (statement, patient) -> {
+                        statement.setInt(1, patient.getId());
+                        statement.setTimestamp(2, changedAt);
+                    });
+            eventPublisher.publishEvent(new PatientChangesRecordedEvent(this));
+            return null;
+        });
+        statistics.created(patients);
+    }
+
+    /**
+     * Builds the key used to detect duplicates. Names are compared case-insensitively, like the default MySQL collation.
+     */
+    private static String naturalKey(String family, String given, String dob) {
+        return family.trim().toLowerCase(Locale.ROOT) + KEY_SEPARATOR + given.trim().toLowerCase(Locale.ROOT) + KEY_SEPARATOR + dob;
+    }
+
+    /**
+     * Patient of a block, with normalized names.
+     *
+     * @param name name in the report, the patient ID or the row number
+     */
+    private record BlockMember(String name, String family, String given, LocalDate dob) {
+        BlockMember {
+            family = PatientSearchIndex.normalize(family);
+            given = PatientSearchIndex.normalize(given);
+        }
+
+        Set<String> blockingKeys() {
+            return PatientMatcher.blockingKeys(family, dob);
+        }
+    }
+}
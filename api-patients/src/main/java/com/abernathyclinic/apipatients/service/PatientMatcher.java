@@ -0,0 +1,148 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Compares patients to find the ones that may be the same person entered twice, for instance Ferguson Lucas and
+ * Fergusson Lukas born the same day.
+ * <p>
+ * Only patients sharing a blocking key are compared: the Double Metaphone code of the family name followed by the year
+ * of birth. Names that sound alike get the same code, so that a new patient is compared with a handful of patients
+ * instead of all of them. Patients of a block are then scored with the Jaro-Winkler similarity of their names and the
+ * closeness of their dates of birth.
+ */
+public final class PatientMatcher {
+    private static final double FAMILY_WEIGHT = 0.45;
+    private static final double GIVEN_WEIGHT  = 0.35;
+    private static final double DOB_WEIGHT    = 0.2;
+
+    private PatientMatcher() {
+    }
+
+    /**
+     * Builds the blocking key stored with the patient, from the primary Double Metaphone code of the family name.
+     *
+     * @param family family name
+     * @param dob    date of birth
+     * @return blocking key, null if the family name or the date of birth is missing
+     */
+    public static String blockingKey(String family, LocalDate dob) {
+        if (family == null || dob == null) {
+            return null;
+        }
+        return new DoubleMetaphone().doubleMetaphone(PatientSearchIndex.normalize(family)) + dob.getYear();
+    }
+
+    /**
+     * Builds the blocking keys under which a patient is looked for: the primary and the alternate Double Metaphone
+     * codes of the family name, followed by the year of birth.
+     *
+     * @param family family name
+     * @param dob    date of birth
+     * @return one or two blocking keys, none if the family name or the date of birth is missing
+     */
+    public static Set<String> blockingKeys(String family, LocalDate dob) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (family != null && dob != null) {
+            DoubleMetaphone doubleMetaphone = new DoubleMetaphone();
+            String name = PatientSearchIndex.normalize(family);
+            keys.add(doubleMetaphone.doubleMetaphone(name) + dob.getYear());
+            keys.add(doubleMetaphone.doubleMetaphone(name, true) + dob.getYear());
+        }
+        return keys;
+    }
+
+    /**
+     * Scores the likelihood that two patients are the same person.
+     *
+     * @param family      normalized family name of the first patient, see PatientSearchIndex.normalize
+     * @param given       normalized given name of the first patient
+     * @param dob         date of birth of the first patient
+     * @param otherFamily normalized family name of the second patient
+     * @param otherGiven  normalized given name of the second patient
+     * @param otherDob    date of birth of the second patient
+     * @return score from 0, nothing in common, to 1, same names and date of birth
+     */
+    public static double score(String family, String given, LocalDate dob,
+                               String otherFamily, String otherGiven, LocalDate otherDob) {
+        return FAMILY_WEIGHT * jaroWinkler(family, otherFamily)
+                + GIVEN_WEIGHT * jaroWinkler(given, otherGiven)
+                + DOB_WEIGHT * dobSimilarity(dob, otherDob);
+    }
+
+    /**
+     * Same date scores 1, same year with the same month or day, a typical typing error, scores 0.5.
+     */
+    private static double dobSimilarity(LocalDate dob, LocalDate otherDob) {
+        if (dob == null || otherDob == null) {
+            return 0;
+        }
+        if (dob.equals(otherDob)) {
+            return 1;
+        }
+        if (dob.getYear() == otherDob.getYear()
+                && (dob.getMonthValue() == otherDob.getMonthValue() || dob.getDayOfMonth() == otherDob.getDayOfMonth())) {
+            return 0.5;
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the Jaro-Winkler similarity of two strings, which favours strings sharing a common prefix.
+     *
+     * @param first  first string
+     * @param second second string
+     * @return similarity from 0 to 1, 1 for equal strings
+     */
+    static double jaroWinkler(String first, String second) {
+        if (first.equals(second)) {
+            return 1;
+        }
+        if (first.isEmpty() || second.isEmpty()) {
+            return 0;
+        }
+        int window = Math.max(0, Math.max(first.length(), second.length()) / 2 - 1);
+        boolean[] firstMatched = new boolean[first.length()];
+        boolean[] secondMatched = new boolean[second.length()];
+        int matches = 0;
+        for (int i = 0; i < first.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(second.length() - 1, i + window);
+            for (int j = from; j <= to; j++) {
+                if (!secondMatched[j] && first.charAt(i) == second.charAt(j)) {
+                    firstMatched[i] = true;
+                    secondMatched[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < first.length(); i++) {
+            if (firstMatched[i]) {
+                while (!secondMatched[j]) {
+                    j++;
+                }
+                if (first.charAt(i) != second.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double jaro = ((double) matches / first.length() + (double) matches / second.length()
+                + (matches - transpositions / 2.0) / matches) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(first.length(), second.length()))
+                && first.charAt(prefix) == second.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+}
@@ -0,0 +1,296 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientSearchCriteria;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of patients used to search them by name prefix without scanning the patients table.
+ * Names are normalized (lower case, without accents) and kept in sorted maps so that a prefix lookup is a range
+ * read. Patients are also grouped by blocking key, see PatientMatcher, to look for possible duplicates.
+ * The index is loaded from database on first use and must be kept in sync on every committed patient write.
+ * <p>
+ * Each patient is updated atomically by computing its entry, so that concurrent writes of a patient leave the names
+ * of the latest version only. Patients removed while the index is loading are remembered, so that the load does not add
+ * them back.
+ */
+@Slf4j
+@Component
+public class PatientSearchIndex {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_DIGITS = Pattern.compile("\\D+");
+    /**
+     * Separates the normalized name from the patient ID in the keys of the name maps.
+     */
+    private static final char SEPARATOR = Character.MIN_VALUE;
+
+    private static final Comparator<Entry> BY_NAME = Comparator.comparing(Entry::getFamily)
+            .thenComparing(Entry::getGiven)
+            .thenComparing(Entry::getId);
+
+    private final Map<Integer, Entry>           entries  = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Integer> byFamily = new ConcurrentSkipListMap<>();
+    private final NavigableMap<String, Integer> byGiven  = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<Integer>>     byBlock  = new ConcurrentHashMap<>();
+    /**
+     * IDs of patients removed while the index was not loaded, skipped by the load.
+     */
+    private final Set<Integer>                  removed  = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean loaded;
+
+    /**
+     * Loads the index if it has not been loaded yet. Patients written while loading take precedence over the loaded
+     * ones.
+     *
+     * @param patients supplier of the stream of all patients, only called if the index must be loaded
+     */
+    public void loadIfNeeded(Supplier<Stream<Patient>> patients) {
+        loadIfNeeded(consumer -> {
+            try (Stream<Patient> stream = patients.get()) {
+                stream.forEach(consumer);
+            }
+        });
+    }
+
+    /**
+     * Loads the index if it has not been loaded yet, from patients read by several sources such as the shards of the
+     * patients database. Patients written while loading take precedence over the loaded ones.
+     *
+     * @param patients hands all patients to the given consumer, only called if the index must be loaded
+     */
+    public void loadIfNeeded(Consumer<Consumer<Patient>> patients) {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                long start = System.nanoTime();
+                patients.accept(patient -> {
+                    Entry entry = new Entry(patient);
+                    entries.compute(entry.getId(), (id, previous) -> {
+                        if (previous != null || removed.contains(id)) {
+                            return previous;
+                        }
+                        addNames(entry);
+                        return entry;
+                    });
+                });
+                loaded = true;
+                removed.clear();
+                log.info("Patient search index loaded with {} patients in {} ms", entries.size(),
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+
+    /**
+     * Forgets every indexed patient, the index is loaded again on next search.
+     * Used when patients are written without going through {@link #put(Patient)}.
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+        entries.clear();
+        byFamily.clear();
+        byGiven.clear();
+        byBlock.clear();
+        removed.clear();
+    }
+
+    /**
+     * Adds or replaces a patient in the index, unless a later version of the patient is already indexed.
+     *
+     * @param patient created or updated patient, must have an ID
+     */
+    public void put(Patient patient) {
+        Entry entry = new Entry(patient);
+        entries.compute(entry.getId(), (id, previous) -> {
+            if (previous != null && previous.getVersion() != null && entry.getVersion() != null
+                    && previous.getVersion() > entry.getVersion()) {
+                return previous;
+            }
+            if (previous != null) {
+                removeNames(previous);
+            }
+            addNames(entry);
+            return entry;
+        });
+    }
+
+    /**
+     * Removes a patient from the index.
+     *
+     * @param id ID of deleted patient
+     */
+    public void remove(Integer id) {
+        entries.compute(id, (key, previous) -> {
+            if (previous != null) {
+                removeNames(previous);
+            }
+            if (!loaded) {
+                removed.add(key);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Finds patients matching all provided criteria.
+     *
+     * @param criteria search filters
+     * @return IDs of matching patients, ordered by family name, given name and ID
+     */
+    public List<Integer> search(PatientSearchCriteria criteria) {
+        String family = normalize(criteria.getFamily());
+        String given = normalize(criteria.getGiven());
+        String phone = criteria.getPhone() == null ? "" : NON_DIGITS.matcher(criteria.getPhone()).replaceAll("");
+        LocalDate dobFrom = criteria.getDobFrom();
+        LocalDate dobTo = criteria.getDobTo();
+        if (criteria.getBirthYear() != null) {
+            dobFrom = max(dobFrom, LocalDate.of(criteria.getBirthYear(), 1, 1));
+            dobTo = min(dobTo, LocalDate.of(criteria.getBirthYear(), 12, 31));
+        }
+
+        // start from the most selective name prefix, other filters are checked on each candidate
+        Collection<Entry> candidates;
+        if (!family.isEmpty()) {
+            candidates = candidates(byFamily, family);
+        } else if (!given.isEmpty()) {
+            candidates = candidates(byGiven, given);
+        } else {
+            candidates = entries.values();
+        }
+
+        List<Entry> matches = new ArrayList<>();
+        for (Entry entry : candidates) {
+            if (entry.getGiven().startsWith(given)
+                    && (criteria.getSex() == null || criteria.getSex().isEmpty() || criteria.getSex().equalsIgnoreCase(entry.getSex()))
+                    && entry.getPhone().startsWith(phone)
+                    && (dobFrom == null || (entry.getDob() != null && !entry.getDob().isBefore(dobFrom)))
+                    && (dobTo == null || (entry.getDob() != null && !entry.getDob().isAfter(dobTo)))) {
+                matches.add(entry);
+            }
+        }
+        matches.sort(BY_NAME);
+        return matches.stream().map(Entry::getId).toList();
+    }
+
+    /**
+     * Lists the blocks of patients who may be duplicates, patients being in the block of each of their blocking keys.
+     *
+     * @return indexed patients of each block of at least two patients
+     */
+    List<List<Entry>> blocks() {
+        List<List<Entry>> blocks = new ArrayList<>();
+        for (Set<Integer> ids : byBlock.values()) {
+            if (ids.size() > 1) {
+                List<Entry> block = new ArrayList<>(ids.size());
+                for (Integer id : ids) {
+                    Entry entry = entries.get(id);
+                    if (entry != null) {
+                        block.add(entry);
+                    }
+                }
+                blocks.add(block);
+            }
+        }
+        return blocks;
+    }
+
+    private List<Entry> candidates(NavigableMap<String, Integer> names, String prefix) {
+        List<Entry> candidates = new ArrayList<>();
+        for (Integer id : names.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                candidates.add(entry);
+            }
+        }
+        return candidates;
+    }
+
+    private void addNames(Entry entry) {
+        byFamily.put(entry.getFamily() + SEPARATOR + entry.getId(), entry.getId());
+        byGiven.put(entry.getGiven() + SEPARATOR + entry.getId(), entry.getId());
+        for (String blockingKey : entry.getBlockingKeys()) {
+            byBlock.computeIfAbsent(blockingKey, key -> ConcurrentHashMap.newKeySet()).add(entry.getId());
+        }
+    }
+
+    private void removeNames(Entry entry) {
+        byFamily.remove(entry.getFamily() + SEPARATOR + entry.getId());
+        byGiven.remove(entry.getGiven() + SEPARATOR + entry.getId());
+        for (String blockingKey : entry.getBlockingKeys()) {
+            byBlock.computeIfPresent(blockingKey, (key, ids) -> {
+                ids.remove(entry.getId());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private static LocalDate max(LocalDate date, LocalDate other) {
+        return date == null || other.isAfter(date) ? other : date;
+    }
+
+    private static LocalDate min(LocalDate date, LocalDate other) {
+        return date == null || other.isBefore(date) ? other : date;
+    }
+
+    /**
+     * Normalizes a name so that comparisons are case and accent insensitive.
+     *
+     * @param name name to normalize, may be null
+     * @return lower case name without accents nor surrounding spaces, empty if name is null
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String withoutAccents = DIACRITICS.matcher(Normalizer.normalize(name.trim(), Normalizer.Form.NFD)).replaceAll("");
+        return withoutAccents.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Indexed fields of a patient.
+     */
+    @Getter
+    static final class Entry {
+        private final Integer     id;
+        private final Integer     version;
+        private final String      family;
+        private final String      given;
+        private final LocalDate   dob;
+        private final String      sex;
+        private final String      phone;
+        private final Set<String> blockingKeys;
+
+        Entry(Patient patient) {
+            this.id = patient.getId();
+            this.version = patient.getVersion();
+            this.family = normalize(patient.getFamily());
+            this.given = normalize(patient.getGiven());
+            this.dob = patient.getDob();
+            this.sex = patient.getSex();
+            this.phone = patient.getPhone() == null ? "" : NON_DIGITS.matcher(patient.getPhone()).replaceAll("");
+            this.blockingKeys = PatientMatcher.blockingKeys(patient.getFamily(), patient.getDob());
+        }
+    }
+}
@@ -1,94 +1,532 @@
 package com.abernathyclinic.apipatients.service;
 
+import com.abernathyclinic.apipatients.configuration.CacheConfig;
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import com.abernathyclinic.apipatients.configuration.ReadWriteRoutingDataSource;
 import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
 import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
 import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientBatch;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.model.PatientDemographics;
+import com.abernathyclinic.apipatients.model.PatientFieldsPage;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import com.abernathyclinic.apipatients.model.PatientSearchCriteria;
+import com.abernathyclinic.apipatients.repository.PatientChangeRepository;
 import com.abernathyclinic.apipatients.repository.PatientRepository;
-import lombok.extern.slf4j.Slf4j;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.support.PropertyComparator;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
-@Slf4j
+@Profile("!reactive")
 public class PatientService {
+    /**
+     * Name of the unique key on family name, given name and date of birth, in lower case.
+     */
+    static final String NATURAL_KEY_CONSTRAINT = "uk_patients_natural_key";
+
     @Autowired
     PatientRepository patientRepository;
 
-    public PatientService(PatientRepository patientRepository) {
+    @Autowired
+    PatientSearchIndex searchIndex;
+
+    @Autowired
+    PatientChangeRepository patientChangeRepository;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    PatientDuplicateDetector duplicateDetector;
+
+    @Autowired
+    PatientStatistics statistics;
+
+    @Autowired
+    PatientShards shards;
+
+    @Autowired
+    ObjectProvider<ReadWriteRoutingDataSource> routingDataSource;
+
+    @Autowired
+    PatientIdGenerator idGenerator;
+
+    @Autowired
+    Validator validator;
+
+    @Value("${patients.pagination.default-size:50}")
+    int defaultPageSize;
+
+    @Value("${patients.pagination.max-size:500}")
+    int maxPageSize;
+
+    @Value("${patients.batch.max-size:1000}")
+    int maxBatchSize;
+
+    @Value("${patients.batch.chunk-size:500}")
+    int batchChunkSize;
+
+    @Value("${patients.changes.enabled:true}")
+    boolean recordChanges;
+
+    /**
+     * Concurrent reads of the same patient share one database read.
+     */
+    private final SingleFlight<Integer, Optional<Patient>> patientReads;
+
+    /**
+     * Concurrent reads of the same page of patients share one database read.
+     */
+    private final SingleFlight<List<Integer>, PatientPage> pageReads;
+
+    public PatientService(PatientRepository patientRepository,
+                          @Value("${patients.single-flight.timeout:2000}") long singleFlightTimeout) {
         this.patientRepository = patientRepository;
+        this.patientReads = new SingleFlight<>("getPatientById", Duration.ofMillis(singleFlightTimeout));
+        this.pageReads = new SingleFlight<>("getPatients", Duration.ofMillis(singleFlightTimeout));
     }
 
     /**
-     * Saves new patient to database
+     * Saves new patient to database, on the shard of their natural key, see PatientShards. Duplicates are detected by
+     * the unique key on family name, given name and date of birth, so that concurrent creations of the same patient
+     * cannot both succeed. Patients renamed on the other shards are looked for before. Patients with similar names are
+     * looked for by the duplicate detector, and rejected if patients.duplicates.on-create is REJECT. The patient is
+     * validated first, since the shard is chosen from their names.
      *
      * @param patient Patient to save
      * @return Patient with ID if no error
+     * @throws ConstraintViolationException if the patient is invalid
      * @throws AlreadyExistsException Exception thrown when the patient to be created already exists in database
      */
-    @Transactional
+    @Timed(MetricsConfig.SERVICE_TIMER)
     public Patient createPatient(Patient patient) {
-        if (patientRepository.findByFamilyAndGivenAndDob(patient.getFamily(), patient.getGiven(), patient.getDob()).isPresent()) {
-            String alreadyExistsErrorMessage = "Patient " + patient.getFamily() + " " + patient.getGiven() + ", born the " + patient.getDob() + " already exists.";
-            log.error(alreadyExistsErrorMessage);
-            throw new AlreadyExistsException(alreadyExistsErrorMessage);
+        Assert.notNull(patient, "Please provide a Patient to create");
+        validate(patient);
+        int shard = shards.shardOf(patient.getFamily(), patient.getGiven(), patient.getDob());
+        checkOtherShards(patient, shard);
+        patient.setId(idGenerator.nextId(shard));
+        duplicateDetector.checkNewPatient(patient);
+        return shards.inTransaction(shard, false, () -> {
+            Patient savedPatient;
+            try {
+                savedPatient = patientRepository.saveAndFlush(patient);
+            } catch (DataIntegrityViolationException integrityViolation) {
+                if (!isNaturalKeyViolation(integrityViolation)) {
+                    throw integrityViolation;
+                }
+                throw AlreadyExistsException.of(patient);
+            }
+            recordChange(savedPatient.getId(), PatientChange.Type.CREATE, savedPatient.getVersion());
+            AfterCommit.run(() -> searchIndex.put(savedPatient));
+            statistics.changed(null, new PatientDemographics(savedPatient));
+            return savedPatient;
+        });
+    }
+
+    /**
+     * Looks for another patient with the natural key of a patient on the shards other than the given one, where the
+     * unique key cannot detect them. Patients are only there if they were renamed after their creation.
+     * <p>
+     * The check is not atomic with the write that follows it: with several shards, a creation and a renaming to the
+     * same natural key, or two renamings, committed concurrently on different shards can both succeed. Only creations
+     * of the same patient are guaranteed to meet the unique key, on the shard of their natural key.
+     *
+     * @param patient created or updated patient
+     * @param shard   shard on which the patient is written
+     * @throws AlreadyExistsException if another patient has the same natural key
+     */
+    private void checkOtherShards(Patient patient, int shard) {
+        if (shards.count() == 1) {
+            return;
         }
-        return patientRepository.save(patient);
+        boolean exists = shards.scatter(other -> other != shard && ReadWriteRoutingDataSource.readFromPrimary(
+                        () -> patientRepository.findByFamilyAndGivenAndDob(patient.getFamily(), patient.getGiven(), patient.getDob()))
+                        .filter(existing -> !existing.getId().equals(patient.getId()))
+                        .isPresent())
+                .contains(true);
+        if (exists) {
+            throw AlreadyExistsException.of(patient);
+        }
+    }
+
+    /**
+     * Tells whether a data integrity violation comes from the unique key on the patient natural key.
+     *
+     * @param integrityViolation exception thrown by the database
+     * @return true if the patient natural key is duplicated
+     */
+    static boolean isNaturalKeyViolation(DataIntegrityViolationException integrityViolation) {
+        String message = integrityViolation.getMostSpecificCause().getMessage();
+        return message != null && message.toLowerCase(Locale.ROOT).contains(NATURAL_KEY_CONSTRAINT);
     }
 
+    @Timed(MetricsConfig.SERVICE_TIMER)
     public List<Patient> getPatients() {
-        return patientRepository.findAll();
+        if (shards.count() == 1) {
+            return shards.inTransaction(0, true, patientRepository::findAll);
+        }
+        return shards.scatter(shard -> patientRepository.findAll()).stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(Patient::getId))
+                .toList();
+    }
+
+    /**
+     * Reads one page of patients with offset pagination, for the patients list page. With several shards, each shard
+     * reads the patients up to the end of the page, which are merged in the requested order: deep pages are costly.
+     *
+     * @param pageable page number, size and sort
+     * @return page of patients
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public Page<Patient> getPatients(Pageable pageable) {
+        if (shards.count() == 1 || pageable.isUnpaged()) {
+            return shards.inTransaction(0, true, () -> patientRepository.findAll(pageable));
+        }
+        // the ID makes the order total, so that pages are the same on every shard and between requests
+        Sort sort = pageable.getSort().getOrderFor("id") == null ? pageable.getSort().and(Sort.by("id"))
+                : pageable.getSort();
+        Pageable firstPages = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize(), sort);
+        List<Page<Patient>> pages = shards.scatter(shard -> patientRepository.findAll(firstPages));
+        Comparator<Patient> order = null;
+        for (Sort.Order property : sort) {
+            Comparator<Patient> byProperty = new PropertyComparator<>(property.getProperty(), property.isIgnoreCase(),
+                    property.isAscending());
+            order = order == null ? byProperty : order.thenComparing(byProperty);
+        }
+        List<Patient> merged = pages.stream()
+                .flatMap(page -> page.getContent().stream())
+                .sorted(order)
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .toList();
+        return new PageImpl<>(merged, pageable, pages.stream().mapToLong(Page::getTotalElements).sum());
+    }
+
+    /**
+     * Reads one page of patients ordered by ID, using the patient ID as keyset instead of an offset. Concurrent reads
+     * of the same page share one database read, except for the sessions that just wrote, see coalesce. Not
+     * transactional so that callers waiting for the read of another caller do not hold a connection.
+     *
+     * @param cursor cursor returned with the previous page, null or empty for the first page
+     * @param size   page size, the configured default size if null. Capped to the configured maximum size.
+     * @return page of patients and cursor of the next page if any
+     * @throws IllegalArgumentException if the cursor is malformed or the size is not positive
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public PatientPage getPatients(String cursor, Integer size) {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        Assert.isTrue(pageSize > 0, "Page size must be positive.");
+        int afterId = PatientCursor.decode(cursor);
+        return coalesce(pageReads, List.of(afterId, pageSize), () -> {
+            // read one more patient than needed to know if there is a next page
+            List<Patient> patients = mergeById(shards.scatter(shard -> patientRepository
+                    .findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.ofSize(pageSize + 1))), Patient::getId, pageSize + 1);
+            if (patients.size() <= pageSize) {
+                return new PatientPage(patients, null);
+            }
+            List<Patient> page = patients.subList(0, pageSize);
+            return new PatientPage(page, PatientCursor.encode(page.get(pageSize - 1).getId()));
+        });
     }
 
     /**
-     * Finds a patient thanks to their ID.
+     * Reads one page of patients ordered by ID, like {@link #getPatients(String, Integer)}, but only the requested
+     * properties of the patients.
+     *
+     * @param cursor cursor returned with the previous page, null or empty for the first page
+     * @param size   page size, the configured default size if null. Capped to the configured maximum size.
+     * @param fields patient properties to read, see {@link PatientFields#parse(String)}
+     * @return page of patient properties and cursor of the next page if any
+     * @throws IllegalArgumentException if the cursor is malformed or the size is not positive
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public PatientFieldsPage getPatients(String cursor, Integer size, List<String> fields) {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        Assert.isTrue(pageSize > 0, "Page size must be positive.");
+        Assert.isTrue(fields.contains("id"), "Patient ID must be selected.");
+        int afterId = PatientCursor.decode(cursor);
+        List<Map<String, Object>> patients = mergeById(shards.scatter(shard -> patientRepository
+                .findFieldsByIdGreaterThan(fields, afterId, pageSize + 1)), row -> (Integer) row.get("id"), pageSize + 1);
+        if (patients.size() <= pageSize) {
+            return new PatientFieldsPage(patients, null);
+        }
+        List<Map<String, Object>> page = patients.subList(0, pageSize);
+        return new PatientFieldsPage(page, PatientCursor.encode((Integer) page.get(pageSize - 1).get("id")));
+    }
+
+    /**
+     * Merges pages of items ordered by ID read from each shard.
+     *
+     * @param pages pages ordered by ID
+     * @param id    ID of an item
+     * @param limit maximum number of merged items
+     * @return first items of the pages, ordered by ID
+     */
+    private static <T> List<T> mergeById(List<List<T>> pages, Function<T, Integer> id, int limit) {
+        if (pages.size() == 1) {
+            return pages.get(0);
+        }
+        return pages.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(id))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Reads all patients, ordered by ID on each shard, and hands them one by one to the consumer, so that memory use
+     * does not depend on the number of patients.
+     *
+     * @param consumer called for each patient
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public void streamPatients(Consumer<Patient> consumer) {
+        shards.streamEach(patientRepository::streamAllByOrderByIdAsc, consumer);
+    }
+
+    /**
+     * Searches patients by name prefix, date of birth, sex and phone. Matching is done on the in-memory search index,
+     * only the patients of the requested page are read from database.
+     *
+     * @param criteria search filters
+     * @param pageable page number and size, sort is ignored: patients are ordered by family name, given name and ID
+     * @return page of matching patients
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public Page<Patient> searchPatients(PatientSearchCriteria criteria, Pageable pageable) {
+        Assert.notNull(criteria, "Search criteria must be provided.");
+        searchIndex.loadIfNeeded(patients -> shards.streamEach(patientRepository::streamAllByOrderByIdAsc, patients));
+        List<Integer> matchingIds = searchIndex.search(criteria);
+        int from = (int) Math.min(pageable.getOffset(), matchingIds.size());
+        int to = Math.min(from + pageable.getPageSize(), matchingIds.size());
+        List<Integer> pageIds = matchingIds.subList(from, to);
+        Map<Integer, Patient> patients = findAllById(pageIds, pageIds.size());
+        List<Patient> content = pageIds.stream().map(patients::get).filter(Objects::nonNull).toList();
+        return new PageImpl<>(content, pageable, matchingIds.size());
+    }
+
+    /**
+     * Finds patients by ID with one IN query per chunk of IDs, so that the query and its bind parameters stay small
+     * for large ID sets.
+     *
+     * @param ids IDs of the patients, duplicates are ignored
+     * @return found patients in the order of the IDs and IDs of the patients who do not exist
+     * @throws IllegalArgumentException if an ID is null or there are more IDs than the configured maximum
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public PatientBatch getPatientsByIds(List<Integer> ids) {
+        Assert.notNull(ids, "Patient IDs must be provided.");
+        Assert.noNullElements(ids, "Patient IDs must not be empty.");
+        List<Integer> distinctIds = List.copyOf(new LinkedHashSet<>(ids));
+        Assert.isTrue(distinctIds.size() <= maxBatchSize, "At most " + maxBatchSize + " patients can be read at once.");
+        Map<Integer, Patient> foundPatients = findAllById(distinctIds, batchChunkSize);
+        List<Patient> patients = new ArrayList<>(foundPatients.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : distinctIds) {
+            Patient patient = foundPatients.get(id);
+            if (patient == null) {
+                missingIds.add(id);
+            } else {
+                patients.add(patient);
+            }
+        }
+        return new PatientBatch(patients, missingIds);
+    }
+
+    /**
+     * Finds patients by ID on their shards, with one IN query per chunk of IDs of each shard.
+     *
+     * @param ids       distinct patient IDs
+     * @param chunkSize maximum number of IDs per query
+     * @return found patients by ID
+     */
+    private Map<Integer, Patient> findAllById(List<Integer> ids, int chunkSize) {
+        Map<Integer, List<Integer>> idsByShard = ids.stream().collect(Collectors.groupingBy(shards::shardOf));
+        Map<Integer, Patient> foundPatients = new HashMap<>();
+        shards.scatter(shard -> {
+            List<Integer> shardIds = idsByShard.getOrDefault(shard, List.of());
+            List<Patient> found = new ArrayList<>(shardIds.size());
+            for (int from = 0; from < shardIds.size(); from += chunkSize) {
+                found.addAll(patientRepository.findAllById(shardIds.subList(from, Math.min(from + chunkSize, shardIds.size()))));
+            }
+            return found;
+        }).forEach(found -> found.forEach(patient -> foundPatients.put(patient.getId(), patient)));
+        return foundPatients;
+    }
+
+    /**
+     * Finds a patient thanks to their ID, on their shard. Concurrent reads of the same patient share one database read,
+     * see coalesce, from the primary database since the patient is cached.
      *
      * @param id Patient ID.
      * @return found patient or empty optional.
      */
+    @Timed(MetricsConfig.SERVICE_TIMER)
     public Optional<Patient> getPatientById(Integer id) {
         Assert.notNull(id, "Patient ID must not be empty. Please provide an ID");
-        return patientRepository.findById(id);
+        return coalesce(patientReads, id, () -> shards.on(shards.shardOf(id),
+                () -> ReadWriteRoutingDataSource.readFromPrimary(() -> patientRepository.findById(id))));
     }
 
 
     /**
-     * Updates a patient.
+     * Finds the requested properties of a patient thanks to their ID.
+     *
+     * @param id     Patient ID.
+     * @param fields patient properties to read, see {@link PatientFields#parse(String)}
+     * @return patient properties by name or empty optional
+     */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    public Optional<Map<String, Object>> getPatientById(Integer id, List<String> fields) {
+        Assert.notNull(id, "Patient ID must not be empty. Please provide an ID");
+        return shards.on(shards.shardOf(id), () -> patientRepository.findFieldsById(fields, id));
+    }
+
+    /**
+     * Updates a patient with a single statement. If the patient has a version, the update is rejected when the patient
+     * was updated since that version was read, otherwise the current version is overwritten and read back, which costs
+     * a second round trip. The previous sex and date of birth are not read: a change of them is caught up by the
+     * reconciliation of the demographic statistics, see PatientStatistics. The patient stays on the shard of their ID, the other shards are checked for a patient with the new natural key. The single statement bypasses
+     * the validation of the entity, so the patient is validated first.
      *
      * @param patient Patient to be updated
      * @return updated patient
+     * @throws ConstraintViolationException if the patient is invalid
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the patient version is outdated
+     * @throws AlreadyExistsException if another patient has the new natural key
      */
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PATIENTS, key = "#patient.id"),
+            // the natural key of the patient may have changed and the previous one is not known
+            @CacheEvict(cacheNames = CacheConfig.PATIENTS_BY_NATURAL_KEY, allEntries = true)})
     public Patient updatePatient(Patient patient) {
         Assert.notNull(patient, "Please provide a Patient to update");
-        if (patientRepository.existsById(patient.getId())) {
-            return patientRepository.save(patient);
-        } else {
-            String patientNotFoundErrorMessage = "Patient " + patient.getFamily() + " " + patient.getGiven()
-                    + " born the " + patient.getDob() + " does not exist.";
-            log.error(patientNotFoundErrorMessage);
-            throw new PatientNotFoundException(patientNotFoundErrorMessage);
+        validate(patient);
+        int shard = shards.shardOf(patient.getId());
+        checkOtherShards(patient, shard);
+        return shards.inTransaction(shard, false, () -> update(patient));
+    }
+
+    private void validate(Patient patient) {
+        Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
         }
     }
 
+    private Patient update(Patient patient) {
+        int updated;
+        try {
+            updated = patientRepository.updatePatient(patient);
+        } catch (DataIntegrityViolationException integrityViolation) {
+            if (!isNaturalKeyViolation(integrityViolation)) {
+                throw integrityViolation;
+            }
+            throw AlreadyExistsException.of(patient);
+        }
+        if (updated == 0) {
+            if (patient.getVersion() != null && patientRepository.existsById(patient.getId())) {
+                throw new ObjectOptimisticLockingFailureException(Patient.class, patient.getId());
+            }
+            throw PatientNotFoundException.of(patient);
+        }
+        // the new version is only known without reading it back if the client provided the previous one
+        patient.setVersion(patient.getVersion() == null
+                ? patientRepository.findVersionById(patient.getId()).orElse(null)
+                : patient.getVersion() + 1);
+        recordChange(patient.getId(), PatientChange.Type.UPDATE, patient.getVersion());
+        AfterCommit.run(() -> searchIndex.put(patient));
+        return patient;
+    }
+
     /**
      * Deletes a patient if exists. Throws PatientNotFoundException if the provided patient does not exist in database.
+     * The demographic statistics are updated from the provided patient, as read by the caller, without reading it
+     * again. A patient without date of birth is left to the reconciliation of the statistics.
      *
      * @param patient Patient to delete
      */
-    @Transactional
+    @Timed(MetricsConfig.SERVICE_TIMER)
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PATIENTS, key = "#patient.id"),
+            @CacheEvict(cacheNames = CacheConfig.PATIENTS_BY_NATURAL_KEY, allEntries = true)})
     public void deletePatient(Patient patient) {
         Assert.notNull(patient, "Patient must be provided.");
-        if (patientRepository.existsById(patient.getId())) {
-            patientRepository.delete(patient);
-        } else {
-            String deleteErrorMessage = "Patient " + patient.getFamily() + " " + patient.getGiven()
-                    + " born the " + patient.getDob() + " does not exist.";
-            log.error(deleteErrorMessage);
-            throw new PatientNotFoundException(deleteErrorMessage);
+        shards.inTransaction(shards.shardOf(patient.getId()), false, () -> {
+            if (patientRepository.deletePatientById(patient.getId()) == 0) {
+                throw PatientNotFoundException.of(patient);
+            }
+            recordChange(patient.getId(), PatientChange.Type.DELETE, null);
+            AfterCommit.run(() -> searchIndex.remove(patient.getId()));
+            if (patient.getDob() != null) {
+                statistics.changed(new PatientDemographics(patient), null);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Records a change in the patient_changes table, in the transaction of the change on the shard of the patient, so
+     * that the change feed streams exactly the committed changes. Nothing is recorded when the change feed is disabled.
+     *
+     * @param patientId ID of the changed patient
+     * @param type      kind of change
+     * @param version   version of the patient after the change, null for a deletion
+     */
+    private void recordChange(Integer patientId, PatientChange.Type type, Integer version) {
+        if (!recordChanges) {
+            return;
+        }
+        patientChangeRepository.save(new PatientChange(patientId, type, version));
+        eventPublisher.publishEvent(new PatientChangesRecordedEvent(this));
+    }
+
+    /**
+     * Shares the read of a key with the concurrent callers, unless the session of the caller wrote during the
+     * read-your-writes window: a read in flight may have started before its write, see ReadWriteRoutingDataSource.
+     */
+    private <K, V> V coalesce(SingleFlight<K, V> flight, K key, Supplier<V> read) {
+        if (routingDataSource.stream().anyMatch(ReadWriteRoutingDataSource::isCurrentSessionPinned)) {
+            return read.get();
         }
+        return flight.execute(key, read);
     }
 }
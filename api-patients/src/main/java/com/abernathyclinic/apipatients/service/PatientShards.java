@@ -0,0 +1,242 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.configuration.ShardRoutingDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Places patients on the shards of the patients database, see ShardingConfig, and runs work on them.
+ * <p>
+ * A patient lives on the shard of their ID, the ID modulo the number of shards, so that reads and writes by ID go to
+ * one shard. New patients are placed on the shard of the hash of their natural key, and get an ID of that shard from
+ * PatientIdGenerator: concurrent creations of the same patient meet on one shard, where the unique key rejects all but
+ * one. Listings and searches are scattered to every shard in parallel and their results gathered by the caller.
+ * Without sharding there is a single shard and work runs on the calling thread.
+ */
+@Component
+@Profile("!reactive")
+public class PatientShards {
+    private final int                        count;
+    private final PlatformTransactionManager transactionManager;
+    /**
+     * Runs the work of the shards after the first one when scattering, the first one runs on the calling thread.
+     */
+    private final ExecutorService            executor;
+
+    @Autowired
+    public PatientShards(ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${patients.sharding.scatter-threads:16}") int scatterThreads) {
+        this(shardRoutingDataSource.stream().mapToInt(ShardRoutingDataSource::getShardCount).findFirst().orElse(1),
+                transactionManager, scatterThreads);
+    }
+
+    PatientShards(int count, PlatformTransactionManager transactionManager) {
+        this(count, transactionManager, 1);
+    }
+
+    private PatientShards(int count, PlatformTransactionManager transactionManager, int scatterThreads) {
+        this.count = count;
+        this.transactionManager = transactionManager;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = count == 1 ? null : Executors.newFixedThreadPool(scatterThreads, runnable -> {
+            Thread thread = new Thread(runnable, "patient-shards-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return number of shards, 1 without sharding
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Finds the shard of an existing patient.
+     *
+     * @param id patient ID
+     * @return shard holding the patient if they exist
+     */
+    public int shardOf(Integer id) {
+        Assert.notNull(id, "Patient ID must not be empty. Please provide an ID");
+        return Math.floorMod(id, count);
+    }
+
+    /**
+     * Chooses the shard of a new patient from their natural key. Names are compared case-insensitively, like the
+     * unique key of the patients table.
+     *
+     * @param family family name
+     * @param given  given name
+     * @param dob    date of birth
+     * @return shard on which the patient must be created
+     */
+    public int shardOf(String family, String given, LocalDate dob) {
+        String naturalKey = family.trim().toLowerCase(Locale.ROOT) + Character.MIN_VALUE
+                + given.trim().toLowerCase(Locale.ROOT) + Character.MIN_VALUE + dob;
+        // CRC32 is stable between runs and, unlike String.hashCode, spreads keys sharing a suffix over the shards
+        CRC32 checksum = new CRC32();
+        checksum.update(naturalKey.getBytes(StandardCharsets.UTF_8));
+        return (int) (checksum.getValue() % count);
+    }
+
+    /**
+     * Runs work on a shard outside of any transaction, each repository call opening its own transaction on the shard.
+     * Must not be called from a transaction, whose connection may already be bound to another shard.
+     *
+     * @param shard  shard index
+     * @param action work using the repositories
+     * @return result of the work
+     */
+    public <T> T on(int shard, Supplier<T> action) {
+        Integer previous = ShardRoutingDataSource.getCurrentShard();
+        ShardRoutingDataSource.setCurrentShard(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardRoutingDataSource.setCurrentShard(previous);
+        }
+    }
+
+    /**
+     * Runs work in a transaction on a shard. The transaction of the caller is joined if it is on the same shard,
+     * otherwise it is suspended.
+     *
+     * @param shard    shard index
+     * @param readOnly whether the work only reads
+     * @param action   work using the repositories
+     * @return result of the work
+     */
+    public <T> T inTransaction(int shard, boolean readOnly, Supplier<T> action) {
+        boolean otherShard = TransactionSynchronizationManager.isActualTransactionActive() && currentShard() != shard;
+        return inTransaction(shard, readOnly, otherShard, TransactionDefinition.TIMEOUT_DEFAULT, action);
+    }
+
+    /**
+     * Runs writes in a transaction of its own on a shard, whose statements fail once the timeout is reached.
+     *
+     * @param shard          shard index
+     * @param timeoutSeconds timeout of the transaction
+     * @param action         work using the repositories
+     * @return result of the work
+     * @throws org.springframework.transaction.TransactionTimedOutException if the timeout is reached
+     */
+    public <T> T inNewTransaction(int shard, int timeoutSeconds, Supplier<T> action) {
+        return inTransaction(shard, false, true, timeoutSeconds, action);
+    }
+
+    /**
+     * Runs work in a transaction of its own on a shard, committed even if the transaction of the caller rolls back.
+     *
+     * @param shard  shard index
+     * @param action work using the repositories
+     * @return result of the work
+     */
+    public <T> T inNewTransaction(int shard, Supplier<T> action) {
+        return inTransaction(shard, false, true, TransactionDefinition.TIMEOUT_DEFAULT, action);
+    }
+
+    /**
+     * Runs read-only work on every shard, in parallel when there are several.
+     *
+     * @param action work on the shard of the given index
+     * @return results of the work, by shard index
+     * @throws RuntimeException thrown by the work of a shard
+     */
+    public <T> List<T> scatter(IntFunction<T> action) {
+        if (count == 1) {
+            return Collections.singletonList(inTransaction(0, true, () -> action.apply(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>(count - 1);
+        for (int shard = 1; shard < count; shard++) {
+            int target = shard;
+            futures.add(executor.submit(() -> inTransaction(target, true, () -> action.apply(target))));
+        }
+        List<T> results = new ArrayList<>(count);
+        try {
+            results.add(inTransaction(0, true, () -> action.apply(0)));
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the patient shards.", interrupted);
+        } catch (ExecutionException failure) {
+            if (failure.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(failure.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    /**
+     * Streams the items of every shard one shard after the other, each in a read-only transaction, so that memory use
+     * does not depend on the number of items.
+     *
+     * @param items    stream of the items of the current shard, closed once consumed
+     * @param consumer called for each item
+     */
+    public <T> void streamEach(Supplier<Stream<T>> items, Consumer<? super T> consumer) {
+        for (int shard = 0; shard < count; shard++) {
+            inTransaction(shard, true, () -> {
+                try (Stream<T> stream = items.get()) {
+                    stream.forEach(consumer);
+                }
+                return null;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> T inTransaction(int shard, boolean readOnly, boolean requiresNew, int timeoutSeconds, Supplier<T> action) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        transactionTemplate.setTimeout(timeoutSeconds);
+        if (requiresNew) {
+            transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        }
+        return on(shard, () -> transactionTemplate.execute(status -> action.get()));
+    }
+
+    private static int currentShard() {
+        Integer shard = ShardRoutingDataSource.getCurrentShard();
+        return shard == null ? 0 : shard;
+    }
+}
@@ -0,0 +1,241 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientDemographics;
+import com.abernathyclinic.apipatients.model.PatientStats;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts patients by sex and date of birth, so that demographic statistics are computed without reading the patients.
+ * <p>
+ * Counts are loaded with one GROUP BY query per shard when the application is ready, then updated by PatientService
+ * and PatientImportService once each creation or deletion is committed. Updates, which are single statements not
+ * reading the previous sex and date of birth, and writes made otherwise, by other instances or lost while the counts
+ * are reloaded, are caught up by reloading the counts every patients.stats.reconciliation-interval. Ages
+ * depend on the day, so the statistics are computed from the counts by date of birth, and kept until the counts change
+ * or the day changes.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class PatientStatistics {
+    private static final String SELECT_COUNTS = "SELECT gender, date_of_birth, COUNT(*) FROM patients"
+            + " GROUP BY gender, date_of_birth";
+    private static final String UNKNOWN       = "unknown";
+    /**
+     * Lower bound of each age bracket, in years.
+     */
+    private static final int[]  AGE_BRACKETS  = {0, 18, 30, 50, 65, 80};
+
+    private final JdbcTemplate  jdbcTemplate;
+    private final PatientShards shards;
+    private final Clock         clock;
+    /**
+     * Incremented on each change of the counts, to know when the statistics must be computed again.
+     */
+    private final AtomicLong    changes = new AtomicLong();
+
+    private volatile Map<PatientDemographics, LongAdder> counts = new ConcurrentHashMap<>();
+    private volatile Snapshot                            snapshot;
+    private volatile boolean                             loaded;
+
+    @Autowired
+    public PatientStatistics(JdbcTemplate jdbcTemplate, PatientShards shards) {
+        this(jdbcTemplate, shards, Clock.systemDefaultZone());
+    }
+
+    PatientStatistics(JdbcTemplate jdbcTemplate, PatientShards shards, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+        this.clock = clock;
+    }
+
+    /**
+     * Computes the patient counts by sex, age bracket and birth decade.
+     *
+     * @return statistics of all patients
+     */
+    public PatientStats getStats() {
+        if (!loaded) {
+            reconcile();
+        }
+        LocalDate today = LocalDate.now(clock);
+        long version = changes.get();
+        Snapshot current = snapshot;
+        if (current != null && current.version() == version && current.stats().getAsOf().equals(today)) {
+            return current.stats();
+        }
+        PatientStats stats = compute(today);
+        snapshot = new Snapshot(version, stats);
+        return stats;
+    }
+
+    /**
+     * Records the change of a patient, once the current transaction, if any, is committed.
+     *
+     * @param before sex and date of birth before the change, null for a creation
+     * @param after  sex and date of birth after the change, null for a deletion
+     */
+    public void changed(PatientDemographics before, PatientDemographics after) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            if (before != null) {
+                add(before, -1);
+            }
+            if (after != null) {
+                add(after, 1);
+            }
+            changes.incrementAndGet();
+        });
+    }
+
+    /**
+     * Records created patients, once the current transaction, if any, is committed.
+     *
+     * @param patients created patients
+     */
+    public void created(Iterable<Patient> patients) {
+        AfterCommit.run(() -> {
+            patients.forEach(patient -> add(new PatientDemographics(patient), 1));
+            changes.incrementAndGet();
+        });
+    }
+
+    /**
+     * Loads the counts when the application is ready. If the database is not available yet, the counts are loaded on
+     * first use instead.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            reconcile();
+        } catch (DataAccessException | TransactionException unavailable) {
+            log.warn("Patient statistics not loaded: {}", unavailable.getMessage());
+        }
+    }
+
+    /**
+     * Loads the counts from every shard of the database, replacing the counts updated since the last load.
+     *
+     * @return number of patients counted differently by the replaced counts, 0 if they were accurate or not loaded yet
+     */
+    @Scheduled(fixedDelayString = "${patients.stats.reconciliation-interval:PT15M}",
+            initialDelayString = "${patients.stats.reconciliation-interval:PT15M}")
+    public synchronized long reconcile() {
+        Map<PatientDemographics, LongAdder> reloaded = new ConcurrentHashMap<>();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            shards.inTransaction(shard, true, () -> {
+                jdbcTemplate.query(SELECT_COUNTS, (RowCallbackHandler) resultSet -> reloaded
+                        .computeIfAbsent(new PatientDemographics(resultSet.getString(1),
+                                resultSet.getObject(2, LocalDate.class)), key -> new LongAdder())
+                        .add(resultSet.getLong(3)));
+                return null;
+            });
+        }
+        Map<PatientDemographics, LongAdder> replaced = counts;
+        counts = reloaded;
+        changes.incrementAndGet();
+        if (!loaded) {
+            loaded = true;
+            log.info("Patient statistics loaded with {} dates of birth", reloaded.size());
+            return 0;
+        }
+        long drift = drift(replaced, reloaded);
+        if (drift > 0) {
+            Metrics.counter(MetricsConfig.STATS_DRIFT).increment(drift);
+            log.info("Patient statistics reconciled, {} patients were counted differently", drift);
+        }
+        return drift;
+    }
+
+    private void add(PatientDemographics demographics, int delta) {
+        counts.computeIfAbsent(demographics, key -> new LongAdder()).add(delta);
+    }
+
+    private PatientStats compute(LocalDate today) {
+        long total = 0;
+        Map<String, Long> bySex = new TreeMap<>();
+        Map<String, Long> byAgeBracket = new LinkedHashMap<>();
+        for (int bracket = 0; bracket < AGE_BRACKETS.length; bracket++) {
+            byAgeBracket.put(ageBracketName(bracket), 0L);
+        }
+        Map<String, Long> byBirthDecade = new TreeMap<>();
+        for (Map.Entry<PatientDemographics, LongAdder> entry : counts.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count <= 0) {
+                continue;
+            }
+            PatientDemographics demographics = entry.getKey();
+            total += count;
+            bySex.merge(demographics.getSex() == null ? UNKNOWN : demographics.getSex(), count, Long::sum);
+            LocalDate dob = demographics.getDob();
+            if (dob == null) {
+                byAgeBracket.merge(UNKNOWN, count, Long::sum);
+                byBirthDecade.merge(UNKNOWN, count, Long::sum);
+                continue;
+            }
+            byAgeBracket.merge(ageBracketName(ageBracket(Period.between(dob, today).getYears())), count, Long::sum);
+            byBirthDecade.merge(dob.getYear() / 10 * 10 + "s", count, Long::sum);
+        }
+        return new PatientStats(total, bySex, byAgeBracket, byBirthDecade, today);
+    }
+
+    private static int ageBracket(int age) {
+        int bracket = 0;
+        while (bracket + 1 < AGE_BRACKETS.length && age >= AGE_BRACKETS[bracket + 1]) {
+            bracket++;
+        }
+        return bracket;
+    }
+
+    private static String ageBracketName(int bracket) {
+        return bracket + 1 < AGE_BRACKETS.length
+                ? AGE_BRACKETS[bracket] + "-" + (AGE_BRACKETS[bracket + 1] - 1)
+                : AGE_BRACKETS[bracket] + "+";
+    }
+
+    private static long drift(Map<PatientDemographics, LongAdder> replaced, Map<PatientDemographics, LongAdder> loaded) {
+        Set<PatientDemographics> keys = new HashSet<>(replaced.keySet());
+        keys.addAll(loaded.keySet());
+        long drift = 0;
+        for (PatientDemographics key : keys) {
+            LongAdder before = replaced.get(key);
+            LongAdder after = loaded.get(key);
+            drift += Math.abs((before == null ? 0 : before.sum()) - (after == null ? 0 : after.sum()));
+        }
+        return drift;
+    }
+
+    /**
+     * Statistics computed at a version of the counts.
+     */
+    private record Snapshot(long version, PatientStats stats) {
+    }
+}
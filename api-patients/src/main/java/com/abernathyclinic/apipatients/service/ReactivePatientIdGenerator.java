@@ -0,0 +1,103 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking variant of PatientIdGenerator, so that patients created with the reactive profile take their IDs from
+ * the same blocks of the patient_id_blocks table as the other instances instead of AUTO_INCREMENT, which would hand
+ * out IDs of blocks still in use. The reactive profile only serves the first shard, so it refuses to start when the
+ * patients database is sharded.
+ */
+@Component
+@Profile("reactive")
+public class ReactivePatientIdGenerator {
+    private static final String RESERVE_BLOCK = "UPDATE patient_id_blocks SET next_block = next_block + 1 WHERE shard = 0";
+    private static final String SELECT_BLOCK  = "SELECT next_block - 1 AS block FROM patient_id_blocks WHERE shard = 0";
+    private static final String SELECT_MAX_ID = "SELECT COALESCE(MAX(patient_id), 0) AS max_id FROM patients";
+    private static final String INSERT_SHARD  = "INSERT INTO patient_id_blocks (shard, next_block) VALUES (0, :nextBlock)";
+
+    private final DatabaseClient         databaseClient;
+    private final TransactionalOperator  transactionalOperator;
+    private final int                    blockSize;
+    private final AtomicReference<Block> block = new AtomicReference<>(new Block(0, 0));
+
+    public ReactivePatientIdGenerator(DatabaseClient databaseClient, TransactionalOperator transactionalOperator,
+                                      @Value("${patients.ids.block-size:100}") int blockSize,
+                                      @Value("${patients.sharding.shards[0].url:}") String secondShardUrl) {
+        Assert.isTrue(blockSize > 0, "Block size must be positive.");
+        if (StringUtils.hasText(secondShardUrl)) {
+            throw new IllegalStateException("The reactive profile only serves the first shard of the patients database,"
+                    + " it cannot be used when patients.sharding.shards is set.");
+        }
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocates the ID of a new patient. Must not be called from the transaction creating the patient, so that the
+     * reserved block is committed at once.
+     *
+     * @return unused patient ID, or IllegalStateException error if the IDs are exhausted
+     */
+    public Mono<Integer> nextId() {
+        return Mono.defer(() -> {
+            Block current = block.get();
+            long local = current.next().getAndIncrement();
+            if (local < current.end()) {
+                return local > Integer.MAX_VALUE
+                        ? Mono.error(new IllegalStateException("Patient IDs of shard 0 are exhausted."))
+                        : Mono.just((int) local);
+            }
+            // concurrent callers may each reserve a block, the blocks that lose the race are skipped
+            return reserveBlock()
+                    .doOnNext(reserved -> block.compareAndSet(current,
+                            new Block(reserved * blockSize, reserved * blockSize + blockSize)))
+                    .then(nextId());
+        });
+    }
+
+    /**
+     * Reserves the next block of IDs of the first shard, creating its counter on first use.
+     *
+     * @return reserved block number
+     */
+    private Mono<Long> reserveBlock() {
+        Mono<Long> reserved = databaseClient.sql(RESERVE_BLOCK).fetch().rowsUpdated()
+                .flatMap(updated -> updated == 0 ? Mono.empty() : databaseClient.sql(SELECT_BLOCK)
+                        .map(row -> row.get("block", Number.class).longValue())
+                        .one())
+                .as(transactionalOperator::transactional);
+        Mono<Long> created = databaseClient.sql(SELECT_MAX_ID)
+                .map(row -> row.get("max_id", Number.class).longValue())
+                .one()
+                .map(maxId -> maxId / blockSize + 1)
+                .flatMap(firstBlock -> databaseClient.sql(INSERT_SHARD).bind("nextBlock", firstBlock + 1)
+                        .fetch().rowsUpdated()
+                        .thenReturn(firstBlock))
+                .as(transactionalOperator::transactional)
+                // another instance created the counter first, reserve a block from it
+                .onErrorResume(DataIntegrityViolationException.class, concurrentlyCreated -> Mono.defer(this::reserveBlock));
+        return reserved.switchIfEmpty(Mono.defer(() -> created));
+    }
+
+    /**
+     * IDs not handed out yet, from next included to end excluded.
+     */
+    private record Block(AtomicLong next, long end) {
+        Block(long next, long end) {
+            this(new AtomicLong(next), end);
+        }
+    }
+}
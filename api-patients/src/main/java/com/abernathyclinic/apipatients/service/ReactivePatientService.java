@@ -0,0 +1,232 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
+import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Non-blocking variant of PatientService, reading and writing the patients table through R2DBC. Active with the
+ * reactive profile. Changes are recorded in the patient_changes table like PatientService does, the change feed of
+ * the other instances streams them.
+ */
+@Service
+@Profile("reactive")
+public class ReactivePatientService {
+    private static final String SELECT_PATIENT = "SELECT patient_id, family, given, date_of_birth, gender, address, phone, version FROM patients";
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Autowired
+    TransactionalOperator transactionalOperator;
+
+    @Autowired
+    Validator validator;
+
+    @Autowired
+    ReactivePatientIdGenerator idGenerator;
+
+    @Value("${patients.pagination.default-size:50}")
+    int defaultPageSize;
+
+    @Value("${patients.pagination.max-size:500}")
+    int maxPageSize;
+
+    /**
+     * Saves new patient to database, duplicates being rejected by the unique key on the patient natural key. The ID
+     * is allocated by ReactivePatientIdGenerator, before the transaction creating the patient.
+     *
+     * @param patient Patient to save
+     * @return Patient with ID and version, or an error if the patient is invalid or already exists
+     */
+    public Mono<Patient> createPatient(Patient patient) {
+        return validate(patient)
+                .then(Mono.defer(idGenerator::nextId))
+                .flatMap(id -> bindPatient(databaseClient.sql("INSERT INTO patients (patient_id, family, given, date_of_birth, gender, address, phone,"
+                        + " blocking_key, version) VALUES (:id, :family, :given, :dob, :sex, :address, :phone, :blockingKey, 0)"), patient)
+                        .bind("id", id)
+                        .fetch()
+                        .rowsUpdated()
+                        .then(recordChange(id, PatientChange.Type.CREATE, 0))
+                        .thenReturn(new Patient(id, patient.getFamily(), patient.getGiven(), patient.getDob(),
+                                patient.getSex(), patient.getAddress(), patient.getPhone(), 0))
+                        .as(transactionalOperator::transactional))
+                .onErrorMap(DataIntegrityViolationException.class, integrityViolation -> {
+                    if (!PatientService.isNaturalKeyViolation(integrityViolation)) {
+                        return integrityViolation;
+                    }
+                    return AlreadyExistsException.of(patient);
+                });
+    }
+
+    /**
+     * Reads one page of patients ordered by ID, using the patient ID as keyset instead of an offset.
+     *
+     * @param cursor cursor returned with the previous page, null or empty for the first page
+     * @param size   page size, the configured default size if null. Capped to the configured maximum size.
+     * @return page of patients and cursor of the next page if any
+     * @throws IllegalArgumentException if the cursor is malformed or the size is not positive
+     */
+    public Mono<PatientPage> getPatients(String cursor, Integer size) {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        Assert.isTrue(pageSize > 0, "Page size must be positive.");
+        // read one more patient than needed to know if there is a next page
+        return databaseClient.sql(SELECT_PATIENT + " WHERE patient_id > :afterId ORDER BY patient_id LIMIT :size")
+                .bind("afterId", PatientCursor.decode(cursor))
+                .bind("size", pageSize + 1)
+                .map(ReactivePatientService::toPatient)
+                .all()
+                .collectList()
+                .map(patients -> {
+                    if (patients.size() <= pageSize) {
+                        return new PatientPage(patients, null);
+                    }
+                    List<Patient> page = patients.subList(0, pageSize);
+                    return new PatientPage(page, PatientCursor.encode(page.get(pageSize - 1).getId()));
+                });
+    }
+
+    /**
+     * Reads all patients ordered by ID. Rows are fetched as the subscriber requests them, so a slow client slows the
+     * database read down instead of buffering patients in memory.
+     *
+     * @return all patients
+     */
+    public Flux<Patient> streamPatients() {
+        return databaseClient.sql(SELECT_PATIENT + " ORDER BY patient_id")
+                .map(ReactivePatientService::toPatient)
+                .all();
+    }
+
+    /**
+     * Finds a patient thanks to their ID.
+     *
+     * @param id Patient ID.
+     * @return found patient or empty
+     */
+    public Mono<Patient> getPatientById(Integer id) {
+        Assert.notNull(id, "Patient ID must not be empty. Please provide an ID");
+        return databaseClient.sql(SELECT_PATIENT + " WHERE patient_id = :id")
+                .bind("id", id)
+                .map(ReactivePatientService::toPatient)
+                .one();
+    }
+
+    /**
+     * Updates a patient. If the patient has a version, the update is rejected when the patient was updated since that
+     * version was read, otherwise the current version is overwritten.
+     *
+     * @param patient Patient to be updated
+     * @return updated patient, or PatientNotFoundException or ObjectOptimisticLockingFailureException error
+     */
+    public Mono<Patient> updatePatient(Patient patient) {
+        Assert.notNull(patient, "Please provide a Patient to update");
+        return validate(patient)
+                .then(Mono.defer(() -> update(patient)))
+                .flatMap(updatedRows -> updatedRows > 0
+                        ? getPatientById(patient.getId())
+                                .flatMap(updatedPatient -> recordChange(updatedPatient.getId(), PatientChange.Type.UPDATE, updatedPatient.getVersion())
+                                        .thenReturn(updatedPatient))
+                        : getPatientById(patient.getId())
+                                .flatMap(current -> Mono.<Patient>error(new ObjectOptimisticLockingFailureException(Patient.class, patient.getId())))
+                                .switchIfEmpty(Mono.error(() -> PatientNotFoundException.of(patient))))
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Integer> update(Patient patient) {
+        String versionCondition = patient.getVersion() == null ? "" : " AND version = :version";
+        DatabaseClient.GenericExecuteSpec update = bindPatient(databaseClient.sql("UPDATE patients SET family = :family,"
+                + " given = :given, date_of_birth = :dob, gender = :sex, address = :address, phone = :phone,"
+                + " blocking_key = :blockingKey, version = version + 1 WHERE patient_id = :id" + versionCondition), patient)
+                .bind("id", patient.getId());
+        if (patient.getVersion() != null) {
+            update = update.bind("version", patient.getVersion());
+        }
+        return update.fetch().rowsUpdated();
+    }
+
+    /**
+     * Deletes a patient.
+     *
+     * @param patient Patient to delete
+     * @return completion, or PatientNotFoundException error if the patient does not exist
+     */
+    public Mono<Void> deletePatient(Patient patient) {
+        Assert.notNull(patient, "Patient must be provided.");
+        return databaseClient.sql("DELETE FROM patients WHERE patient_id = :id")
+                .bind("id", patient.getId())
+                .fetch()
+                .rowsUpdated()
+                .flatMap(deletedRows -> deletedRows > 0
+                        ? recordChange(patient.getId(), PatientChange.Type.DELETE, null)
+                        : Mono.<Void>error(() -> PatientNotFoundException.of(patient)))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Records a change in the patient_changes table, to be called in the transaction of the change.
+     *
+     * @param patientId ID of the changed patient
+     * @param type      kind of change
+     * @param version   version of the patient after the change, null for a deletion
+     * @return completion
+     */
+    private Mono<Void> recordChange(Integer patientId, PatientChange.Type type, Integer version) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("INSERT INTO patient_changes (patient_id, change_type, version, changed_at)"
+                        + " VALUES (:patientId, :type, :version, :changedAt)")
+                .bind("patientId", patientId)
+                .bind("type", type.name())
+                .bind("changedAt", LocalDateTime.now());
+        insert = version == null ? insert.bindNull("version", Integer.class) : insert.bind("version", version);
+        return insert.fetch().rowsUpdated().then();
+    }
+
+    /**
+     * Applies the validation rules of Patient, as Spring MVC does for @Valid parameters.
+     */
+    private Mono<Void> validate(Patient patient) {
+        Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+        return violations.isEmpty() ? Mono.empty() : Mono.error(new ConstraintViolationException(violations));
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindPatient(DatabaseClient.GenericExecuteSpec spec, Patient patient) {
+        String blockingKey = PatientMatcher.blockingKey(patient.getFamily(), patient.getDob());
+        return bindNullable(bindNullable(bindNullable(bindNullable(spec, "sex", patient.getSex()), "address", patient.getAddress()),
+                "phone", patient.getPhone()), "blockingKey", blockingKey)
+                .bind("family", patient.getFamily())
+                .bind("given", patient.getGiven())
+                .bind("dob", patient.getDob());
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name, String value) {
+        return value == null ? spec.bindNull(name, String.class) : spec.bind(name, value);
+    }
+
+    private static Patient toPatient(Row row) {
+        return new Patient(row.get("patient_id", Integer.class), row.get("family", String.class),
+                row.get("given", String.class), row.get("date_of_birth", LocalDate.class), row.get("gender", String.class),
+                row.get("address", String.class), row.get("phone", String.class), row.get("version", Integer.class));
+    }
+}
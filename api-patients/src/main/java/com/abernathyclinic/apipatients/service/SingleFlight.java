@@ -0,0 +1,91 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.configuration.MetricsConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads: while a read of a key is in flight, callers reading the same key wait for its
+ * result instead of reading it again. The first caller, the leader, reads in its own thread. A caller waiting longer
+ * than the timeout reads by itself, so that a slow read does not hold up every caller of the key.
+ * <p>
+ * Callers are counted by outcome in the {@value MetricsConfig#SINGLE_FLIGHT} counter, tagged with the read name
+ * rather than with the key to keep the number of time series bounded.
+ *
+ * @param <K> key of the read, with value-based equals and hashCode
+ * @param <V> result of the read, shared by the callers
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration                     timeout;
+    private final Counter                      leaders;
+    private final Counter                      shared;
+    private final Counter                      timeouts;
+
+    /**
+     * Creates the single flight of a read.
+     *
+     * @param name    name of the read, used as metric tag
+     * @param timeout maximum time to wait for the read of another caller
+     */
+    public SingleFlight(String name, Duration timeout) {
+        this.timeout = timeout;
+        this.leaders = Metrics.counter(MetricsConfig.SINGLE_FLIGHT, "read", name, "outcome", "leader");
+        this.shared = Metrics.counter(MetricsConfig.SINGLE_FLIGHT, "read", name, "outcome", "shared");
+        this.timeouts = Metrics.counter(MetricsConfig.SINGLE_FLIGHT, "read", name, "outcome", "timeout");
+        Metrics.gauge(MetricsConfig.SINGLE_FLIGHT + ".in.flight", Tags.of("read", name), inFlight, Map::size);
+    }
+
+    /**
+     * Reads the value of a key, or waits for the result of the read of the key in flight.
+     *
+     * @param key  key of the read
+     * @param read reads the value
+     * @return value read by this caller or by the caller in flight
+     * @throws RuntimeException exception thrown by the read in flight
+     */
+    public V execute(K key, Supplier<V> read) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leaderFlight = inFlight.putIfAbsent(key, flight);
+        if (leaderFlight == null) {
+            leaders.increment();
+            try {
+                V value = read.get();
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error readFailure) {
+                flight.completeExceptionally(readFailure);
+                throw readFailure;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+        try {
+            V value = leaderFlight.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            shared.increment();
+            return value;
+        } catch (ExecutionException readFailure) {
+            shared.increment();
+            if (readFailure.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) readFailure.getCause();
+        } catch (TimeoutException slowRead) {
+            timeouts.increment();
+            return read.get();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return read.get();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.abernathyclinic.apipatients.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets limiting the request rate of each client, without locks nor per-client allocation.
+ * <p>
+ * Clients are hashed to a fixed number of buckets, the stripes, so that memory stays bounded whatever the number of
+ * clients; clients sharing a stripe share its tokens. Each bucket is a single long, the time at which it will be full
+ * again (the theoretical arrival time of the generic cell rate algorithm), updated with a compare-and-set: a request
+ * is allowed if taking its token does not push that time further than burst tokens ahead of now.
+ */
+public class TokenBucketRateLimiter {
+    /**
+     * Buckets are 8 longs apart, one cache line, so that clients of neighbouring stripes do not contend.
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray buckets;
+    private final int             stripeMask;
+    private final long            emissionInterval;
+    private final long            capacity;
+    private final LongSupplier    clock;
+    private final long            origin;
+
+    /**
+     * @param requestsPerSecond tokens added to each bucket per second
+     * @param burst             tokens of a full bucket, the requests a client can make at once
+     * @param stripes           number of buckets, rounded up to a power of two
+     */
+    public TokenBucketRateLimiter(double requestsPerSecond, int burst, int stripes) {
+        this(requestsPerSecond, burst, stripes, System::nanoTime);
+    }
+
+    /**
+     * @param clock time in nanoseconds, System::nanoTime out of tests
+     */
+    TokenBucketRateLimiter(double requestsPerSecond, int burst, int stripes, LongSupplier clock) {
+        if (requestsPerSecond <= 0 || burst < 1 || stripes < 1) {
+            throw new IllegalArgumentException("Rate, burst and stripes must be positive.");
+        }
+        int stripeCount = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.buckets = new AtomicLongArray(stripeCount * PADDING);
+        this.stripeMask = stripeCount - 1;
+        this.emissionInterval = (long) (Duration.ofSeconds(1).toNanos() / requestsPerSecond);
+        this.capacity = emissionInterval * burst;
+        this.clock = clock;
+        // buckets start full at 0, times being relative to the creation of the limiter
+        this.origin = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token from the bucket of a client.
+     *
+     * @param client client identity
+     * @return zero if the request is allowed, otherwise the time after which the client will have a token
+     */
+    public Duration tryAcquire(String client) {
+        int index = stripe(client) * PADDING;
+        long now = clock.getAsLong() - origin;
+        while (true) {
+            long fullAt = buckets.get(index);
+            long newFullAt = Math.max(fullAt, now) + emissionInterval;
+            long excess = newFullAt - now - capacity;
+            if (excess > 0) {
+                return Duration.ofNanos(excess);
+            }
+            if (buckets.compareAndSet(index, fullAt, newFullAt)) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    private int stripe(String client) {
+        int hash = client.hashCode();
+        // spreads the high bits like HashMap, client IDs often differ in their last characters only
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+}
@@ -3,6 +3,7 @@ DROP DATABASE IF EXISTS abernathy_clinic ;
 CREATE DATABASE abernathy_clinic;
 USE abernathy_clinic;
 
+-- patient IDs are allocated by PatientIdGenerator, AUTO_INCREMENT is only used by data.sql
 CREATE TABLE patients (
     patient_id INT NOT NULL PRIMARY KEY AUTO_INCREMENT,
     family VARCHAR(50) NOT NULL,
@@ -10,5 +11,30 @@ CREATE TABLE patients (
     date_of_birth DATE NOT NULL,
     gender VARCHAR(1),
     address VARCHAR(100),
-    phone VARCHAR(50)
+    phone VARCHAR(50),
+    version INT NOT NULL DEFAULT 0,
+    -- Double Metaphone code of the family name followed by the year of birth, see PatientMatcher. Set when patients
+    -- are written, and by PatientDuplicateDetector for patients inserted without it
+    blocking_key VARCHAR(12),
+    INDEX ix_patients_blocking_key (blocking_key),
+    -- rejects duplicate patients even when created concurrently, see PatientService.createPatient. Name searches are
+    -- served by the in-memory search index
+    UNIQUE KEY uk_patients_natural_key (family, given, date_of_birth)
+);
+
+-- Transactional outbox of patient changes, written in the transaction of each change and streamed by the change feed,
+-- see PatientChangeFeed. Changes older than the retention period are purged
+CREATE TABLE patient_changes (
+    change_id BIGINT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    patient_id INT NOT NULL,
+    change_type VARCHAR(6) NOT NULL,
+    version INT,
+    changed_at DATETIME(3) NOT NULL,
+    INDEX ix_patient_changes_changed_at (changed_at)
+);
+
+-- Blocks of patient IDs reserved by PatientIdGenerator, one row per shard, see PatientShards
+CREATE TABLE patient_id_blocks (
+    shard INT NOT NULL PRIMARY KEY,
+    next_block BIGINT NOT NULL
 );
@@ -0,0 +1,43 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LocalOnlyFilterTest {
+    private final LocalOnlyFilter filter = new LocalOnlyFilter();
+
+    @Test
+    @DisplayName("Requests from the local host should go through")
+    void doFilter_fromLocalHost_shouldContinue() throws Exception {
+        for (String address : new String[] {"127.0.0.1", "0:0:0:0:0:0:0:1"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/actuator/loggers/org.hibernate.SQL");
+            request.setRemoteAddr(address);
+            MockFilterChain chain = new MockFilterChain();
+
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+            assertNotNull(chain.getRequest());
+        }
+    }
+
+    @Test
+    @DisplayName("Requests from other hosts should be forbidden")
+    void doFilter_fromOtherHost_shouldForbid() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/actuator/loggers/org.hibernate.SQL");
+        request.setRemoteAddr("10.0.0.12");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(403, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+}
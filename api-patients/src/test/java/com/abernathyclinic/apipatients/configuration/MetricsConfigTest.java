@@ -0,0 +1,76 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.service.PatientService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the servers, the actuator being served on the management port only. Requests come from the local host.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:metrics;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"})
+@AutoConfigureMetrics
+class MetricsConfigTest {
+    @LocalServerPort
+    int port;
+
+    @LocalManagementPort
+    int managementPort;
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    PatientService patientService;
+
+    @Test
+    @DisplayName("Prometheus endpoint should expose service timers, pool, cache and Hibernate metrics")
+    void prometheus_shouldExposeMetrics() {
+        patientService.getPatientById(1);
+
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                "http://localhost:" + managementPort + "/actuator/prometheus", String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getBody())
+                .contains("patients_service_seconds_bucket{")
+                .contains("method=\"getPatientById\"")
+                .contains("hikaricp_connections_active")
+                .contains("cache_gets_total{application=\"api-patients\",cache=\"patients\"")
+                .contains("hibernate_");
+    }
+
+    @Test
+    @DisplayName("Loggers endpoint should answer local callers on the management port")
+    void loggers_shouldBeServedLocally() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                "http://localhost:" + managementPort + "/actuator/loggers/org.hibernate.SQL", String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Actuator endpoints, such as loggers, should not be served on the API port")
+    void loggers_shouldNotBeServedOnApiPort() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                "http://localhost:" + port + "/actuator/loggers", String.class);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+}
@@ -0,0 +1,85 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientBatch;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientProtobufHttpMessageConverterTest {
+    private static final Type PATIENT_LIST = new ParameterizedTypeReference<List<Patient>>() { }.getType();
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().factory(new ProtobufFactory()).build();
+
+    /**
+     * Class under test
+     */
+    private final PatientProtobufHttpMessageConverter converter = new PatientProtobufHttpMessageConverter(objectMapper);
+
+    private final Patient testNone = new Patient(1, "TestNone", "Test", LocalDate.of(1966, 12, 31), "F",
+            "1 Brookside St", null, 4);
+
+    @Test
+    @DisplayName("Patient written as Protocol Buffers is read back unchanged, missing values staying null")
+    void writeAndRead_patient() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(testNone, Patient.class, PatientProtobufHttpMessageConverter.APPLICATION_PROTOBUF, output);
+
+        Patient patient = (Patient) converter.read(Patient.class, null, new MockHttpInputMessage(output.getBodyAsBytes()));
+
+        assertEquals(output.getBodyAsBytes().length, output.getHeaders().getContentLength());
+        assertEquals("TestNone", patient.getFamily());
+        assertEquals(LocalDate.of(1966, 12, 31), patient.getDob());
+        assertEquals(4, patient.getVersion());
+        assertNull(patient.getPhone());
+    }
+
+    @Test
+    @DisplayName("Patient lists and batches are written as PatientList and PatientBatch messages")
+    void write_patientListAndBatch() throws IOException {
+        MockHttpOutputMessage list = new MockHttpOutputMessage();
+        converter.write(List.of(testNone, testNone), PATIENT_LIST, null, list);
+        MockHttpOutputMessage batch = new MockHttpOutputMessage();
+        converter.write(new PatientBatch(List.of(testNone), List.of(7, 8)), PatientBatch.class, null, batch);
+
+        JsonNode patients = read(list, "PatientList");
+        JsonNode missingIds = read(batch, "PatientBatch").get("missingIds");
+        assertEquals(2, patients.get("patients").size());
+        assertEquals("1966-12-31", patients.get("patients").get(1).get("dob").asText());
+        assertEquals(8, missingIds.get(1).asInt());
+    }
+
+    @Test
+    @DisplayName("Only patients, patient lists and batches are supported")
+    void canWrite_onlyPatients() {
+        assertTrue(converter.canWrite(PATIENT_LIST, List.class, PatientProtobufHttpMessageConverter.APPLICATION_PROTOBUF));
+        assertFalse(converter.canWrite(new ParameterizedTypeReference<List<Integer>>() { }.getType(), List.class, null));
+        assertFalse(converter.canWrite(String.class, String.class, null));
+        assertFalse(converter.canRead(PatientBatch.class, null, PatientProtobufHttpMessageConverter.APPLICATION_PROTOBUF));
+    }
+
+    private JsonNode read(MockHttpOutputMessage output, String message) throws IOException {
+        return objectMapper.readerFor(JsonNode.class)
+                .with(ProtobufSchemaLoader.std.loadNative(new ClassPathResource("proto/patient.proto").getInputStream(), true)
+                        .forType(message))
+                .readValue(output.getBodyAsBytes());
+    }
+}
@@ -0,0 +1,99 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.PatientService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two H2 databases stand for the primary and the replica. They are not replicated, so that the database a read
+ * went to can be told from its result.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaDataSourceConfigTest.PRIMARY_URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "patients.datasource.replicas[0].url=" + ReplicaDataSourceConfigTest.REPLICA_URL,
+        "patients.datasource.replicas[0].username=sa",
+        "patients.datasource.replicas[0].password=",
+        "patients.datasource.read-your-writes-window=1m",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.cache.type=none"})
+class ReplicaDataSourceConfigTest {
+    static final String PRIMARY_URL = "jdbc:h2:mem:primary;MODE=MySQL;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:database/h2-schema.sql'";
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:database/h2-schema.sql'";
+
+    @Autowired
+    PatientService patientService;
+
+    @Autowired
+    ReadWriteRoutingDataSource routingDataSource;
+
+    private final JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @BeforeEach
+    void setUp() {
+        primary.update("DELETE FROM patients");
+        replica.update("DELETE FROM patients");
+        replica.update("INSERT INTO patients (family, given, date_of_birth) VALUES ('Replica', 'Test', '1952-09-27')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadWriteRoutingDataSource.setCurrentSession(null);
+    }
+
+    @Test
+    @DisplayName("Read-only transactions should go to the replica and writes to the primary database")
+    void readOnlyTransactions_shouldGoToReplica() {
+        patientService.createPatient(new Patient(null, "Primary", "Test", LocalDate.of(1968, 6, 22), "M", null, null));
+
+        assertEquals(List.of("Replica"), families(patientService.getPatients(null, 10).getPatients()));
+        assertEquals(1, primary.queryForObject("SELECT COUNT(*) FROM patients WHERE family = 'Primary'", Integer.class));
+    }
+
+    @Test
+    @DisplayName("Reads of a session should go to the primary database during the read-your-writes window")
+    void readsAfterWrite_shouldGoToPrimary_forTheWritingSession() {
+        ReadWriteRoutingDataSource.setCurrentSession("writer");
+        patientService.createPatient(new Patient(null, "Primary", "Test", LocalDate.of(1968, 6, 22), "M", null, null));
+
+        assertEquals(List.of("Primary"), families(patientService.getPatients(null, 10).getPatients()));
+        // the reads of the writer are not shared with the other sessions
+        assertTrue(routingDataSource.isCurrentSessionPinned());
+
+        ReadWriteRoutingDataSource.setCurrentSession("reader");
+        assertEquals(List.of("Replica"), families(patientService.getPatients(null, 10).getPatients()));
+        assertFalse(routingDataSource.isCurrentSessionPinned());
+    }
+
+    @Test
+    @DisplayName("Reads by ID, whose results are cached for every session, should go to the primary database")
+    void getPatientById_shouldReadPrimary() {
+        primary.update("INSERT INTO patients (patient_id, family, given, date_of_birth) VALUES (500, 'Primary', 'Test', '1952-09-27')");
+        replica.update("INSERT INTO patients (patient_id, family, given, date_of_birth) VALUES (500, 'Lagging', 'Test', '1952-09-27')");
+        ReadWriteRoutingDataSource.setCurrentSession("reader");
+
+        assertEquals("Primary", patientService.getPatientById(500).orElseThrow().getFamily());
+    }
+
+    private static List<String> families(List<Patient> patients) {
+        return patients.stream().map(Patient::getFamily).toList();
+    }
+}
@@ -0,0 +1,184 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
+import com.abernathyclinic.apipatients.exceptions.ChangesExpiredException;
+import com.abernathyclinic.apipatients.model.DuplicateCandidate;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import com.abernathyclinic.apipatients.model.PatientSearchCriteria;
+import com.abernathyclinic.apipatients.service.PatientDuplicateDetector;
+import com.abernathyclinic.apipatients.service.PatientExportService;
+import com.abernathyclinic.apipatients.service.PatientMatcher;
+import com.abernathyclinic.apipatients.service.PatientSearchIndex;
+import com.abernathyclinic.apipatients.service.PatientService;
+import com.abernathyclinic.apipatients.service.PatientShards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Three H2 databases stand for the shards, so that the shard holding a patient can be checked directly.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ShardingConfigTest.SHARD_URL + "0" + ShardingConfigTest.SHARD_INIT,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "patients.sharding.shards[0].url=" + ShardingConfigTest.SHARD_URL + "1" + ShardingConfigTest.SHARD_INIT,
+        "patients.sharding.shards[0].username=sa",
+        "patients.sharding.shards[0].password=",
+        "patients.sharding.shards[1].url=" + ShardingConfigTest.SHARD_URL + "2" + ShardingConfigTest.SHARD_INIT,
+        "patients.sharding.shards[1].username=sa",
+        "patients.sharding.shards[1].password=",
+        "patients.ids.block-size=2",
+        "patients.changes.enabled=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.cache.type=none"})
+class ShardingConfigTest {
+    static final String SHARD_URL  = "jdbc:h2:mem:shard";
+    static final String SHARD_INIT = ";MODE=MySQL;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:database/h2-schema.sql'";
+
+    private static final List<String> FAMILIES = List.of("Ferguson", "Rees", "Arnold", "Sharp", "Ince", "Ross", "Wilson");
+
+    @Autowired
+    PatientService patientService;
+
+    @Autowired
+    PatientShards shards;
+
+    @Autowired
+    PatientSearchIndex searchIndex;
+
+    @Autowired
+    PatientDuplicateDetector duplicateDetector;
+
+    @Autowired
+    PatientExportService exportService;
+
+    private final List<JdbcTemplate> databases = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int shard = 0; shard < 3; shard++) {
+            databases.add(new JdbcTemplate(new DriverManagerDataSource(SHARD_URL + shard + SHARD_INIT, "sa", "")));
+        }
+        databases.forEach(database -> database.update("DELETE FROM patients"));
+        searchIndex.invalidate();
+    }
+
+    @Test
+    @DisplayName("Patients should be created on the shard of their ID, spread by natural key")
+    void createPatient_shouldWriteOnShardOfId() {
+        Set<Integer> usedShards = new HashSet<>();
+        for (Patient patient : createPatients()) {
+            int shard = patient.getId() % 3;
+            usedShards.add(shard);
+            assertEquals(shards.shardOf(patient.getFamily(), patient.getGiven(), patient.getDob()), shard);
+            for (int other = 0; other < 3; other++) {
+                assertEquals(other == shard ? 1 : 0, databases.get(other).queryForObject(
+                        "SELECT COUNT(*) FROM patients WHERE patient_id = ?", Integer.class, patient.getId()));
+            }
+        }
+        assertEquals(3, usedShards.size());
+    }
+
+    @Test
+    @DisplayName("Pages of patients should merge the shards in ID order")
+    void getPatients_shouldMergeShards() {
+        List<Integer> ids = createPatients().stream().map(Patient::getId).sorted().toList();
+
+        List<Integer> pagedIds = new ArrayList<>();
+        PatientPage page = patientService.getPatients(null, 3);
+        pagedIds.addAll(page.getPatients().stream().map(Patient::getId).toList());
+        while (page.getNextCursor() != null) {
+            page = patientService.getPatients(page.getNextCursor(), 3);
+            pagedIds.addAll(page.getPatients().stream().map(Patient::getId).toList());
+        }
+        assertEquals(ids, pagedIds);
+
+        List<Patient> sorted = patientService.getPatients(PageRequest.of(1, 2, Sort.by("family"))).getContent();
+        assertEquals(List.of("Ince", "Rees"), sorted.stream().map(Patient::getFamily).toList());
+        assertEquals(FAMILIES.size(), patientService.getPatients(PageRequest.of(0, 2)).getTotalElements());
+    }
+
+    @Test
+    @DisplayName("Reads by ID should go to the shard of the ID")
+    void getPatientById_shouldReadShardOfId() {
+        databases.get(1).update("INSERT INTO patients (patient_id, family, given, date_of_birth) VALUES (1000, 'One', 'Test', '1952-09-27')");
+        databases.get(2).update("INSERT INTO patients (patient_id, family, given, date_of_birth) VALUES (1001, 'Two', 'Test', '1952-09-27')");
+
+        assertEquals("One", patientService.getPatientById(1000).orElseThrow().getFamily());
+        assertEquals(List.of("Two", "One"), patientService.getPatientsByIds(List.of(1001, 1000, 1002)).getPatients()
+                .stream().map(Patient::getFamily).toList());
+        assertEquals(List.of(1002), patientService.getPatientsByIds(List.of(1001, 1000, 1002)).getMissingIds());
+    }
+
+    @Test
+    @DisplayName("A patient existing on another shard than the one of their natural key should not be created again")
+    void createPatient_existingOnOtherShard_shouldThrow_AlreadyExistsException() {
+        LocalDate dob = LocalDate.of(1968, 6, 22);
+        int otherShard = (shards.shardOf("Ferguson", "Lucas", dob) + 1) % 3;
+        databases.get(otherShard).update("INSERT INTO patients (patient_id, family, given, date_of_birth) VALUES (?, 'Ferguson', 'Lucas', ?)",
+                3000 + otherShard, dob);
+
+        assertThrows(AlreadyExistsException.class,
+                () -> patientService.createPatient(new Patient(null, "Ferguson", "Lucas", dob, "M", null, null)));
+    }
+
+    @Test
+    @DisplayName("Similar patients should be looked for on every shard")
+    void checkNewPatient_shouldSearchEveryShard() {
+        LocalDate dob = LocalDate.of(1968, 6, 22);
+        Patient similar = new Patient(null, "Fergusson", "Lucas", dob, "M", null, null);
+        int otherShard = (shards.shardOf("Fergusson", "Lucas", dob) + 1) % 3;
+        databases.get(otherShard).update("INSERT INTO patients (patient_id, family, given, date_of_birth, blocking_key)"
+                + " VALUES (?, 'Ferguson', 'Lucas', ?, ?)", 3000 + otherShard, dob, PatientMatcher.blockingKey("Ferguson", dob));
+
+        assertEquals(List.of(3000 + otherShard), duplicateDetector.checkNewPatient(similar).stream()
+                .map(DuplicateCandidate::getDuplicateId).toList());
+    }
+
+    @Test
+    @DisplayName("Incremental exports should be refused since changes are not recorded with shards")
+    void checkRange_shouldRefuseIncrementalExport() {
+        assertThrows(ChangesExpiredException.class, () -> exportService.checkRange(Instant.now().minusSeconds(60), null));
+        exportService.checkRange(null, null);
+    }
+
+    @Test
+    @DisplayName("Searches should find the patients of every shard")
+    void searchPatients_shouldSearchEveryShard() {
+        createPatients();
+        searchIndex.invalidate();
+
+        List<Patient> found = patientService.searchPatients(new PatientSearchCriteria("r", null, null, null, null, null, null),
+                PageRequest.of(0, 10)).getContent();
+
+        assertEquals(List.of("Rees", "Ross"), found.stream().map(Patient::getFamily).toList());
+    }
+
+    private List<Patient> createPatients() {
+        List<Patient> patients = new ArrayList<>();
+        for (String family : FAMILIES) {
+            patients.add(patientService.createPatient(new Patient(null, family, "Test", LocalDate.of(1970, 1, 1), null, null, null)));
+        }
+        return patients;
+    }
+}
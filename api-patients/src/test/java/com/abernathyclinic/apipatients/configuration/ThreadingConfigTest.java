@@ -0,0 +1,41 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ThreadingConfigTest {
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(ThreadingConfig.class);
+
+    @Test
+    @DisplayName("Platform mode should keep the default thread pools")
+    void platformMode_shouldNotCustomizeTomcat() {
+        contextRunner.withPropertyValues("patients.threads.mode=platform")
+                     .run(context -> assertThat(context).doesNotHaveBean(TomcatProtocolHandlerCustomizer.class));
+    }
+
+    @Test
+    @DisplayName("Virtual mode should customize Tomcat when the runtime has virtual threads, and fail to start otherwise")
+    void virtualMode_shouldCustomizeTomcat() {
+        contextRunner.withPropertyValues("patients.threads.mode=virtual").run(context -> {
+            if (Runtime.version().feature() >= 21) {
+                assertThat(context).hasSingleBean(TomcatProtocolHandlerCustomizer.class);
+                AsyncTaskExecutor executor = context.getBean(AsyncTaskExecutor.class);
+                context.close();
+                assertThrows(TaskRejectedException.class, () -> executor.execute(() -> { }));
+            } else {
+                assertThat(context).hasFailed();
+                assertThat(context.getStartupFailure()).hasRootCauseInstanceOf(IllegalStateException.class);
+            }
+        });
+        assertEquals(Runtime.version().feature() >= 21, ThreadingConfig.virtualThreadPerTaskExecutor().isPresent());
+    }
+}
@@ -0,0 +1,102 @@
+package com.abernathyclinic.apipatients.configuration;
+
+import com.abernathyclinic.apipatients.exceptions.TooManyRequestsException;
+import com.abernathyclinic.apipatients.service.Bulkhead;
+import com.abernathyclinic.apipatients.service.TokenBucketRateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThrottlingInterceptorTest {
+    private final Bulkhead                listing  = new Bulkhead("test-listing", 1);
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    /**
+     * Class under test: bursts of 2 requests per client, 1 listing at a time, client header trusted from 127.0.0.1
+     */
+    private final ThrottlingInterceptor interceptor = new ThrottlingInterceptor(new TokenBucketRateLimiter(0.1, 2, 1024),
+            "X-Client-Id", Set.of("127.0.0.1"), Map.of(Throttled.Category.LISTING, listing), Duration.ofSeconds(1));
+
+    @Test
+    @DisplayName("Requests of a client over its rate are rejected, other clients are not")
+    void preHandle_shouldRateLimitEachClient() throws Exception {
+        HandlerMethod read = handler("read");
+        assertTrue(interceptor.preHandle(request("batch"), response, read));
+        assertTrue(interceptor.preHandle(request("batch"), response, read));
+
+        TooManyRequestsException rejection = assertThrows(TooManyRequestsException.class,
+                () -> interceptor.preHandle(request("batch"), response, read));
+        assertTrue(rejection.getRetryAfter().compareTo(Duration.ofSeconds(9)) > 0);
+        assertTrue(interceptor.preHandle(request("interactive"), response, read));
+    }
+
+    @Test
+    @DisplayName("The client header of callers other than the trusted proxies is ignored")
+    void preHandle_fromUntrustedCaller_shouldRateLimitAddress() throws Exception {
+        HandlerMethod read = handler("read");
+        for (String client : List.of("spoofed-1", "spoofed-2")) {
+            MockHttpServletRequest request = request(client);
+            request.setRemoteAddr("10.0.0.9");
+            assertTrue(interceptor.preHandle(request, response, read));
+        }
+
+        MockHttpServletRequest request = request("spoofed-3");
+        request.setRemoteAddr("10.0.0.9");
+        assertThrows(TooManyRequestsException.class, () -> interceptor.preHandle(request, response, read));
+    }
+
+    @Test
+    @DisplayName("Requests over the bulkhead limit are rejected until a request completes")
+    void preHandle_shouldRejectWhenBulkheadIsFull() throws Exception {
+        HandlerMethod list = handler("list");
+        MockHttpServletRequest first = request("first");
+        interceptor.preHandle(first, response, list);
+        assertEquals(1, listing.getActiveCalls());
+
+        assertThrows(TooManyRequestsException.class, () -> interceptor.preHandle(request("second"), response, list));
+        interceptor.afterCompletion(first, response, list, null);
+        assertTrue(interceptor.preHandle(request("third"), response, list));
+    }
+
+    @Test
+    @DisplayName("Handlers without @Throttled are not limited")
+    void preHandle_withoutAnnotation_shouldAllow() throws Exception {
+        for (int request = 0; request < 5; request++) {
+            assertTrue(interceptor.preHandle(request("batch"), response, handler("page")));
+        }
+    }
+
+    private static MockHttpServletRequest request(String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Client-Id", client);
+        return request;
+    }
+
+    private static HandlerMethod handler(String method) throws NoSuchMethodException {
+        return new HandlerMethod(new Handlers(), Handlers.class.getMethod(method));
+    }
+
+    public static class Handlers {
+        @Throttled(Throttled.Category.LISTING)
+        public void list() {
+        }
+
+        @Throttled(Throttled.Category.READ)
+        public void read() {
+        }
+
+        public void page() {
+        }
+    }
+}
@@ -12,6 +12,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -20,11 +24,15 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.flash;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -52,12 +60,29 @@ public class PatientControllerTest {
     @Test
     @DisplayName("Return list of patients")
     public void homeTest() throws Exception {
-        when(service.getPatients()).thenReturn(patients);
+        when(service.getPatients(any(Pageable.class))).thenReturn(new PageImpl<>(patients));
 
         mockMvc.perform(get("/patient/list"))
                 .andDo(print())
                .andExpect(status().is2xxSuccessful())
-               .andExpect(model().attributeExists("patients"));
+               .andExpect(model().attributeExists("patients", "page"));
+    }
+
+    @Test
+    @DisplayName("Return requested page of patients, sorted on allowed properties only")
+    public void homeWithPageAndSortTest() throws Exception {
+        Pageable expected = PageRequest.of(1, 1, Sort.by(Sort.Order.desc("dob"), Sort.Order.asc("id")));
+        when(service.getPatients(expected)).thenReturn(new PageImpl<>(List.of(testNone), expected, 2));
+
+        mockMvc.perform(get("/patient/list")
+                        .param("page", "1")
+                        .param("size", "1")
+                        .param("sort", "dob,desc")
+                        .param("sort", "address,asc"))
+                .andDo(print())
+               .andExpect(status().is2xxSuccessful())
+               .andExpect(model().attributeExists("patients", "page"))
+               .andExpect(content().string(containsString("Page 2 of 2")));
     }
 
     @Test
@@ -83,6 +108,7 @@ public class PatientControllerTest {
                .andExpect(status().is3xxRedirection())
                .andExpect(flash().attributeExists("success"))
                .andExpect(view().name("redirect:/patient/list"));
+        verify(service, never()).getPatients(any(Pageable.class));
     }
 
     @Test
@@ -105,7 +131,6 @@ public class PatientControllerTest {
     @DisplayName("Show update form successful")
     public void showUpdateFormIsSuccessful() throws Exception {
         when(service.getPatientById(1)).thenReturn(Optional.of(testNone));
-        when(service.getPatients()).thenReturn(patients);
 
         mockMvc.perform(get("/patient/update/{id}", "1"))
                 .andDo(print())
@@ -118,7 +143,6 @@ public class PatientControllerTest {
     @DisplayName("Show update form failed")
     public void showUpdateFormFails() throws Exception {
         when(service.getPatientById(3)).thenReturn(Optional.empty());
-        when(service.getPatients()).thenReturn(patients);
 
         mockMvc.perform(get("/patient/update/{id}", "3"))
                 .andDo(print())
@@ -141,6 +165,7 @@ public class PatientControllerTest {
                .andExpect(status().is3xxRedirection())
                .andExpect(flash().attributeExists("success"))
                .andExpect(view().name("redirect:/patient/list"));
+        verify(service, never()).getPatients(any(Pageable.class));
     }
 
     @Test
@@ -163,20 +188,19 @@ public class PatientControllerTest {
     @DisplayName("Delete patient successful")
     public void deletePatientIsSuccessful() throws Exception {
         when(service.getPatientById(any(Integer.class))).thenReturn(Optional.of(testNone));
-        when(service.getPatients()).thenReturn(patients);
 
         mockMvc.perform(get("/patient/delete/{id}", "1"))
                 .andDo(print())
                .andExpect(status().is3xxRedirection())
                .andExpect(flash().attributeExists("success"))
                .andExpect(view().name("redirect:/patient/list"));
+        verify(service, never()).getPatients(any(Pageable.class));
     }
 
     @Test
     @DisplayName("Delete patient failed")
     public void deletePatientFailed() throws Exception {
         when(service.getPatientById(any(Integer.class))).thenReturn(Optional.empty());
-        when(service.getPatients()).thenReturn(patients);
 
         mockMvc.perform(get("/patient/delete/{id}", "1"))
                 .andDo(print())
@@ -0,0 +1,99 @@
+package com.abernathyclinic.apipatients.controller;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.PatientService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs Tomcat, whose compression is not applied by MockMvc.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:compression;MODE=MySQL;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:database/h2-schema.sql'",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none"})
+class PatientRestControllerCompressionTest {
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    PatientService patientService;
+
+    @BeforeEach
+    void setUp() {
+        // the database is shared by the tests, the patients are created once
+        if (!patientService.getPatients(null, 1).getPatients().isEmpty()) {
+            return;
+        }
+        for (int patient = 0; patient < 30; patient++) {
+            patientService.createPatient(new Patient(null, "Compressed" + patient, "Test", LocalDate.of(1970, 1, 1),
+                    "F", patient + " Brookside St", "100-222-3333"));
+        }
+    }
+
+    @Test
+    @DisplayName("Listings should be gzipped, with a weak entity tag varying with the Accept header")
+    void getPatients_shouldBeCompressed() throws Exception {
+        HttpResponse<byte[]> response = get("/patient?size=50", "gzip");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null));
+        assertTrue(response.headers().firstValue(HttpHeaders.ETAG).orElseThrow().startsWith("W/\""));
+        assertTrue(response.headers().allValues(HttpHeaders.VARY).stream()
+                .flatMap(vary -> Arrays.stream(vary.split("\\s*,\\s*")))
+                .anyMatch(HttpHeaders.ACCEPT::equalsIgnoreCase));
+    }
+
+    @Test
+    @DisplayName("Exports should be gzipped when the client accepts it")
+    void exportPatients_shouldBeCompressed() throws Exception {
+        HttpResponse<byte[]> response = get("/patient/export", "gzip, deflate");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null));
+        try (InputStream gunzipped = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            assertEquals(31, new String(gunzipped.readAllBytes(), StandardCharsets.UTF_8).lines().count());
+        }
+    }
+
+    @Test
+    @DisplayName("Exports should not be gzipped when the client refuses it with a zero quality")
+    void exportPatients_withGzipRefused_shouldNotBeCompressed() throws Exception {
+        HttpResponse<byte[]> response = get("/patient/export", "gzip;q=0, identity");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).isEmpty());
+        assertEquals(31, new String(response.body(), StandardCharsets.UTF_8).lines().count());
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws Exception {
+        return HttpClient.newHttpClient().send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + path))
+                        .header(HttpHeaders.ACCEPT, "application/json")
+                        .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding)
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
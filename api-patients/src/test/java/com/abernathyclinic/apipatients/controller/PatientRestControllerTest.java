@@ -0,0 +1,417 @@
+package com.abernathyclinic.apipatients.controller;
+
+import com.abernathyclinic.apipatients.configuration.PatientProtobufHttpMessageConverter;
+import com.abernathyclinic.apipatients.model.DuplicateCandidate;
+import com.abernathyclinic.apipatients.model.ImportReport;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientBatch;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.model.PatientFieldsPage;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import com.abernathyclinic.apipatients.model.PatientStats;
+import com.abernathyclinic.apipatients.service.PatientChangeFeed;
+import com.abernathyclinic.apipatients.service.PatientDuplicateDetector;
+import com.abernathyclinic.apipatients.service.PatientExportService;
+import com.abernathyclinic.apipatients.service.PatientImportService;
+import com.abernathyclinic.apipatients.service.PatientService;
+import com.abernathyclinic.apipatients.service.PatientStatistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = PatientRestController.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PatientRestControllerTest {
+    @Autowired
+    MockMvc        mockMvc;
+    @MockBean
+    PatientService service;
+    @MockBean
+    PatientImportService importService;
+    @MockBean
+    PatientChangeFeed changeFeed;
+    @MockBean
+    PatientExportService exportService;
+    @MockBean
+    PatientDuplicateDetector duplicateDetector;
+    @MockBean
+    PatientStatistics statistics;
+
+    private Patient testNone;
+    private Patient testBorderline;
+
+    @BeforeAll
+    public void setUp() {
+        testNone = new Patient(1, "TestNone", "Test", LocalDate.of(1966, 12, 31), "F", "1 Brookside St", "100-222-3333", 4);
+        testBorderline = new Patient(2, "TestBorderline", "Test", LocalDate.of(1945, 6, 24), "M", "2 High St", "200-333-4444");
+    }
+
+    @Test
+    @DisplayName("Listing patients returns one page and the cursor of the next one")
+    public void getPatientsTest() throws Exception {
+        when(service.getPatients(isNull(), eq(1))).thenReturn(new PatientPage(List.of(testNone), "next"));
+
+        mockMvc.perform(get("/patient?size=1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].family").value("TestNone"))
+                .andExpect(header().string(PatientRestController.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(header().string("Link", "<http://localhost/patient?size=1&cursor=next>; rel=\"next\""));
+    }
+
+    @Test
+    @DisplayName("Listing patients with a binary Accept header returns Smile, CBOR or Protocol Buffers")
+    public void getPatientsInBinaryFormatsTest() throws Exception {
+        when(service.getPatients(isNull(), isNull())).thenReturn(new PatientPage(List.of(testNone), null));
+
+        for (String format : List.of(PatientRestController.APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+                PatientProtobufHttpMessageConverter.APPLICATION_PROTOBUF_VALUE)) {
+            byte[] body = mockMvc.perform(get("/patient").accept(format))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(format))
+                    .andReturn().getResponse().getContentAsByteArray();
+            byte[] json = mockMvc.perform(get("/patient")).andReturn().getResponse().getContentAsByteArray();
+            assertTrue(body.length < json.length, format + " should be smaller than JSON");
+        }
+    }
+
+    @Test
+    @DisplayName("Listing last page of patients does not return a next cursor")
+    public void getPatientsLastPageTest() throws Exception {
+        when(service.getPatients(eq("next"), isNull())).thenReturn(new PatientPage(List.of(testBorderline), null));
+
+        mockMvc.perform(get("/patient").param("cursor", "next"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].family").value("TestBorderline"))
+                .andExpect(header().doesNotExist(PatientRestController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    @DisplayName("Listing patients with a malformed cursor returns 400")
+    public void getPatientsWithMalformedCursorTest() throws Exception {
+        when(service.getPatients(eq("bad"), isNull())).thenThrow(new IllegalArgumentException("Invalid cursor: bad"));
+
+        mockMvc.perform(get("/patient").param("cursor", "bad"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Streaming patients writes one JSON patient per line")
+    @SuppressWarnings("unchecked")
+    public void streamPatientsTest() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Patient> consumer = invocation.getArgument(0);
+            consumer.accept(testNone);
+            consumer.accept(testBorderline);
+            return null;
+        }).when(service).streamPatients(any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(get("/patient").accept(PatientRestController.APPLICATION_NDJSON_VALUE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(PatientRestController.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string(org.hamcrest.Matchers.matchesPattern(
+                        "(?s)\\{\"id\":1,.*\"family\":\"TestNone\".*}\n\\{\"id\":2,.*}\n")));
+    }
+
+    @Test
+    @DisplayName("Exporting patients streams the content, leaving its compression to the server")
+    public void exportPatientsTest() throws Exception {
+        Instant since = Instant.parse("2023-06-27T00:00:00Z");
+        when(exportService.export(any(OutputStream.class), eq(PatientExportService.Format.NDJSON), eq(since), isNull()))
+                .thenAnswer(invocation -> {
+                    OutputStream outputStream = invocation.getArgument(0);
+                    outputStream.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                });
+
+        MvcResult result = mockMvc.perform(get("/patient/export")
+                        .param("format", "ndjson")
+                        .param("since", since.toString())
+                        .header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] content = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().contentTypeCompatibleWith(PatientRestController.APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals("{\"id\":1}\n", new String(content, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Exporting patients in an unknown format returns 400")
+    public void exportPatientsWithUnknownFormatTest() throws Exception {
+        mockMvc.perform(get("/patient/export").param("format", "xml"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Streaming changes resumes after the Last-Event-ID and writes one event per change")
+    @SuppressWarnings("unchecked")
+    public void streamChangesTest() throws Exception {
+        when(changeFeed.stream(eq(41L), any(PatientChangeFeed.ChangeWriter.class), any(Consumer.class))).thenAnswer(invocation -> {
+            PatientChangeFeed.ChangeWriter writer = invocation.getArgument(1);
+            writer.write(new PatientChange(42L, 1, PatientChange.Type.UPDATE, 5, Instant.parse("2023-06-27T10:15:30Z")));
+            Consumer<Throwable> onEnd = invocation.getArgument(2);
+            onEnd.accept(null);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        MvcResult result = mockMvc.perform(get("/patient/changes")
+                        .param("after", "7")
+                        .header(PatientRestController.LAST_EVENT_ID_HEADER, "41")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(content().string(org.hamcrest.Matchers.matchesPattern(
+                        "(?s)id:42\nevent:UPDATE\ndata:\\{\"sequence\":42,\"patientId\":1,\"type\":\"UPDATE\",\"version\":5,.*}\n\n")));
+    }
+
+    @Test
+    @DisplayName("Importing CSV patients returns the import report")
+    public void importCsvTest() throws Exception {
+        ImportReport report = new ImportReport(10);
+        report.rowRead();
+        report.imported(1);
+        when(importService.importPatients(any(InputStream.class), eq(PatientImportService.Format.CSV))).thenReturn(report);
+
+        mockMvc.perform(post("/patient/import")
+                        .contentType(PatientRestController.TEXT_CSV_VALUE)
+                        .content("family,given,dob\nRees,Pippa,1952-09-27\n"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows").value(1))
+                .andExpect(jsonPath("$.imported").value(1));
+    }
+
+    @Test
+    @DisplayName("Duplicates report lists the pairs of possible duplicate patients")
+    public void getDuplicatesTest() throws Exception {
+        when(duplicateDetector.findDuplicates(0.8, 10)).thenReturn(List.of(new DuplicateCandidate(1, 2, 0.95)));
+
+        mockMvc.perform(get("/patient/duplicates").param("minScore", "0.8").param("limit", "10"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].patientId").value(1))
+                .andExpect(jsonPath("$[0].duplicateId").value(2))
+                .andExpect(jsonPath("$[0].score").value(0.95));
+    }
+
+    @Test
+    @DisplayName("Getting patient statistics returns the counts of the statistics service")
+    public void getStatsTest() throws Exception {
+        when(statistics.getStats()).thenReturn(new PatientStats(2, Map.of("F", 2L), Map.of("50-64", 2L),
+                Map.of("1960s", 2L), LocalDate.of(2024, 6, 15)));
+
+        mockMvc.perform(get("/patient/stats"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(2))
+                .andExpect(jsonPath("$.bySex.F").value(2))
+                .andExpect(jsonPath("$.byAgeBracket.50-64").value(2))
+                .andExpect(jsonPath("$.asOf").value("2024-06-15"));
+    }
+
+    @Test
+    @DisplayName("Getting a patient returns their version as entity tag")
+    public void getPatientTest() throws Exception {
+        when(service.getPatientById(1)).thenReturn(Optional.of(testNone));
+
+        mockMvc.perform(get("/patient/{id}", "1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andExpect(jsonPath("$.family").value("TestNone"));
+    }
+
+    @Test
+    @DisplayName("Getting an unknown patient returns a problem document")
+    public void getPatientNotFoundTest() throws Exception {
+        when(service.getPatientById(9)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/patient/{id}", "9"))
+                .andDo(print())
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentType(MediaType.APPLICATION_PROBLEM_JSON))
+                .andExpect(jsonPath("$.title").value("Not Found"))
+                .andExpect(jsonPath("$.status").value(404))
+                .andExpect(jsonPath("$.detail").value("Patient with the provided ID does not exist."));
+    }
+
+    @Test
+    @DisplayName("Getting an unchanged patient with If-None-Match returns 304")
+    public void getPatientNotModifiedTest() throws Exception {
+        when(service.getPatientById(1)).thenReturn(Optional.of(testNone));
+
+        mockMvc.perform(get("/patient/{id}", "1").header("If-None-Match", "\"4\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("Listing an unchanged page with If-None-Match returns 304")
+    public void getPatientsNotModifiedTest() throws Exception {
+        when(service.getPatients(isNull(), isNull())).thenReturn(new PatientPage(List.of(testNone), null));
+
+        String eTag = mockMvc.perform(get("/patient"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/patient").header("If-None-Match", eTag))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("Updating a patient with If-Match sends the expected version to the service")
+    public void updatePatientWithIfMatchTest() throws Exception {
+        when(service.getPatientById(1)).thenReturn(Optional.of(testNone));
+        when(service.updatePatient(any(Patient.class))).thenAnswer(invocation -> {
+            Patient patient = invocation.getArgument(0);
+            assertEquals(1, patient.getId());
+            assertEquals(4, patient.getVersion());
+            patient.setVersion(5);
+            return patient;
+        });
+
+        mockMvc.perform(put("/patient/{id}", "1")
+                        .header("If-Match", "\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"family\":\"TestNone\",\"given\":\"Test\",\"dob\":\"1966-12-31\"}"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5\""))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+    }
+
+    @Test
+    @DisplayName("Updating a patient modified since it was read returns 412")
+    public void updatePatientWithOutdatedVersionTest() throws Exception {
+        when(service.getPatientById(1)).thenReturn(Optional.of(testNone));
+        when(service.updatePatient(any(Patient.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Patient.class, 1));
+
+        mockMvc.perform(put("/patient/{id}", "1")
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"family\":\"TestNone\",\"given\":\"Test\",\"dob\":\"1966-12-31\"}"))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @DisplayName("Creating a patient without family name returns 400")
+    public void createPatientWithoutFamilyTest() throws Exception {
+        when(service.createPatient(any(Patient.class))).thenAnswer(invocation -> {
+            Patient patient = invocation.getArgument(0);
+            throw new ConstraintViolationException(Validation.buildDefaultValidatorFactory().getValidator().validate(patient));
+        });
+
+        mockMvc.perform(post("/patient")
+                        .param("given", "Test")
+                        .param("dob", "1966-12-31"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Getting patients by ID in one call returns found patients and missing IDs")
+    public void getPatientsByIdsTest() throws Exception {
+        when(service.getPatientsByIds(List.of(2, 3, 1))).thenReturn(new PatientBatch(List.of(testBorderline, testNone), List.of(3)));
+
+        mockMvc.perform(post("/patient/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[2, 3, 1]"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.patients[0].id").value(2))
+                .andExpect(jsonPath("$.patients[1].id").value(1))
+                .andExpect(jsonPath("$.missingIds[0]").value(3));
+    }
+
+    @Test
+    @DisplayName("Listing patients with fields returns the requested properties only")
+    public void getPatientFieldsTest() throws Exception {
+        Map<String, Object> patient = new LinkedHashMap<>();
+        patient.put("id", 1);
+        patient.put("family", "TestNone");
+        when(service.getPatients(isNull(), isNull(), eq(List.of("id", "family")))).thenReturn(new PatientFieldsPage(List.of(patient), null));
+
+        mockMvc.perform(get("/patient?fields=family"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":1,\"family\":\"TestNone\"}]", true))
+                .andExpect(header().exists("ETag"));
+    }
+
+    @Test
+    @DisplayName("Getting a patient with an unknown field returns 400")
+    public void getPatientWithUnknownFieldTest() throws Exception {
+        mockMvc.perform(get("/patient/{id}?fields=family,ssn", "1"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+}
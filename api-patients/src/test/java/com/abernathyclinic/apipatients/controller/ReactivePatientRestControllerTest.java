@@ -0,0 +1,159 @@
+package com.abernathyclinic.apipatients.controller;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.ReactivePatientService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:database/h2-schema.sql"})
+@AutoConfigureWebTestClient
+@ActiveProfiles("reactive")
+class ReactivePatientRestControllerTest {
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReactivePatientService patientService;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    private Patient testNone;
+
+    @BeforeEach
+    void setUp() {
+        databaseClient.sql("DELETE FROM patients").then().block();
+        testNone = patientService.createPatient(new Patient(null, "TestNone", "Test", LocalDate.of(1966, 12, 31), "F", "1 Brookside St", "100-222-3333")).block();
+        patientService.createPatient(new Patient(null, "TestBorderline", "Test", LocalDate.of(1945, 6, 24), "M", "2 High St", "200-333-4444")).block();
+        assertNotNull(testNone);
+    }
+
+    @Test
+    @DisplayName("Listing patients returns one page and the cursor of the next one")
+    void getPatients_shouldReturnPageAndNextCursor() {
+        webTestClient.get().uri("/patient?size=1").accept(MediaType.APPLICATION_JSON)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().exists(PatientRestController.NEXT_CURSOR_HEADER)
+                     .expectBody()
+                     .jsonPath("$.length()").isEqualTo(1)
+                     .jsonPath("$[0].family").isEqualTo("TestNone");
+    }
+
+    @Test
+    @DisplayName("Streaming patients returns one JSON patient per line, as fast as the client reads them")
+    void streamPatients_shouldHonourDemand() {
+        webTestClient.get().uri("/patient").accept(MediaType.parseMediaType(PatientRestController.APPLICATION_NDJSON_VALUE))
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBodyList(Patient.class).hasSize(2);
+
+        StepVerifier.create(patientService.streamPatients(), 1)
+                    .expectNextMatches(patient -> patient.getFamily().equals("TestNone"))
+                    .thenRequest(1)
+                    .expectNextMatches(patient -> patient.getFamily().equals("TestBorderline"))
+                    .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Getting a patient returns their version as entity tag and 304 if it did not change")
+    void getPatient_shouldSupportConditionalRequests() {
+        webTestClient.get().uri("/patient/{id}", testNone.getId())
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                     .expectBody().jsonPath("$.family").isEqualTo("TestNone");
+
+        webTestClient.get().uri("/patient/{id}", testNone.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                     .exchange()
+                     .expectStatus().isNotModified();
+
+        webTestClient.get().uri("/patient/{id}", 0)
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Creating a patient validates it and rejects duplicates")
+    void createPatient_shouldValidateAndRejectDuplicates() {
+        webTestClient.post().uri("/patient?family=TestInDanger&given=Test&dob=2004-06-18&sex=M")
+                     .exchange()
+                     .expectStatus().isCreated()
+                     .expectBody().jsonPath("$.id").exists();
+
+        webTestClient.post().uri("/patient?family=TestNone&given=Test&dob=1966-12-31&sex=F")
+                     .exchange()
+                     .expectStatus().isBadRequest();
+
+        webTestClient.post().uri("/patient?family=TestInvalid&given=Test&dob=1990-01-01&sex=X")
+                     .exchange()
+                     .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Updating a patient with an outdated entity tag returns 412")
+    void updatePatient_shouldCheckIfMatch() {
+        Patient update = new Patient(null, "TestNone", "Test", LocalDate.of(1966, 12, 31), "F", "1 Brookside St", "999-222-3333");
+
+        webTestClient.put().uri("/patient/{id}", testNone.getId()).header(HttpHeaders.IF_MATCH, "\"0\"").bodyValue(update)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                     .expectBody().jsonPath("$.phone").isEqualTo("999-222-3333");
+
+        webTestClient.put().uri("/patient/{id}", testNone.getId()).header(HttpHeaders.IF_MATCH, "\"0\"").bodyValue(update)
+                     .exchange()
+                     .expectStatus().isEqualTo(412);
+
+        webTestClient.put().uri("/patient/{id}", 0).bodyValue(update)
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Updating a patient without If-Match checks the version of the body")
+    void updatePatient_withoutIfMatch_shouldCheckBodyVersion() {
+        Patient update = new Patient(null, "TestNone", "Test", LocalDate.of(1966, 12, 31), "F", "1 Brookside St", "999-222-3333");
+        update.setVersion(0);
+
+        webTestClient.put().uri("/patient/{id}", testNone.getId()).bodyValue(update)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        webTestClient.put().uri("/patient/{id}", testNone.getId()).bodyValue(update)
+                     .exchange()
+                     .expectStatus().isEqualTo(412);
+    }
+
+    @Test
+    @DisplayName("Deleting a patient returns 204, then 404")
+    void deletePatient_shouldDeleteOnce() {
+        webTestClient.delete().uri("/patient/{id}", testNone.getId())
+                     .exchange()
+                     .expectStatus().isNoContent();
+
+        webTestClient.delete().uri("/patient/{id}", testNone.getId())
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+}
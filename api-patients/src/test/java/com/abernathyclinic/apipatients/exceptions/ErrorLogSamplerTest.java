@@ -0,0 +1,42 @@
+package com.abernathyclinic.apipatients.exceptions;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ErrorLogSamplerTest {
+    private final AtomicLong nanoTime = new AtomicLong(-1_000);
+
+    /**
+     * Class under test: 2 logged errors of each kind per second
+     */
+    private final ErrorLogSampler sampler = new ErrorLogSampler(2, Duration.ofSeconds(1), nanoTime::get);
+
+    @Test
+    @DisplayName("Errors beyond the maximum of the interval are suppressed, then counted when the next one is logged")
+    void sample_shouldSuppressErrorsBeyondMaximum() {
+        assertEquals(0, sampler.sample("PatientNotFoundException"));
+        assertEquals(0, sampler.sample("PatientNotFoundException"));
+        assertEquals(-1, sampler.sample("PatientNotFoundException"));
+        assertEquals(-1, sampler.sample("PatientNotFoundException"));
+
+        nanoTime.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(2, sampler.sample("PatientNotFoundException"));
+        assertEquals(0, sampler.sample("PatientNotFoundException"));
+        assertEquals(-1, sampler.sample("PatientNotFoundException"));
+    }
+
+    @Test
+    @DisplayName("Each kind of error has its own window")
+    void sample_shouldSampleEachKey() {
+        sampler.sample("PatientNotFoundException");
+        sampler.sample("PatientNotFoundException");
+        sampler.sample("PatientNotFoundException");
+
+        assertEquals(0, sampler.sample("AlreadyExistsException"));
+    }
+}
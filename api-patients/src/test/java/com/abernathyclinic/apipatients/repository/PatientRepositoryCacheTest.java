@@ -0,0 +1,97 @@
+package com.abernathyclinic.apipatients.repository;
+
+import com.abernathyclinic.apipatients.configuration.CacheConfig;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.PatientDuplicateDetector;
+import com.abernathyclinic.apipatients.service.PatientIdGenerator;
+import com.abernathyclinic.apipatients.service.PatientSearchIndex;
+import com.abernathyclinic.apipatients.service.PatientService;
+import com.abernathyclinic.apipatients.service.PatientShards;
+import com.abernathyclinic.apipatients.service.PatientStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none", "spring.sql.init.schema-locations=classpath:database/h2-schema.sql"})
+@AutoConfigureCache(cacheProvider = CacheType.CAFFEINE)
+@Import({CacheConfig.class, PatientService.class, PatientSearchIndex.class, PatientDuplicateDetector.class,
+        PatientStatistics.class, PatientShards.class, PatientIdGenerator.class,
+        LocalValidatorFactoryBean.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PatientRepositoryCacheTest {
+    @Autowired
+    PatientRepository patientRepository;
+
+    @Autowired
+    PatientService patientService;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        patientRepository.deleteAll();
+        patient = patientRepository.save(new Patient(1, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", null, null));
+    }
+
+    @Test
+    @DisplayName("findById() should read a patient from database once and then from cache")
+    void findById_shouldCachePatient() {
+        Patient first = patientRepository.findById(patient.getId()).orElseThrow();
+        Patient second = patientRepository.findById(patient.getId()).orElseThrow();
+
+        assertSame(first, second);
+        assertNotNull(cacheManager.getCache(CacheConfig.PATIENTS).get(patient.getId()));
+    }
+
+    @Test
+    @DisplayName("findByFamilyAndGivenAndDob() should cache found patients only")
+    void findByNaturalKey_shouldCacheFoundPatientsOnly() {
+        Patient first = patientRepository.findByFamilyAndGivenAndDob("Ferguson", "Lucas", LocalDate.of(1968, 6, 22)).orElseThrow();
+        Patient second = patientRepository.findByFamilyAndGivenAndDob("Ferguson", "Lucas", LocalDate.of(1968, 6, 22)).orElseThrow();
+        patientRepository.findByFamilyAndGivenAndDob("Rees", "Pippa", LocalDate.of(1952, 9, 27));
+
+        assertSame(first, second);
+        assertNotNull(cacheManager.getCache(CacheConfig.PATIENTS_BY_NATURAL_KEY).get(List.of("Ferguson", "Lucas", LocalDate.of(1968, 6, 22))));
+        assertNull(cacheManager.getCache(CacheConfig.PATIENTS_BY_NATURAL_KEY).get(List.of("Rees", "Pippa", LocalDate.of(1952, 9, 27))));
+    }
+
+    @Test
+    @DisplayName("Updating and deleting a patient should evict them from cache")
+    void updateAndDelete_shouldEvictPatient() {
+        patientRepository.findById(patient.getId());
+        patientRepository.findByFamilyAndGivenAndDob("Ferguson", "Lucas", LocalDate.of(1968, 6, 22));
+
+        patient.setGiven("Lukas");
+        patientService.updatePatient(patient);
+
+        assertNull(cacheManager.getCache(CacheConfig.PATIENTS).get(patient.getId()));
+        assertNull(cacheManager.getCache(CacheConfig.PATIENTS_BY_NATURAL_KEY).get(List.of("Ferguson", "Lucas", LocalDate.of(1968, 6, 22))));
+        assertEquals("Lukas", patientRepository.findById(patient.getId()).orElseThrow().getGiven());
+
+        patientService.deletePatient(patientRepository.findById(patient.getId()).orElseThrow());
+
+        assertNull(cacheManager.getCache(CacheConfig.PATIENTS).get(patient.getId()));
+    }
+}
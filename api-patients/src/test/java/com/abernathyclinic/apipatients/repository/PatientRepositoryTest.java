@@ -0,0 +1,98 @@
+package com.abernathyclinic.apipatients.repository;
+
+import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
+import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.service.PatientDuplicateDetector;
+import com.abernathyclinic.apipatients.service.PatientIdGenerator;
+import com.abernathyclinic.apipatients.service.PatientSearchIndex;
+import com.abernathyclinic.apipatients.service.PatientService;
+import com.abernathyclinic.apipatients.service.PatientShards;
+import com.abernathyclinic.apipatients.service.PatientStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none", "spring.sql.init.schema-locations=classpath:database/h2-schema.sql"})
+@Import({PatientService.class, PatientSearchIndex.class, PatientDuplicateDetector.class,
+        PatientStatistics.class, PatientShards.class, PatientIdGenerator.class,
+        LocalValidatorFactoryBean.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PatientRepositoryTest {
+    @Autowired
+    PatientRepository patientRepository;
+
+    @Autowired
+    PatientService patientService;
+
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        patientRepository.deleteAll();
+        patient = patientService.createPatient(new Patient(null, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", null, null));
+    }
+
+    @Test
+    @DisplayName("Creating a patient twice should be rejected by the unique key")
+    void createPatient_twice_shouldThrow_AlreadyExistsException() {
+        Patient duplicate = new Patient(null, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", "2 Warren Street", null);
+
+        assertThrows(AlreadyExistsException.class, () -> patientService.createPatient(duplicate));
+        assertEquals(1, patientRepository.count());
+    }
+
+    @Test
+    @DisplayName("updatePatient() should update the current version only")
+    void updatePatient_shouldCheckVersion() {
+        Patient update = new Patient(patient.getId(), "Ferguson", "Lukas", patient.getDob(), "M", null, null, 0);
+
+        assertEquals(1, patientService.updatePatient(update).getVersion());
+        assertEquals("Lukas", patientRepository.findById(patient.getId()).orElseThrow().getGiven());
+
+        update.setVersion(0);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> patientService.updatePatient(update));
+
+        update.setVersion(null);
+        assertEquals(2, patientService.updatePatient(update).getVersion());
+    }
+
+    @Test
+    @DisplayName("deletePatientById() should return the number of deleted patients")
+    void deletePatientById_shouldReturnDeletedCount() {
+        patientService.deletePatient(patient);
+
+        assertEquals(0, patientRepository.count());
+        assertThrows(PatientNotFoundException.class, () -> patientService.deletePatient(patient));
+    }
+
+    @Test
+    @DisplayName("findFieldsByIdGreaterThan() and findFieldsById() should read the requested properties only")
+    void findFields_shouldReadRequestedPropertiesOnly() {
+        Patient other = patientService.createPatient(new Patient(null, "Rees", "Pippa", LocalDate.of(1952, 9, 27), "F", null, null));
+
+        List<Map<String, Object>> patients = patientRepository.findFieldsByIdGreaterThan(List.of("id", "family", "dob"), patient.getId(), 10);
+
+        assertEquals(List.of(Map.of("id", other.getId(), "family", "Rees", "dob", LocalDate.of(1952, 9, 27))), patients);
+        assertEquals(List.of("id", "family", "dob"), List.copyOf(patients.get(0).keySet()));
+        assertEquals(Map.of("id", patient.getId(), "given", "Lucas"),
+                patientRepository.findFieldsById(List.of("id", "given"), patient.getId()).orElseThrow());
+        assertTrue(patientRepository.findFieldsById(List.of("id"), 0).isEmpty());
+    }
+}
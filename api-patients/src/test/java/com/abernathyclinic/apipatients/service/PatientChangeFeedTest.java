@@ -0,0 +1,152 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.exceptions.ChangesExpiredException;
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.repository.PatientChangeRepository;
+import com.abernathyclinic.apipatients.repository.PatientRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=none", "spring.sql.init.schema-locations=classpath:database/h2-schema.sql",
+        "patients.changes.buffer-size=2", "patients.changes.heartbeat-interval=PT0.05S", "patients.changes.gap-timeout=PT0S"})
+@Import({PatientChangeFeed.class, PatientService.class, PatientSearchIndex.class, PatientDuplicateDetector.class,
+        PatientStatistics.class, PatientShards.class, PatientIdGenerator.class,
+        LocalValidatorFactoryBean.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PatientChangeFeedTest {
+    @Autowired
+    PatientChangeFeed changeFeed;
+
+    @Autowired
+    PatientService patientService;
+
+    @Autowired
+    PatientRepository patientRepository;
+
+    @Autowired
+    PatientChangeRepository changeRepository;
+
+    private final List<PatientChange> received = new CopyOnWriteArrayList<>();
+    private       Future<?>           stream;
+
+    @BeforeEach
+    void setUp() {
+        patientRepository.deleteAll();
+        changeRepository.deleteAll();
+        received.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (stream != null) {
+            stream.cancel(true);
+        }
+    }
+
+    @Test
+    @DisplayName("stream() should catch up with recorded changes then stream new changes once committed")
+    void stream_shouldCatchUp_thenStreamNewChanges() throws Exception {
+        Patient patient = patientService.createPatient(new Patient(null, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", null, null));
+        patientService.updatePatient(new Patient(patient.getId(), "Ferguson", "Lukas", patient.getDob(), "M", null, null, 0));
+
+        stream = changeFeed.stream(changeRepository.findMinSequence().orElseThrow() - 1, collector(), failure -> { });
+        awaitReceived(2);
+        patientService.deletePatient(patient);
+        awaitReceived(3);
+
+        assertEquals(List.of(PatientChange.Type.CREATE, PatientChange.Type.UPDATE, PatientChange.Type.DELETE),
+                received.stream().map(PatientChange::getType).toList());
+        assertEquals(1, received.get(1).getVersion());
+        assertTrue(received.get(1).getSequence() < received.get(2).getSequence());
+    }
+
+    @Test
+    @DisplayName("A subscriber whose buffer overflowed should catch up from the table without losing changes")
+    void stream_whenBufferOverflows_shouldCatchUpFromTable() throws Exception {
+        stream = changeFeed.stream(null, collector(), failure -> { });
+        for (int index = 0; index < 5; index++) {
+            changeRepository.save(new PatientChange(index, PatientChange.Type.CREATE, 0));
+        }
+        // dispatched changes exceed the buffer of 2 changes
+        changeFeed.dispatch();
+        awaitReceived(5);
+
+        assertEquals(List.of(0, 1, 2, 3, 4), received.stream().map(PatientChange::getPatientId).toList());
+    }
+
+    @Test
+    @DisplayName("stream() should reject a sequence number whose following changes were purged")
+    void stream_afterPurgedChanges_shouldThrow_ChangesExpiredException() {
+        changeRepository.save(new PatientChange(1, PatientChange.Type.CREATE, 0));
+        PatientChange retained = changeRepository.save(new PatientChange(2, PatientChange.Type.CREATE, 0));
+        changeRepository.deleteById(retained.getSequence() - 1);
+
+        assertThrows(ChangesExpiredException.class, () -> changeFeed.stream(retained.getSequence() - 2, collector(), failure -> { }));
+        assertEquals(0, changeFeed.getSubscriberCount());
+    }
+
+    @Test
+    @DisplayName("contiguous() should stop at a recent missing sequence number and skip an old one")
+    void contiguous_shouldWaitForRecentGapsOnly() {
+        Instant now = Instant.now();
+        List<PatientChange> changes = List.of(new PatientChange(1L, 1, PatientChange.Type.CREATE, 0, now),
+                new PatientChange(3L, 2, PatientChange.Type.CREATE, 0, now));
+
+        assertEquals(1, PatientChangeFeed.contiguous(changes, 0, now.minusSeconds(2)).size());
+        assertEquals(2, PatientChangeFeed.contiguous(changes, 0, now.plusSeconds(1)).size());
+    }
+
+    @Test
+    @DisplayName("The change feed should refuse to start on a sharded database")
+    void changeFeed_shouldRefuseShards() {
+        PatientShards shards = new PatientShards(2, null);
+
+        assertThrows(IllegalStateException.class, () -> new PatientChangeFeed(changeRepository, shards, 1, 1, 1,
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        shards.shutdown();
+    }
+
+    private PatientChangeFeed.ChangeWriter collector() {
+        return new PatientChangeFeed.ChangeWriter() {
+            @Override
+            public void write(PatientChange change) {
+                received.add(change);
+            }
+
+            @Override
+            public void heartbeat() {
+                // nothing to keep alive
+            }
+        };
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, received.size());
+    }
+}
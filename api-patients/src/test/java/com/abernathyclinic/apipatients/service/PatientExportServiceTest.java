@@ -0,0 +1,102 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.exceptions.ChangesExpiredException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientExportServiceTest {
+    private EmbeddedDatabase database;
+    private JdbcTemplate     jdbcTemplate;
+
+    /**
+     * Class under test, fetching 2 patients at a time
+     */
+    private PatientExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("database/h2-schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO patients (family, given, date_of_birth, gender, address, phone)"
+                + " VALUES ('Ferguson', 'Lucas', '1968-06-22', 'M', '2 Warren Street', '387-866-1399')");
+        jdbcTemplate.update("INSERT INTO patients (family, given, date_of_birth, gender, address, version)"
+                + " VALUES ('Arnold', 'Edward, Jr', '1952-11-11', 'M', '4 \"Southside\" St', 2)");
+        jdbcTemplate.update("INSERT INTO patients (family, given, date_of_birth) VALUES ('Rees', 'Pippa', '1952-09-27')");
+        exportService = new PatientExportService(jdbcTemplate, new PatientShards(1, new DataSourceTransactionManager(database)),
+                new ObjectMapper().registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS),
+                2, Duration.ofDays(7), true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("CSV export writes a header and one escaped line per patient")
+    void export_asCsv() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long exported = exportService.export(output, PatientExportService.Format.CSV, null, null);
+
+        assertEquals(3, exported);
+        assertEquals("""
+                id,family,given,dob,sex,address,phone,version
+                1,Ferguson,Lucas,1968-06-22,M,2 Warren Street,387-866-1399,0
+                2,Arnold,"Edward, Jr",1952-11-11,M,"4 ""Southside"" St",,2
+                3,Rees,Pippa,1952-09-27,,,,0
+                """, output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Incremental NDJSON export writes the patients changed in the time range only")
+    void export_changedPatients_asNdjson() throws IOException {
+        Instant since = Instant.now().minusSeconds(60);
+        recordChange(1, since.minusSeconds(1));
+        recordChange(3, since.plusSeconds(1));
+        recordChange(3, since.plusSeconds(2));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long exported = exportService.export(output, PatientExportService.Format.NDJSON, since, null);
+
+        assertEquals(1, exported);
+        assertEquals("{\"id\":3,\"family\":\"Rees\",\"given\":\"Pippa\",\"dob\":\"1952-09-27\",\"sex\":null,\"address\":null,"
+                + "\"phone\":null,\"version\":0}\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Incremental export since changes which are no longer retained is rejected")
+    void export_sinceExpiredChanges_shouldThrow_ChangesExpiredException() {
+        assertThrows(ChangesExpiredException.class, () -> exportService.export(new ByteArrayOutputStream(),
+                PatientExportService.Format.CSV, Instant.now().minus(Duration.ofDays(8)), null));
+    }
+
+    private void recordChange(int patientId, Instant changedAt) {
+        jdbcTemplate.update("INSERT INTO patient_changes (patient_id, change_type, version, changed_at) VALUES (?, 'UPDATE', 0, ?)",
+                patientId, Timestamp.from(changedAt));
+    }
+}
@@ -0,0 +1,169 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.model.ImportReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionTimedOutException;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientImportServiceTest {
+    private EmbeddedDatabase database;
+    private JdbcTemplate     jdbcTemplate;
+
+    /**
+     * Class under test, with batches of 2 patients
+     */
+    private PatientImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("database/h2-schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO patients (family, given, date_of_birth) VALUES ('Ferguson', 'Lucas', '1968-06-22')");
+        importService = importService(jdbcTemplate);
+    }
+
+    private PatientImportService importService(JdbcTemplate writer) {
+        PatientShards shards = new PatientShards(1, new DataSourceTransactionManager(database));
+        return new PatientImportService(writer, shards, new PatientIdGenerator(jdbcTemplate, shards, 100),
+                new ObjectMapper().registerModule(new JavaTimeModule()),
+                Validation.buildDefaultValidatorFactory().getValidator(), new PatientSearchIndex(),
+                new PatientStatistics(jdbcTemplate, shards), event -> { }, 2, 10, 0.9,
+                PatientDuplicateDetector.OnDuplicate.WARN, true, Duration.ofSeconds(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("A batch slower than the gap timeout of the change feed should be rolled back, not committed late")
+    void importPatients_slowerThanGapTimeout_shouldRollBack() {
+        JdbcTemplate slowWriter = new JdbcTemplate(database) {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> setter) {
+                if (sql.startsWith("INSERT INTO patients ")) {
+                    // a change of another transaction is committed while the batch is in progress
+                    CompletableFuture.runAsync(() -> jdbcTemplate.update("INSERT INTO patient_changes"
+                            + " (patient_id, change_type, version, changed_at) VALUES (1, 'UPDATE', 1, CURRENT_TIMESTAMP)")).join();
+                    sleep(Duration.ofMillis(1500));
+                }
+                return super.batchUpdate(sql, batchArgs, batchSize, setter);
+            }
+        };
+
+        assertThrows(TransactionTimedOutException.class, () -> importService(slowWriter).importPatients(
+                content("given,family,dob\nPippa,Rees,1952-09-27\n"), PatientImportService.Format.CSV));
+
+        assertEquals(List.of("UPDATE"), jdbcTemplate.queryForList("SELECT change_type FROM patient_changes", String.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patients", Integer.class));
+    }
+
+    @Test
+    @DisplayName("CSV import saves valid rows and reports duplicates and invalid rows")
+    void importPatients_fromCsv() throws IOException {
+        String csv = """
+                given,family,dob,sex,phone
+                Pippa,Rees,1952-09-27,F,628-423-0993
+                Lucas,FERGUSON,1968-06-22,M,
+                "Edward, Jr",Arnold,1952-11-11,M,
+                Anthony,Sharp,26/11/1946,M,
+                Wendy,Ince,1958-06-29,X,
+                Pippa,Rees,1952-09-27,F,
+                Tracey,Ross,1949-12-07,F,131-396-5049
+                """;
+
+        ImportReport report = importService.importPatients(content(csv), PatientImportService.Format.CSV);
+
+        assertEquals(7, report.getRows());
+        assertEquals(3, report.getImported());
+        assertEquals(2, report.getDuplicates());
+        assertEquals(2, report.getInvalid());
+        assertEquals(3, report.getErrors().get(0).getRow());
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patients", Integer.class));
+        assertEquals("Edward, Jr", jdbcTemplate.queryForObject("SELECT given FROM patients WHERE family = 'Arnold'", String.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM patient_changes WHERE change_type = 'CREATE'", Integer.class));
+    }
+
+    @Test
+    @DisplayName("NDJSON import saves valid rows and reports invalid JSON")
+    void importPatients_fromNdjson() throws IOException {
+        String ndjson = """
+                {"family":"Rees","given":"Pippa","dob":"1952-09-27","sex":"F"}
+                {"family":"Arnold","given":"Edward"
+                {"family":"Arnold","given":"Edward","dob":"1952-11-11"}
+                """;
+
+        ImportReport report = importService.importPatients(content(ndjson), PatientImportService.Format.NDJSON);
+
+        assertEquals(3, report.getRows());
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getInvalid());
+        assertEquals(2, report.getErrors().get(0).getRow());
+    }
+
+    @Test
+    @DisplayName("Import counts patients spelled like an existing patient or an earlier row as possible duplicates")
+    void importPatients_withPossibleDuplicates() throws IOException {
+        String csv = """
+                given,family,dob
+                Lukas,Fergusson,1968-06-22
+                Pippa,Rees,1952-09-27
+                Pipa,Reece,1952-09-27
+                Lucas,Ross,1968-06-22
+                """;
+
+        ImportReport report = importService.importPatients(content(csv), PatientImportService.Format.CSV);
+
+        assertEquals(4, report.getImported());
+        assertEquals(2, report.getPossibleDuplicates());
+        assertEquals("FRKS1968", jdbcTemplate.queryForObject("SELECT blocking_key FROM patients WHERE family = 'Fergusson'",
+                String.class));
+    }
+
+    @Test
+    @DisplayName("CSV import without mandatory columns is rejected")
+    void importPatients_withInvalidHeader_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> importService.importPatients(content("family,given\nRees,Pippa"), PatientImportService.Format.CSV));
+    }
+
+    private static ByteArrayInputStream content(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientMatcherTest {
+    private static final LocalDate DOB = LocalDate.of(1968, 6, 22);
+
+    @Test
+    @DisplayName("Family names that sound alike share a blocking key")
+    void blockingKey_isPhonetic() {
+        assertEquals(PatientMatcher.blockingKey("Ferguson", DOB), PatientMatcher.blockingKey("FERGUSSON", DOB));
+        assertEquals(PatientMatcher.blockingKey("Smith", DOB), PatientMatcher.blockingKey("Smyth", DOB));
+        assertNull(PatientMatcher.blockingKey("Ferguson", null));
+    }
+
+    @Test
+    @DisplayName("Same person with misspelled names scores above the default threshold, other people below")
+    void score_ofMisspelledNames() {
+        assertEquals(1, PatientMatcher.score("ferguson", "lucas", DOB, "ferguson", "lucas", DOB));
+        assertTrue(PatientMatcher.score("ferguson", "lucas", DOB, "fergusson", "lukas", DOB) >= 0.9);
+        assertTrue(PatientMatcher.score("ferguson", "lucas", DOB, "ferguson", "pippa", DOB) < 0.9);
+        assertTrue(PatientMatcher.score("ferguson", "lucas", DOB, "fergusson", "lukas", LocalDate.of(1970, 1, 1)) < 0.9);
+    }
+
+    @Test
+    @DisplayName("Jaro-Winkler similarity matches the reference values")
+    void jaroWinkler() {
+        assertEquals(0.961, PatientMatcher.jaroWinkler("martha", "marhta"), 0.001);
+        assertEquals(0.813, PatientMatcher.jaroWinkler("dixon", "dicksonx"), 0.001);
+        assertEquals(0, PatientMatcher.jaroWinkler("abc", "xyz"));
+    }
+}
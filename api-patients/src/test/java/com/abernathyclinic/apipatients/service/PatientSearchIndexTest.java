@@ -0,0 +1,104 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientSearchCriteria;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientSearchIndexTest {
+    /**
+     * Class under test
+     */
+    private PatientSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new PatientSearchIndex();
+        searchIndex.loadIfNeeded(() -> Stream.of(
+                new Patient(1, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", "2 Warren Street", "387-866-1399"),
+                new Patient(2, "Fergusson", "Lukas", LocalDate.of(1968, 6, 22), "M", null, null),
+                new Patient(3, "Rees", "Pippa", LocalDate.of(1952, 9, 27), "F", "745 West Valley Farms Drive", "628-423-0993"),
+                new Patient(4, "Ferrand", "Élodie", LocalDate.of(1990, 1, 5), "F", null, "628-111-2222")));
+    }
+
+    @Test
+    @DisplayName("Family prefix search is case insensitive and ordered by name")
+    void search_byFamilyPrefix() {
+        assertEquals(List.of(1, 2, 4), searchIndex.search(criteria("FER", null, null, null)));
+        assertEquals(List.of(1, 2), searchIndex.search(criteria("fergus", null, null, null)));
+    }
+
+    @Test
+    @DisplayName("Given name prefix search ignores accents")
+    void search_byGivenPrefix_ignoresAccents() {
+        assertEquals(List.of(4), searchIndex.search(criteria(null, "elo", null, null)));
+    }
+
+    @Test
+    @DisplayName("Filters on sex, phone and birth year are combined with name prefixes")
+    void search_withFilters() {
+        assertEquals(List.of(4), searchIndex.search(criteria("fer", null, "F", null)));
+        assertEquals(List.of(4, 3), searchIndex.search(criteria(null, null, null, "628")));
+        PatientSearchCriteria byYear = new PatientSearchCriteria();
+        byYear.setBirthYear(1968);
+        assertEquals(List.of(1, 2), searchIndex.search(byYear));
+    }
+
+    @Test
+    @DisplayName("Updated and removed patients are reflected in search results")
+    void search_afterPutAndRemove() {
+        searchIndex.put(new Patient(3, "Ferry", "Pippa", LocalDate.of(1952, 9, 27), "F", null, null));
+        searchIndex.remove(1);
+
+        assertEquals(List.of(2, 4, 3), searchIndex.search(criteria("fer", null, null, null)));
+        assertTrue(searchIndex.search(criteria("rees", null, null, null)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Patients removed while the index loads should not be added back by the load")
+    void loadIfNeeded_shouldSkipPatientsRemovedWhileLoading() {
+        PatientSearchIndex loading = new PatientSearchIndex();
+        loading.loadIfNeeded(() -> Stream.of(1, 2).map(id -> {
+            // the patient is deleted after it was read by the load, but before the load indexes it
+            loading.remove(1);
+            return new Patient(id, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", null, null);
+        }));
+
+        assertEquals(List.of(2), loading.search(criteria("fer", null, null, null)));
+    }
+
+    @Test
+    @DisplayName("An older version of a patient should not replace the indexed one")
+    void put_olderVersion_shouldKeepLatestNames() {
+        Patient renamed = new Patient(3, "Ferry", "Pippa", LocalDate.of(1952, 9, 27), "F", null, null);
+        renamed.setVersion(2);
+        Patient previous = new Patient(3, "Reese", "Pippa", LocalDate.of(1952, 9, 27), "F", null, null);
+        previous.setVersion(1);
+        searchIndex.put(renamed);
+        searchIndex.put(previous);
+
+        assertEquals(List.of(3), searchIndex.search(criteria("ferry", null, null, null)));
+        assertTrue(searchIndex.search(criteria("rees", null, null, null)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Patients sharing a blocking key are grouped in blocks")
+    void blocks_groupPatientsSharingBlockingKey() {
+        List<List<PatientSearchIndex.Entry>> blocks = searchIndex.blocks();
+
+        assertEquals(1, blocks.size());
+        assertEquals(List.of(1, 2), blocks.get(0).stream().map(PatientSearchIndex.Entry::getId).sorted().toList());
+    }
+
+    private static PatientSearchCriteria criteria(String family, String given, String sex, String phone) {
+        return new PatientSearchCriteria(family, given, null, null, null, sex, phone);
+    }
+}
@@ -3,6 +3,12 @@ package com.abernathyclinic.apipatients.service;
 import com.abernathyclinic.apipatients.exceptions.AlreadyExistsException;
 import com.abernathyclinic.apipatients.exceptions.PatientNotFoundException;
 import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientBatch;
+import com.abernathyclinic.apipatients.model.PatientChange;
+import com.abernathyclinic.apipatients.model.PatientDemographics;
+import com.abernathyclinic.apipatients.model.PatientPage;
+import com.abernathyclinic.apipatients.model.PatientSearchCriteria;
+import com.abernathyclinic.apipatients.repository.PatientChangeRepository;
 import com.abernathyclinic.apipatients.repository.PatientRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -12,23 +18,42 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
+import javax.validation.ConstraintViolationException;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
-@Import(PatientService.class)
+@Import({PatientService.class, PatientSearchIndex.class, PatientDuplicateDetector.class, PatientStatistics.class,
+        PatientShards.class, LocalValidatorFactoryBean.class})
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class PatientServiceTest {
     /**
@@ -37,14 +62,36 @@ class PatientServiceTest {
     @Autowired
     PatientService patientService;
 
+    @Autowired
+    PatientSearchIndex searchIndex;
+
+    @Autowired
+    PatientDuplicateDetector duplicateDetector;
+
+    @Autowired
+    PatientStatistics statistics;
+
     @MockBean
     PatientRepository patientRepository;
 
+    @MockBean
+    PatientChangeRepository patientChangeRepository;
+
+    @MockBean
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @MockBean
+    PatientIdGenerator idGenerator;
+
     private Patient testNone;
     private Patient testBorderline;
 
     @BeforeEach
     void setUp() {
+        searchIndex.invalidate();
         testNone = new Patient(1, "TestNone", "Test", LocalDate.of(1966, 12, 31), "F", "1 Brookside St", "100-222-3333");
         testBorderline = new Patient(2, "TestBorderline", "Test", LocalDate.of(1945, 6, 24), "M", "2 High St", "200-333-4444");
     }
@@ -52,23 +99,39 @@ class PatientServiceTest {
     @Test
     @DisplayName("Registering new patient with valid information should save patient to database")
     void createPatient_whoDoesNotAlreadyExist_shouldCreate_newPatient() {
-        when(patientRepository.existsById(any(Integer.class))).thenReturn(false);
-        when(patientRepository.save(any(Patient.class))).thenReturn(testNone);
+        when(patientRepository.saveAndFlush(any(Patient.class))).thenReturn(testNone);
 
         testNone = patientService.createPatient(testNone);
 
-        verify(patientRepository, times(1)).save(any(Patient.class));
+        verify(patientRepository, times(1)).saveAndFlush(any(Patient.class));
+        verify(patientRepository, never()).findByFamilyAndGivenAndDob(any(String.class), any(String.class), any(LocalDate.class));
         assertThat(testNone).isNotNull();
     }
 
     @Test
     @DisplayName("Registering a patient who already exists should throw AlreadyExistException")
     void createPatient_whoAlreadyExists_shouldThrow_AlreadyExistException() {
-        when(patientRepository.findByFamilyAndGivenAndDob(any(String.class), any(String.class), any(LocalDate.class))).thenReturn(Optional.of(testNone));
+        when(patientRepository.saveAndFlush(any(Patient.class))).thenThrow(new DataIntegrityViolationException("could not execute statement",
+                new SQLException("Duplicate entry 'TestNone-Test-1966-12-31' for key 'patients.uk_patients_natural_key'")));
         assertThrows(AlreadyExistsException.class, () -> patientService.createPatient(testNone));
 
     }
 
+    @Test
+    @DisplayName("Registering a patient spelled like an existing patient is rejected when possible duplicates are rejected")
+    void createPatient_whoMayAlreadyExist_shouldThrow_AlreadyExistExceptionInRejectMode() {
+        when(patientRepository.findByBlockingKeyIn(any())).thenReturn(List.of(
+                new Patient(3, "Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", null, null)));
+        Patient fergusson = new Patient(null, "Fergusson", "Lukas", LocalDate.of(1968, 6, 22), "M", null, null);
+        duplicateDetector.onCreate = PatientDuplicateDetector.OnDuplicate.REJECT;
+        try {
+            assertThrows(AlreadyExistsException.class, () -> patientService.createPatient(fergusson));
+            verify(patientRepository, never()).saveAndFlush(any(Patient.class));
+        } finally {
+            duplicateDetector.onCreate = PatientDuplicateDetector.OnDuplicate.WARN;
+        }
+    }
+
     @Test
     @DisplayName("getPatients() should return list of existing patients")
     void getPatients() {
@@ -80,6 +143,83 @@ class PatientServiceTest {
         assertTrue(result.contains(testBorderline));
     }
 
+    @Test
+    @DisplayName("getPatients(cursor, size) should return a page and the cursor of the next one")
+    void getPatients_withMorePatientsThanPageSize_shouldReturn_nextCursor() {
+        when(patientRepository.findByIdGreaterThanOrderByIdAsc(eq(0), any(Pageable.class)))
+                .thenReturn(new ArrayList<>(List.of(testNone, testBorderline)));
+        when(patientRepository.findByIdGreaterThanOrderByIdAsc(eq(testNone.getId()), any(Pageable.class)))
+                .thenReturn(new ArrayList<>(List.of(testBorderline)));
+
+        PatientPage firstPage = patientService.getPatients(null, 1);
+        assertEquals(List.of(testNone), firstPage.getPatients());
+
+        PatientPage lastPage = patientService.getPatients(firstPage.getNextCursor(), 1);
+        assertEquals(List.of(testBorderline), lastPage.getPatients());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("getPatients(cursor, size) should reject a malformed cursor")
+    void getPatients_withMalformedCursor_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> patientService.getPatients("not-a-cursor", 10));
+    }
+
+    @Test
+    @DisplayName("searchPatients() should return the requested page of patients matching the criteria")
+    void searchPatients() {
+        when(patientRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(testNone, testBorderline));
+        when(patientRepository.findAllById(List.of(testNone.getId()))).thenReturn(List.of(testNone));
+
+        Page<Patient> result = patientService.searchPatients(new PatientSearchCriteria("testn", null, null, null, null, null, null),
+                PageRequest.of(0, 10));
+
+        assertEquals(1, result.getTotalElements());
+        assertEquals(List.of(testNone), result.getContent());
+    }
+
+    @Test
+    @DisplayName("searchPatients() should find patients created after the search index was loaded")
+    void searchPatients_afterCreatePatient_shouldFindCreatedPatient() {
+        when(patientRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(testNone));
+        patientService.searchPatients(new PatientSearchCriteria(), PageRequest.of(0, 10));
+        when(idGenerator.nextId(0)).thenReturn(testBorderline.getId());
+        when(patientRepository.saveAndFlush(any(Patient.class))).thenReturn(testBorderline);
+        when(patientRepository.findAllById(List.of(testBorderline.getId()))).thenReturn(List.of(testBorderline));
+
+        patientService.createPatient(testBorderline);
+        Page<Patient> result = patientService.searchPatients(new PatientSearchCriteria(null, null, null, null, 1945, "M", null),
+                PageRequest.of(0, 10));
+
+        assertEquals(List.of(testBorderline), result.getContent());
+    }
+
+    @Test
+    @DisplayName("getPatientsByIds() should read patients by chunk and return them in request order with missing IDs")
+    void getPatientsByIds_shouldKeepRequestOrder_andReportMissingIds() {
+        int chunkSize = patientService.batchChunkSize;
+        patientService.batchChunkSize = 2;
+        try {
+            when(patientRepository.findAllById(List.of(2, 99))).thenReturn(List.of(testBorderline));
+            when(patientRepository.findAllById(List.of(1))).thenReturn(List.of(testNone));
+
+            PatientBatch result = patientService.getPatientsByIds(List.of(2, 99, 1, 2));
+
+            assertEquals(List.of(testBorderline, testNone), result.getPatients());
+            assertEquals(List.of(99), result.getMissingIds());
+            verify(patientRepository, times(2)).findAllById(any());
+        } finally {
+            patientService.batchChunkSize = chunkSize;
+        }
+    }
+
+    @Test
+    @DisplayName("getPatientsByIds() should reject more IDs than the configured maximum")
+    void getPatientsByIds_withTooManyIds_shouldThrowException() {
+        List<Integer> ids = IntStream.rangeClosed(1, patientService.maxBatchSize + 1).boxed().toList();
+        assertThrows(IllegalArgumentException.class, () -> patientService.getPatientsByIds(ids));
+    }
+
     @Test
     @DisplayName("Id should not be null when calling getPatientById")
     void getPatientById_whenIDIsNull_shouldThrowException() {
@@ -99,23 +239,78 @@ class PatientServiceTest {
     @Test
     @DisplayName("Updating patient who does not exist should throw PatientNotFoundException")
     void updatePatient_whoDoesNotExist_shouldThrow_PatientNotFoundException() {
-        when(patientRepository.existsById(any(Integer.class))).thenReturn(false);
+        when(patientRepository.updatePatient(any(Patient.class))).thenReturn(0);
         assertThrows(PatientNotFoundException.class, () -> patientService.updatePatient(testNone));
     }
 
+    @Test
+    @DisplayName("Updating patient modified since their version was read should throw ObjectOptimisticLockingFailureException")
+    void updatePatient_withOutdatedVersion_shouldThrow_ObjectOptimisticLockingFailureException() {
+        testNone.setVersion(2);
+        when(patientRepository.updatePatient(any(Patient.class))).thenReturn(0);
+        when(patientRepository.existsById(testNone.getId())).thenReturn(true);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> patientService.updatePatient(testNone));
+    }
+
     @Test
     @DisplayName("Updating existing patient should save changes to database")
     void updatePatient_whoExists_shouldUpdate_existingPatient() {
-        when(patientRepository.existsById(any(Integer.class))).thenReturn(true);
+        when(patientRepository.updatePatient(any(Patient.class))).thenReturn(1);
+        when(patientRepository.findVersionById(any(Integer.class))).thenReturn(Optional.of(3));
         String expectedFamilyName = "New family name";
         testNone.setFamily(expectedFamilyName);
-        when(patientRepository.save(any(Patient.class))).thenReturn(testNone);
 
         testNone = patientService.updatePatient(testNone);
 
-        verify(patientRepository, times(1)).save(any(Patient.class));
+        verify(patientRepository, times(1)).updatePatient(any(Patient.class));
+        verify(patientRepository, never()).save(any(Patient.class));
         assertThat(testNone).isNotNull();
         assertEquals(expectedFamilyName, testNone.getFamily());
+        assertEquals(3, testNone.getVersion());
+        verify(patientChangeRepository, times(1)).save(argThat(change -> change.getType() == PatientChange.Type.UPDATE
+                && change.getPatientId().equals(testNone.getId()) && change.getVersion() == 3));
+    }
+
+    @Test
+    @DisplayName("Creating a patient without family name should be rejected before choosing their shard")
+    void createPatient_withoutFamily_shouldThrow_ConstraintViolationException() {
+        Patient patient = new Patient(null, null, "Test", LocalDate.of(1966, 12, 31), "F", null, null);
+
+        assertThrows(ConstraintViolationException.class, () -> patientService.createPatient(patient));
+        verify(patientRepository, never()).saveAndFlush(any(Patient.class));
+    }
+
+    @Test
+    @DisplayName("Updating a patient with invalid information should be rejected before the update")
+    void updatePatient_withInvalidInformation_shouldThrow_ConstraintViolationException() {
+        testNone.setPhone("not a phone");
+
+        assertThrows(ConstraintViolationException.class, () -> patientService.updatePatient(testNone));
+        verify(patientRepository, never()).updatePatient(any(Patient.class));
+    }
+
+    @Test
+    @DisplayName("Renaming a patient like another patient should throw AlreadyExistException")
+    void updatePatient_toExistingNaturalKey_shouldThrow_AlreadyExistException() {
+        when(patientRepository.updatePatient(any(Patient.class))).thenThrow(new DataIntegrityViolationException("could not execute statement",
+                new SQLException("Duplicate entry 'TestNone-Test-1966-12-31' for key 'patients.uk_patients_natural_key'")));
+
+        assertThrows(AlreadyExistsException.class, () -> patientService.updatePatient(testNone));
+    }
+
+    @Test
+    @DisplayName("Deleting a patient should remove them from the demographic statistics without reading them again")
+    void deletePatient_shouldUpdate_statistics() {
+        when(patientRepository.deletePatientById(testNone.getId())).thenReturn(1);
+        statistics.getStats();
+        statistics.changed(null, new PatientDemographics(testNone));
+        Map<String, Long> bySexBefore = statistics.getStats().getBySex();
+
+        patientService.deletePatient(testNone);
+
+        Map<String, Long> bySex = statistics.getStats().getBySex();
+        assertEquals(bySexBefore.get(testNone.getSex()) - 1, bySex.getOrDefault(testNone.getSex(), 0L));
+        verify(patientRepository, never()).findById(testNone.getId());
     }
 
     @Test
@@ -128,9 +323,19 @@ class PatientServiceTest {
     @Test
     @DisplayName("Updating existing patient should delete them from database")
     void deletePatient() {
-        when(patientRepository.existsById(any(Integer.class))).thenReturn(true);
+        when(patientRepository.deletePatientById(any(Integer.class))).thenReturn(1);
         Integer idBeforeDeletion = testNone.getId();
         patientService.deletePatient(testNone);
         assertTrue(patientService.getPatientById(idBeforeDeletion).isEmpty());
+        verify(patientChangeRepository, times(1)).save(argThat(change -> change.getType() == PatientChange.Type.DELETE
+                && change.getPatientId().equals(idBeforeDeletion)));
+    }
+
+    @Test
+    @DisplayName("Deleting patient who does not exist should throw PatientNotFoundException")
+    void deletePatient_whoDoesNotExist_shouldThrow_PatientNotFoundException() {
+        when(patientRepository.deletePatientById(any(Integer.class))).thenReturn(0);
+        assertThrows(PatientNotFoundException.class, () -> patientService.deletePatient(testNone));
+        verify(patientChangeRepository, never()).save(any(PatientChange.class));
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.abernathyclinic.apipatients.service;
+
+import com.abernathyclinic.apipatients.model.Patient;
+import com.abernathyclinic.apipatients.model.PatientDemographics;
+import com.abernathyclinic.apipatients.model.PatientStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PatientStatisticsTest {
+    private EmbeddedDatabase database;
+    private JdbcTemplate     jdbcTemplate;
+
+    /**
+     * Class under test, computing ages on 2024-06-15
+     */
+    private PatientStatistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("database/h2-schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        insert("Ferguson", "Lucas", "1968-06-22", "M");
+        insert("Rees", "Pippa", "1952-09-27", "F");
+        insert("Arnold", "Edward", "1952-09-27", "F");
+        insert("Bailey", "Ruth", "2010-01-01", null);
+        statistics = new PatientStatistics(jdbcTemplate, new PatientShards(1, new DataSourceTransactionManager(database)),
+                Clock.fixed(Instant.parse("2024-06-15T12:00:00Z"), ZoneOffset.UTC));
+        statistics.load();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("Statistics are computed from the counts loaded from database")
+    void getStats_shouldCountLoadedPatients() {
+        PatientStats stats = statistics.getStats();
+
+        assertEquals(4, stats.getTotal());
+        assertEquals(Map.of("M", 1L, "F", 2L, "unknown", 1L), stats.getBySex());
+        // Lucas turns 56 on 2024-06-22
+        assertEquals(Map.of("0-17", 1L, "18-29", 0L, "30-49", 0L, "50-64", 1L, "65-79", 2L, "80+", 0L),
+                stats.getByAgeBracket());
+        assertEquals(Map.of("1950s", 2L, "1960s", 1L, "2010s", 1L), stats.getByBirthDecade());
+        assertEquals(LocalDate.of(2024, 6, 15), stats.getAsOf());
+    }
+
+    @Test
+    @DisplayName("Creations, updates and deletions update the counts without reading the patients")
+    void changed_shouldUpdateCounts() {
+        PatientStats unchanged = statistics.getStats();
+        assertSame(unchanged, statistics.getStats());
+
+        statistics.created(List.of(new Patient(null, "Lee", "Kim", LocalDate.of(1995, 3, 1), "F", null, null)));
+        statistics.changed(new PatientDemographics("M", LocalDate.of(1968, 6, 22)),
+                new PatientDemographics("F", LocalDate.of(1968, 6, 22)));
+        statistics.changed(new PatientDemographics(null, LocalDate.of(2010, 1, 1)), null);
+        PatientStats stats = statistics.getStats();
+
+        assertEquals(4, stats.getTotal());
+        assertEquals(Map.of("F", 4L), stats.getBySex());
+        assertEquals(1L, stats.getByAgeBracket().get("18-29"));
+        assertEquals(0L, stats.getByAgeBracket().get("0-17"));
+    }
+
+    @Test
+    @DisplayName("Reconciliation replaces counts that missed writes and reports the difference")
+    void reconcile_shouldCatchUpWithDatabase() {
+        insert("Lee", "Kim", "1995-03-01", "F");
+        jdbcTemplate.update("DELETE FROM patients WHERE family = 'Bailey'");
+
+        assertEquals(2, statistics.reconcile());
+
+        PatientStats stats = statistics.getStats();
+        assertEquals(4, stats.getTotal());
+        assertEquals(Map.of("M", 1L, "F", 3L), stats.getBySex());
+        assertEquals(0, statistics.reconcile());
+    }
+
+    private void insert(String family, String given, String dob, String sex) {
+        jdbcTemplate.update("INSERT INTO patients (family, given, date_of_birth, gender) VALUES (?, ?, ?, ?)",
+                family, given, LocalDate.parse(dob), sex);
+    }
+}
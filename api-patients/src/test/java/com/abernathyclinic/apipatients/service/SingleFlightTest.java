@@ -0,0 +1,91 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger   reads    = new AtomicInteger();
+    private final CountDownLatch  started  = new CountDownLatch(1);
+    private final CountDownLatch  release  = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Concurrent reads of the same key should share the read in flight")
+    void execute_concurrently_shouldReadOnce() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5));
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute(1, this::blockingRead));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> follower = executor.submit(() -> singleFlight.execute(1, this::blockingRead));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals("value 1", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value 1", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, reads.get());
+        // the key is no longer in flight, the next read goes to the database again
+        assertEquals("value 2", singleFlight.execute(1, this::blockingRead));
+    }
+
+    @Test
+    @DisplayName("A caller waiting longer than the timeout should read by itself")
+    void execute_whenReadInFlightIsSlow_shouldReadAfterTimeout() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", Duration.ofMillis(50));
+
+        executor.submit(() -> singleFlight.execute(1, this::blockingRead));
+        started.await(5, TimeUnit.SECONDS);
+
+        assertEquals("fast read", singleFlight.execute(1, () -> "fast read"));
+    }
+
+    @Test
+    @DisplayName("Callers waiting for a failed read should get its exception")
+    void execute_whenReadFails_shouldThrowToEveryCaller() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5));
+        IllegalStateException failure = new IllegalStateException("database is down");
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute(1, () -> {
+            blockingRead();
+            throw failure;
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> follower = executor.submit(() -> singleFlight.execute(1, this::blockingRead));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, leader::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, follower::get).getCause());
+        assertEquals(1, reads.get());
+    }
+
+    private String blockingRead() {
+        int read = reads.incrementAndGet();
+        started.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return "value " + read;
+    }
+}
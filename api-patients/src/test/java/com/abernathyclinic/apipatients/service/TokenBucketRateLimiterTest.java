@@ -0,0 +1,77 @@
+package com.abernathyclinic.apipatients.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketRateLimiterTest {
+    private final AtomicLong nanoTime = new AtomicLong(-1_000);
+
+    /**
+     * Class under test: 10 requests per second, bursts of 3
+     */
+    private final TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 3, 64, nanoTime::get);
+
+    @Test
+    @DisplayName("Client gets a burst of requests, then one request per emission interval")
+    void tryAcquire_shouldAllowBurstThenRate() {
+        for (int request = 0; request < 3; request++) {
+            assertEquals(Duration.ZERO, rateLimiter.tryAcquire("batch"));
+        }
+        assertEquals(Duration.ofMillis(100), rateLimiter.tryAcquire("batch"));
+
+        nanoTime.addAndGet(Duration.ofMillis(40).toNanos());
+        assertEquals(Duration.ofMillis(60), rateLimiter.tryAcquire("batch"));
+        nanoTime.addAndGet(Duration.ofMillis(60).toNanos());
+        assertEquals(Duration.ZERO, rateLimiter.tryAcquire("batch"));
+        assertEquals(Duration.ofMillis(100), rateLimiter.tryAcquire("batch"));
+    }
+
+    @Test
+    @DisplayName("Clients have their own buckets")
+    void tryAcquire_shouldLimitEachClient() {
+        for (int request = 0; request < 3; request++) {
+            rateLimiter.tryAcquire("batch");
+        }
+
+        assertEquals(Duration.ZERO, rateLimiter.tryAcquire("interactive"));
+    }
+
+    @Test
+    @DisplayName("Concurrent requests never take more tokens than the bucket holds")
+    void tryAcquire_concurrently_shouldAllowBurstOnly() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 100, 1, nanoTime::get);
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int request = 0; request < 1000; request++) {
+                        if (limiter.tryAcquire("client").isZero()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(100, allowed.get());
+    }
+}
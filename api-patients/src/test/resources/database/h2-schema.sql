@@ -0,0 +1,26 @@
+-- H2 version of database/schema.sql used by tests
+CREATE TABLE IF NOT EXISTS patients (
+    patient_id INT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    family VARCHAR(50) NOT NULL,
+    given VARCHAR(50) NOT NULL,
+    date_of_birth DATE NOT NULL,
+    gender VARCHAR(1),
+    address VARCHAR(100),
+    phone VARCHAR(50),
+    version INT NOT NULL DEFAULT 0,
+    blocking_key VARCHAR(12)
+);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_patients_natural_key ON patients (family, given, date_of_birth);
+CREATE INDEX IF NOT EXISTS ix_patients_blocking_key ON patients (blocking_key);
+CREATE TABLE IF NOT EXISTS patient_changes (
+    change_id BIGINT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    patient_id INT NOT NULL,
+    change_type VARCHAR(6) NOT NULL,
+    version INT,
+    changed_at TIMESTAMP(3) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS ix_patient_changes_changed_at ON patient_changes (changed_at);
+CREATE TABLE IF NOT EXISTS patient_id_blocks (
+    shard INT NOT NULL PRIMARY KEY,
+    next_block BIGINT NOT NULL
+);
@@ -0,0 +1,100 @@
+package com.abernathyclinic.patients.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Connection to the api-patients microservice behind the gateway, see WebClientConfig and ApiPatientsClient.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "gateway")
+public class GatewayProperties {
+    /**
+     * Base URL of api-patients.
+     */
+    private String         apiPatientsUrl = "http://localhost:8081";
+    private Duration       connectTimeout = Duration.ofSeconds(1);
+    /**
+     * Maximum duration of a patient or batch read, including the wait for a pooled connection.
+     */
+    private Duration       responseTimeout = Duration.ofSeconds(3);
+    /**
+     * Maximum duration without data on a forwarded call, higher than the heartbeat interval of the change feed.
+     */
+    private Duration       streamReadTimeout = Duration.ofMinutes(1);
+    private Pool           pool = new Pool();
+    private Batch          batch = new Batch();
+    private Cache          cache = new Cache();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Keep-alive connections to api-patients.
+     */
+    @Getter
+    @Setter
+    public static class Pool {
+        private int      maxConnections = 200;
+        /**
+         * Calls waiting for a connection when all are in use, further calls fail at once.
+         */
+        private int      maxPendingAcquires = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(1);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Fan out of batch reads: the IDs are split in chunks read in parallel.
+     */
+    @Getter
+    @Setter
+    public static class Batch {
+        /**
+         * IDs per call to api-patients, at most its patients.batch.max-size.
+         */
+        private int chunkSize = 100;
+        private int concurrency = 8;
+        /**
+         * IDs per gateway batch read.
+         */
+        private int maxSize = 5000;
+    }
+
+    /**
+     * Patients read by ID, kept for a short time.
+     */
+    @Getter
+    @Setter
+    public static class Cache {
+        private long     maximumSize = 10_000;
+        private Duration timeToLive = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Fails calls at once while api-patients keeps failing, see com.abernathyclinic.patients.service.CircuitBreaker.
+     */
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+        /**
+         * Number of last calls over which the failure rate is computed.
+         */
+        private int      windowSize = 20;
+        /**
+         * Calls to record before the failure rate can open the circuit.
+         */
+        private int      minimumCalls = 10;
+        /**
+         * Failure rate, in percent, opening the circuit.
+         */
+        private int      failureRateThreshold = 50;
+        /**
+         * Time during which calls fail at once, before one trial call is let through.
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+    }
+}
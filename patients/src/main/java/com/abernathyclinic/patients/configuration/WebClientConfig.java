@@ -0,0 +1,47 @@
+package com.abernathyclinic.patients.configuration;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Non-blocking HTTP client of api-patients. Connections are kept alive in a bounded pool so that a traffic spike
+ * neither opens a connection per request nor queues requests without limit: calls wait at most
+ * gateway.pool.pending-acquire-timeout for a connection, then fail.
+ */
+@Configuration
+@EnableConfigurationProperties(GatewayProperties.class)
+public class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider apiPatientsConnections(GatewayProperties properties) {
+        GatewayProperties.Pool pool = properties.getPool();
+        return ConnectionProvider.builder("api-patients")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getMaxPendingAcquires())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getMaxIdleTime())
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient apiPatientsWebClient(WebClient.Builder builder, ConnectionProvider apiPatientsConnections,
+                                          GatewayProperties properties) {
+        HttpClient httpClient = HttpClient.create(apiPatientsConnections)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .responseTimeout(properties.getStreamReadTimeout());
+        return builder
+                .baseUrl(properties.getApiPatientsUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
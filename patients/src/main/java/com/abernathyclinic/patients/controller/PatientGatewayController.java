@@ -0,0 +1,86 @@
+package com.abernathyclinic.patients.controller;
+
+import com.abernathyclinic.patients.exceptions.PatientNotFoundException;
+import com.abernathyclinic.patients.model.Patient;
+import com.abernathyclinic.patients.model.PatientBatch;
+import com.abernathyclinic.patients.service.ApiPatientsClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Entry point of the /patient API in front of api-patients. Patient reads by ID are served from a short-lived cache,
+ * batch reads are split in chunks read in parallel, and the other calls are forwarded as is.
+ */
+@RestController
+@RequestMapping("/patient")
+public class PatientGatewayController {
+    @Autowired
+    ApiPatientsClient apiPatientsClient;
+
+    /**
+     * Gets a patient, with the same entity tag as api-patients.
+     *
+     * @param id       patient ID
+     * @param exchange current exchange, to check the If-None-Match header
+     * @return patient, empty if not modified
+     */
+    @GetMapping(value = "/{id:\\d+}", params = "!fields")
+    public Mono<ResponseEntity<Patient>> getPatient(@PathVariable Integer id, ServerWebExchange exchange) {
+        return apiPatientsClient.getPatient(id, exchange.getRequest())
+                .switchIfEmpty(Mono.error(() ->
+                        new PatientNotFoundException("Patient with the provided ID does not exist.")))
+                .flatMap(patient -> {
+                    String eTag = "\"" + (patient.getVersion() == null ? 0 : patient.getVersion()) + "\"";
+                    if (exchange.checkNotModified(eTag)) {
+                        return Mono.empty();
+                    }
+                    return Mono.just(ResponseEntity.ok().eTag(eTag).body(patient));
+                });
+    }
+
+    /**
+     * Gets many patients in one call, read from api-patients in parallel chunks.
+     *
+     * @param ids      patient IDs, at most gateway.batch.max-size
+     * @param exchange current exchange, to identify the caller
+     * @return found patients in the order of the IDs and IDs of the patients who do not exist
+     */
+    @PostMapping("/batch")
+    public Mono<PatientBatch> getPatientsByIds(@RequestBody List<Integer> ids, ServerWebExchange exchange) {
+        return apiPatientsClient.getPatients(ids, exchange.getRequest());
+    }
+
+    /**
+     * Forwards a patient update or deletion, then removes the patient from the cache.
+     *
+     * @param id       patient ID
+     * @param exchange current exchange
+     * @return completion of the forwarded response
+     */
+    @RequestMapping(value = "/{id:\\d+}", method = {RequestMethod.PUT, RequestMethod.DELETE})
+    public Mono<Void> changePatient(@PathVariable Integer id, ServerWebExchange exchange) {
+        return apiPatientsClient.forward(exchange).doFinally(signal -> apiPatientsClient.evict(id));
+    }
+
+    /**
+     * Forwards any other /patient call to api-patients, streaming the response back.
+     *
+     * @param exchange current exchange
+     * @return completion of the forwarded response
+     */
+    @RequestMapping({"", "/**"})
+    public Mono<Void> forward(ServerWebExchange exchange) {
+        return apiPatientsClient.forward(exchange);
+    }
+}
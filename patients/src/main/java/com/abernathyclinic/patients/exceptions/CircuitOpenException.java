@@ -0,0 +1,27 @@
+package com.abernathyclinic.patients.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a call is not made because the circuit breaker of the called service is open.
+ */
+@Getter
+public class CircuitOpenException extends RuntimeException {
+    /**
+     * Time after which the call may be tried again.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * Exception thrown when a call is not made because the circuit breaker of the called service is open.
+     *
+     * @param service    called service
+     * @param retryAfter time after which the call may be tried again
+     */
+    public CircuitOpenException(String service, Duration retryAfter) {
+        super("Service " + service + " is unavailable, retry after " + retryAfter.toSeconds() + " seconds");
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,71 @@
+package com.abernathyclinic.patients.exceptions;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Turns the errors of the calls to api-patients into gateway responses.
+ */
+@Slf4j
+@RestControllerAdvice
+public class ControllerExceptionHandler {
+
+    @ExceptionHandler(PatientNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public String patientNotFoundException(PatientNotFoundException notFoundException) {
+        return "Patient was not found:\n" + notFoundException.getMessage();
+    }
+
+    /**
+     * Returns the error response of api-patients as is.
+     */
+    @ExceptionHandler(WebClientResponseException.class)
+    public ResponseEntity<byte[]> webClientResponseException(WebClientResponseException responseException) {
+        log.warn("api-patients answered {}.", responseException.getRawStatusCode());
+        HttpHeaders headers = new HttpHeaders();
+        if (responseException.getHeaders().getContentType() != null) {
+            headers.setContentType(responseException.getHeaders().getContentType());
+        }
+        return ResponseEntity.status(responseException.getRawStatusCode())
+                .headers(headers)
+                .body(responseException.getResponseBodyAsByteArray());
+    }
+
+    @ExceptionHandler(CircuitOpenException.class)
+    public ResponseEntity<String> circuitOpenException(CircuitOpenException circuitOpenException) {
+        long retryAfterSeconds = Math.max(1, (circuitOpenException.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(circuitOpenException.getMessage());
+    }
+
+    @ExceptionHandler(TimeoutException.class)
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    public String timeoutException(TimeoutException timeoutException) {
+        log.warn("api-patients did not answer in time.", timeoutException);
+        return "api-patients did not answer in time.";
+    }
+
+    @ExceptionHandler(WebClientRequestException.class)
+    @ResponseStatus(HttpStatus.BAD_GATEWAY)
+    public String webClientRequestException(WebClientRequestException requestException) {
+        log.error("api-patients could not be called.", requestException);
+        return "api-patients could not be called:\n" + requestException.getMessage();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String illegalArgumentException(IllegalArgumentException illegalArgumentException) {
+        log.error("Illegal argument value.", illegalArgumentException);
+        return "Illegal argument value:\n" + illegalArgumentException.getMessage();
+    }
+}
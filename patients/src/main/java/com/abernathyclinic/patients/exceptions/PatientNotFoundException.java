@@ -0,0 +1,15 @@
+package com.abernathyclinic.patients.exceptions;
+
+/**
+ * Exception thrown when the requested patient does not exist.
+ */
+public class PatientNotFoundException extends RuntimeException {
+    /**
+     * Exception thrown when the requested patient does not exist.
+     *
+     * @param message Exception message.
+     */
+    public PatientNotFoundException(String message) {
+        super(message);
+    }
+}
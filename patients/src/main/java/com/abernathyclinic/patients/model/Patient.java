@@ -0,0 +1,29 @@
+package com.abernathyclinic.patients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * Patient as returned by api-patients.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class Patient {
+    private Integer   id;
+    private String    family;
+    private String    given;
+    private LocalDate dob;
+    private String    sex;
+    private String    address;
+    private String    phone;
+    /**
+     * Incremented on each update, used as entity tag of the patient resource.
+     */
+    private Integer   version;
+}
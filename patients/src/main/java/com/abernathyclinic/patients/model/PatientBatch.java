@@ -0,0 +1,24 @@
+package com.abernathyclinic.patients.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Patients read by ID in one call.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientBatch {
+    /**
+     * Found patients, in the order of the requested IDs.
+     */
+    private List<Patient> patients;
+    /**
+     * Requested IDs of patients who do not exist, in request order.
+     */
+    private List<Integer> missingIds;
+}
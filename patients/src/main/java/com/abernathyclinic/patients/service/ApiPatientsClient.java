@@ -0,0 +1,246 @@
+package com.abernathyclinic.patients.service;
+
+import com.abernathyclinic.patients.configuration.GatewayProperties;
+import com.abernathyclinic.patients.model.Patient;
+import com.abernathyclinic.patients.model.PatientBatch;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Calls api-patients through the pooled WebClient, behind a circuit breaker. Patients read by ID are cached for
+ * gateway.cache.time-to-live, and concurrent reads of the same uncached patient share one call.
+ * <p>
+ * Every call carries the identity of the caller it is made for, in the X-Client-Id header, its own or else its
+ * address, so that api-patients rate limits each caller rather than the gateway, and its X-Session-Id header, so that
+ * reads following its writes go to the primary database.
+ */
+@Service
+public class ApiPatientsClient {
+    public static final String CLIENT_ID_HEADER  = "X-Client-Id";
+    public static final String SESSION_ID_HEADER = "X-Session-Id";
+
+    /**
+     * Headers of a single connection, not forwarded.
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(HttpHeaders.CONNECTION, "Keep-Alive",
+            HttpHeaders.TRANSFER_ENCODING, HttpHeaders.TE, HttpHeaders.TRAILER, HttpHeaders.UPGRADE,
+            HttpHeaders.PROXY_AUTHENTICATE, HttpHeaders.PROXY_AUTHORIZATION, HttpHeaders.HOST);
+
+    private final WebClient                    webClient;
+    private final GatewayProperties            properties;
+    private final CircuitBreaker               circuitBreaker;
+    private final AsyncCache<Integer, Patient> patients;
+
+    public ApiPatientsClient(WebClient apiPatientsWebClient, GatewayProperties properties, MeterRegistry meterRegistry) {
+        this.webClient = apiPatientsWebClient;
+        this.properties = properties;
+        GatewayProperties.CircuitBreaker circuit = properties.getCircuitBreaker();
+        this.circuitBreaker = new CircuitBreaker("api-patients", circuit.getWindowSize(), circuit.getMinimumCalls(),
+                circuit.getFailureRateThreshold(), circuit.getOpenDuration(), ApiPatientsClient::isFailure,
+                System::nanoTime);
+        this.patients = Caffeine.newBuilder()
+                .maximumSize(properties.getCache().getMaximumSize())
+                .expireAfterWrite(properties.getCache().getTimeToLive())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, patients.synchronous(), "gatewayPatients");
+    }
+
+    /**
+     * Whether an error means that api-patients is failing: server errors, timeouts and connection errors. Client
+     * errors are answers of a healthy service.
+     */
+    static boolean isFailure(Throwable error) {
+        if (error instanceof WebClientResponseException) {
+            return ((WebClientResponseException) error).getStatusCode().is5xxServerError();
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException;
+    }
+
+    /**
+     * Reads a patient, from the cache if it was read recently. A call shared by concurrent readers is made for the
+     * first of them.
+     *
+     * @param id     patient ID
+     * @param caller request of the caller of the gateway
+     * @return patient, empty if it does not exist
+     */
+    public Mono<Patient> getPatient(Integer id, ServerHttpRequest caller) {
+        // the copy is cancelled with the subscriber, the shared call goes on for the other readers
+        return Mono.fromFuture(() -> patients.get(id, (key, executor) -> fetchPatient(key, caller).toFuture()).copy());
+    }
+
+    private Mono<Patient> fetchPatient(Integer id, ServerHttpRequest caller) {
+        return circuitBreaker.protect(webClient.get()
+                .uri("/patient/{id}", id)
+                .headers(headers -> identify(caller, headers))
+                .retrieve()
+                .bodyToMono(Patient.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, notFound -> Mono.empty())
+                .timeout(properties.getResponseTimeout()));
+    }
+
+    /**
+     * Reads many patients. Cached patients are not read again, the others are read in chunks of
+     * gateway.batch.chunk-size IDs, at most gateway.batch.concurrency chunks at a time.
+     *
+     * @param ids    patient IDs, at most gateway.batch.max-size
+     * @param caller request of the caller of the gateway
+     * @return found patients in the order of the IDs and IDs of the patients who do not exist
+     * @throws IllegalArgumentException if there are too many IDs
+     */
+    public Mono<PatientBatch> getPatients(List<Integer> ids, ServerHttpRequest caller) {
+        if (ids.size() > properties.getBatch().getMaxSize()) {
+            throw new IllegalArgumentException("At most " + properties.getBatch().getMaxSize()
+                    + " patients can be read at once");
+        }
+        Map<Integer, Patient> found = new HashMap<>();
+        List<Integer> uncached = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            CompletableFuture<Patient> cached = patients.getIfPresent(id);
+            Patient patient = cached != null && cached.isDone() && !cached.isCompletedExceptionally()
+                    ? cached.join() : null;
+            if (patient != null) {
+                found.put(id, patient);
+            } else {
+                uncached.add(id);
+            }
+        }
+        int chunkSize = properties.getBatch().getChunkSize();
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int start = 0; start < uncached.size(); start += chunkSize) {
+            chunks.add(uncached.subList(start, Math.min(start + chunkSize, uncached.size())));
+        }
+        return Flux.fromIterable(chunks)
+                .flatMap(chunk -> fetchPatients(chunk, caller), properties.getBatch().getConcurrency())
+                .doOnNext(batch -> batch.getPatients().forEach(patient -> {
+                    patients.put(patient.getId(), CompletableFuture.completedFuture(patient));
+                    found.put(patient.getId(), patient);
+                }))
+                .then(Mono.fromSupplier(() -> {
+                    List<Patient> batchPatients = new ArrayList<>();
+                    List<Integer> missingIds = new ArrayList<>();
+                    for (Integer id : ids) {
+                        Patient patient = found.get(id);
+                        if (patient != null) {
+                            batchPatients.add(patient);
+                        } else {
+                            missingIds.add(id);
+                        }
+                    }
+                    return new PatientBatch(batchPatients, missingIds);
+                }));
+    }
+
+    private Mono<PatientBatch> fetchPatients(List<Integer> ids, ServerHttpRequest caller) {
+        return circuitBreaker.protect(webClient.post()
+                .uri("/patient/batch")
+                .headers(headers -> identify(caller, headers))
+                .bodyValue(ids)
+                .retrieve()
+                .bodyToMono(PatientBatch.class)
+                .timeout(properties.getResponseTimeout()));
+    }
+
+    /**
+     * Removes a patient from the cache, once it is updated or deleted through the gateway.
+     *
+     * @param id patient ID
+     */
+    public void evict(Integer id) {
+        patients.synchronous().invalidate(id);
+    }
+
+    /**
+     * Forwards a request to api-patients as is and streams the response back. Server errors of api-patients are
+     * returned as WebClientResponseException so that they count as failures of the circuit breaker.
+     *
+     * @param exchange gateway request and response
+     * @return completion of the response
+     */
+    public Mono<Void> forward(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        URI uri = URI.create(properties.getApiPatientsUrl() + request.getURI().getRawPath()
+                + (request.getURI().getRawQuery() == null ? "" : "?" + request.getURI().getRawQuery()));
+        HttpMethod method = request.getMethod() == null ? HttpMethod.GET : request.getMethod();
+        return circuitBreaker.protect(webClient.method(method)
+                .uri(uri)
+                .headers(headers -> {
+                    copy(request.getHeaders(), headers);
+                    identify(request, headers);
+                })
+                .httpRequest(httpRequest -> {
+                    HttpClientRequest nativeRequest = httpRequest.getNativeRequest();
+                    nativeRequest.responseTimeout(properties.getStreamReadTimeout());
+                })
+                .body(BodyInserters.fromDataBuffers(request.getBody()))
+                .exchangeToMono(upstream -> {
+                    if (upstream.statusCode().is5xxServerError()) {
+                        return upstream.createException().flatMap(Mono::error);
+                    }
+                    response.setRawStatusCode(upstream.rawStatusCode());
+                    copy(upstream.headers().asHttpHeaders(), response.getHeaders());
+                    return response.writeWith(upstream.bodyToFlux(DataBuffer.class));
+                }));
+    }
+
+    /**
+     * Sets the identity of the caller of the gateway on a call to api-patients.
+     *
+     * @param caller  request of the caller of the gateway
+     * @param headers headers of the call
+     */
+    private static void identify(ServerHttpRequest caller, HttpHeaders headers) {
+        String client = caller.getHeaders().getFirst(CLIENT_ID_HEADER);
+        if ((client == null || client.isBlank()) && caller.getRemoteAddress() != null
+                && caller.getRemoteAddress().getAddress() != null) {
+            client = caller.getRemoteAddress().getAddress().getHostAddress();
+        }
+        if (client != null && !client.isBlank()) {
+            headers.set(CLIENT_ID_HEADER, client);
+        }
+        String session = caller.getHeaders().getFirst(SESSION_ID_HEADER);
+        if (session != null) {
+            headers.set(SESSION_ID_HEADER, session);
+        }
+    }
+
+    private static void copy(HttpHeaders from, HttpHeaders to) {
+        from.forEach((name, values) -> {
+            if (HOP_BY_HOP_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                to.put(name, values);
+            }
+        });
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+}
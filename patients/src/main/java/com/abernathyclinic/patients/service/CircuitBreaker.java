@@ -0,0 +1,156 @@
+package com.abernathyclinic.patients.service;
+
+import com.abernathyclinic.patients.exceptions.CircuitOpenException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker over the outcomes of the last calls. While closed, calls go through and their outcome is recorded;
+ * once enough calls are recorded and the failure rate reaches the threshold, the circuit opens and calls fail at once
+ * with a CircuitOpenException. After the open duration, one trial call is let through: the circuit closes if it
+ * succeeds and opens again if it fails.
+ */
+@Slf4j
+public class CircuitBreaker {
+    /**
+     * State of the circuit.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String               name;
+    private final int                  minimumCalls;
+    private final int                  failureRateThreshold;
+    private final long                 openNanos;
+    private final Predicate<Throwable> isFailure;
+    private final LongSupplier         nanoTime;
+
+    /**
+     * Outcomes of the last calls, true for a failure, as a ring buffer.
+     */
+    private final boolean[] outcomes;
+    private int             recorded;
+    private int             next;
+    private int             failures;
+    private State           state = State.CLOSED;
+    private long            openedAt;
+    private boolean         trialCallRunning;
+
+    /**
+     * Creates a closed circuit breaker.
+     *
+     * @param name                 name in the logs
+     * @param windowSize           number of last calls over which the failure rate is computed
+     * @param minimumCalls         calls to record before the circuit can open
+     * @param failureRateThreshold failure rate, in percent, opening the circuit
+     * @param openDuration         time during which calls fail at once
+     * @param isFailure            whether an error is a failure of the called service, other errors count as successes
+     * @param nanoTime             clock, System::nanoTime except in tests
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                          Duration openDuration, Predicate<Throwable> isFailure, LongSupplier nanoTime) {
+        this.name = name;
+        this.outcomes = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.isFailure = isFailure;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Protects a call: the call is subscribed only if the circuit lets it through, and its outcome is recorded.
+     *
+     * @param call call to the protected service, subscribed at most once per subscription to the result
+     * @return result of the call, or a CircuitOpenException if the circuit is open
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            Duration retryAfter = acquire();
+            if (retryAfter != null) {
+                return Mono.error(new CircuitOpenException(name, retryAfter));
+            }
+            return call
+                    .doOnSuccess(result -> record(false))
+                    .doOnError(error -> record(isFailure.test(error)))
+                    .doOnCancel(this::release);
+        });
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Lets a call through, or returns the time after which to try again if the circuit is open.
+     */
+    private synchronized Duration acquire() {
+        if (state == State.OPEN) {
+            long openFor = nanoTime.getAsLong() - openedAt;
+            if (openFor < openNanos) {
+                return Duration.ofNanos(openNanos - openFor);
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialCallRunning) {
+                return Duration.ofSeconds(1);
+            }
+            trialCallRunning = true;
+        }
+        return null;
+    }
+
+    /**
+     * Releases the trial call when it is cancelled before its outcome is known.
+     */
+    private synchronized void release() {
+        trialCallRunning = false;
+    }
+
+    private synchronized void record(boolean failure) {
+        if (state == State.HALF_OPEN) {
+            trialCallRunning = false;
+            if (failure) {
+                open();
+            } else {
+                log.info("Circuit {} closed", name);
+                state = State.CLOSED;
+                recorded = 0;
+                failures = 0;
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // outcome of a call let through before the circuit opened
+            return;
+        }
+        if (recorded == outcomes.length) {
+            failures -= outcomes[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        failures += failure ? 1 : 0;
+        next = (next + 1) % outcomes.length;
+        if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    private void open() {
+        log.warn("Circuit {} opened", name);
+        state = State.OPEN;
+        openedAt = nanoTime.getAsLong();
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
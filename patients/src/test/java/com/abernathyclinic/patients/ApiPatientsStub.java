@@ -0,0 +1,129 @@
+package com.abernathyclinic.patients;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stub of the api-patients /patient API on a random port, counting the calls it receives and recording the
+ * identity of the caller of patient and batch reads.
+ */
+public class ApiPatientsStub {
+    private final Map<Integer, String> patients = new ConcurrentHashMap<>();
+    private final AtomicInteger        patientCalls = new AtomicInteger();
+    private final AtomicInteger        batchCalls = new AtomicInteger();
+    private final AtomicInteger        otherCalls = new AtomicInteger();
+    private volatile int               failureStatus;
+    private volatile Duration          delay = Duration.ZERO;
+    private volatile String            lastClientId;
+    private volatile String            lastSessionId;
+    private final LoopResources        loops = LoopResources.create("api-patients-stub");
+    private final DisposableServer     server;
+
+    public ApiPatientsStub() {
+        server = HttpServer.create()
+                .port(0)
+                // own event loops, the global ones are disposed with each application context
+                .runOn(loops)
+                .route(routes -> routes
+                        .get("/patient/{id}", (request, response) -> {
+                            patientCalls.incrementAndGet();
+                            lastClientId = request.requestHeaders().get("X-Client-Id");
+                            lastSessionId = request.requestHeaders().get("X-Session-Id");
+                            if (failureStatus != 0) {
+                                return response.status(failureStatus).sendString(Mono.just("failure"));
+                            }
+                            String patient = patients.get(Integer.valueOf(request.param("id")));
+                            if (patient == null) {
+                                return response.status(404).sendString(Mono.just("Patient was not found"));
+                            }
+                            return response.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(patient).delayElement(delay));
+                        })
+                        .post("/patient/batch", (request, response) -> {
+                            batchCalls.incrementAndGet();
+                            lastClientId = request.requestHeaders().get("X-Client-Id");
+                            lastSessionId = request.requestHeaders().get("X-Session-Id");
+                            return response.header("Content-Type", "application/json")
+                                    .sendString(request.receive().aggregate().asString().map(this::batch));
+                        })
+                        .route(request -> true, (request, response) -> {
+                            otherCalls.incrementAndGet();
+                            return response.status(failureStatus != 0 ? failureStatus : 200)
+                                    .header("Content-Type", "application/json")
+                                    .header("X-Next-Cursor", "next")
+                                    .sendString(Mono.just("[]"));
+                        }))
+                .bindNow();
+    }
+
+    private String batch(String ids) {
+        List<String> found = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids.replaceAll("[\\[\\] ]", "").split(",")) {
+            String patient = patients.get(Integer.valueOf(id));
+            if (patient != null) {
+                found.add(patient);
+            } else {
+                missing.add(id);
+            }
+        }
+        return "{\"patients\":[" + String.join(",", found) + "],\"missingIds\":[" + String.join(",", missing) + "]}";
+    }
+
+    public void addPatient(int id, String family, int version) {
+        patients.put(id, "{\"id\":" + id + ",\"family\":\"" + family + "\",\"given\":\"Test\",\"dob\":\"1966-12-31\","
+                + "\"version\":" + version + "}");
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    public void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    public void setDelay(Duration delay) {
+        this.delay = delay;
+    }
+
+    public int getPatientCalls() {
+        return patientCalls.get();
+    }
+
+    public int getBatchCalls() {
+        return batchCalls.get();
+    }
+
+    public int getOtherCalls() {
+        return otherCalls.get();
+    }
+
+    /**
+     * X-Client-Id header of the last patient or batch read.
+     */
+    public String getLastClientId() {
+        return lastClientId;
+    }
+
+    /**
+     * X-Session-Id header of the last patient or batch read.
+     */
+    public String getLastSessionId() {
+        return lastSessionId;
+    }
+
+    public void stop() {
+        server.disposeNow();
+        loops.dispose();
+    }
+}
@@ -0,0 +1,152 @@
+package com.abernathyclinic.patients.controller;
+
+import com.abernathyclinic.patients.ApiPatientsStub;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = {"gateway.batch.chunk-size=2", "gateway.batch.concurrency=2",
+        "gateway.response-timeout=PT2S", "gateway.circuit-breaker.window-size=4",
+        "gateway.circuit-breaker.minimum-calls=4", "gateway.circuit-breaker.open-duration=PT1M"})
+@AutoConfigureWebTestClient
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class PatientGatewayControllerTest {
+    static final ApiPatientsStub API_PATIENTS = new ApiPatientsStub();
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @DynamicPropertySource
+    static void apiPatientsUrl(DynamicPropertyRegistry registry) {
+        registry.add("gateway.api-patients-url", API_PATIENTS::getUrl);
+    }
+
+    @AfterEach
+    void tearDown() {
+        API_PATIENTS.setFailureStatus(0);
+        API_PATIENTS.setDelay(Duration.ZERO);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        API_PATIENTS.stop();
+    }
+
+    @Test
+    @DisplayName("Patient read by ID is cached and keeps the entity tag of api-patients")
+    void getPatient_shouldBeCached() {
+        API_PATIENTS.addPatient(1, "TestNone", 3);
+        int calls = API_PATIENTS.getPatientCalls();
+
+        for (int read = 0; read < 2; read++) {
+            webTestClient.get().uri("/patient/1").exchange()
+                    .expectStatus().isOk()
+                    .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
+                    .expectBody().jsonPath("$.family").isEqualTo("TestNone");
+        }
+        webTestClient.get().uri("/patient/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\"").exchange()
+                .expectStatus().isNotModified();
+
+        assertEquals(calls + 1, API_PATIENTS.getPatientCalls());
+    }
+
+    @Test
+    @DisplayName("Missing patient is a 404")
+    void getPatient_whenMissing_shouldReturnNotFound() {
+        webTestClient.get().uri("/patient/404").exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Batch read is split in chunks read in parallel, and merged in request order")
+    void getPatientsByIds_shouldFanOutInChunks() {
+        List.of(10, 11, 12, 13, 14).forEach(id -> API_PATIENTS.addPatient(id, "Batch" + id, 0));
+        int calls = API_PATIENTS.getBatchCalls();
+
+        webTestClient.post().uri("/patient/batch").bodyValue(List.of(14, 99, 10, 11, 12, 13)).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.patients.length()").isEqualTo(5)
+                .jsonPath("$.patients[0].id").isEqualTo(14)
+                .jsonPath("$.patients[1].id").isEqualTo(10)
+                .jsonPath("$.patients[4].id").isEqualTo(13)
+                .jsonPath("$.missingIds[0]").isEqualTo(99);
+
+        assertEquals(calls + 3, API_PATIENTS.getBatchCalls());
+    }
+
+    @Test
+    @DisplayName("Reads made by the gateway carry the client and session of their caller")
+    void getPatient_shouldForwardCallerIdentity() {
+        API_PATIENTS.addPatient(40, "Identified", 0);
+        API_PATIENTS.addPatient(41, "Identified", 0);
+
+        webTestClient.get().uri("/patient/40").header("X-Client-Id", "reader").header("X-Session-Id", "session-1")
+                .exchange()
+                .expectStatus().isOk();
+        assertEquals("reader", API_PATIENTS.getLastClientId());
+        assertEquals("session-1", API_PATIENTS.getLastSessionId());
+
+        webTestClient.post().uri("/patient/batch").header("X-Client-Id", "batcher").bodyValue(List.of(41))
+                .exchange()
+                .expectStatus().isOk();
+        assertEquals("batcher", API_PATIENTS.getLastClientId());
+        assertNull(API_PATIENTS.getLastSessionId());
+    }
+
+    @Test
+    @DisplayName("Other calls are forwarded with the response headers of api-patients")
+    void forward_shouldReturnResponseOfApiPatients() {
+        int calls = API_PATIENTS.getOtherCalls();
+
+        webTestClient.get().uri("/patient?size=2").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Next-Cursor", "next")
+                .expectBody().json("[]");
+
+        assertEquals(calls + 1, API_PATIENTS.getOtherCalls());
+    }
+
+    @Test
+    @DisplayName("Slow api-patients answer is a 504")
+    void getPatient_whenApiPatientsIsSlow_shouldReturnGatewayTimeout() {
+        API_PATIENTS.addPatient(20, "Slow", 0);
+        API_PATIENTS.setDelay(Duration.ofSeconds(4));
+
+        webTestClient.get().uri("/patient/20").exchange()
+                .expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    @DisplayName("Circuit opens once api-patients keeps failing, calls then fail at once")
+    void getPatient_whenApiPatientsFails_shouldOpenCircuit() {
+        API_PATIENTS.setFailureStatus(500);
+        int calls = API_PATIENTS.getPatientCalls();
+
+        for (int id = 30; id < 34; id++) {
+            webTestClient.get().uri("/patient/" + id).exchange()
+                    .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        webTestClient.get().uri("/patient/34").exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "60");
+
+        assertEquals(calls + 4, API_PATIENTS.getPatientCalls());
+    }
+}
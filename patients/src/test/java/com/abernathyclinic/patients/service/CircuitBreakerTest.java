@@ -0,0 +1,77 @@
+package com.abernathyclinic.patients.service;
+
+import com.abernathyclinic.patients.exceptions.CircuitOpenException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CircuitBreakerTest {
+    private final AtomicLong    nanoTime = new AtomicLong();
+    private final AtomicInteger calls    = new AtomicInteger();
+
+    /**
+     * Class under test: opens at 50% failures over the last 4 calls, once 2 are recorded, for 10 seconds
+     */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 4, 2, 50, Duration.ofSeconds(10),
+            error -> error instanceof IllegalStateException, nanoTime::get);
+
+    @Test
+    @DisplayName("Circuit opens at the failure rate threshold, then fails calls without making them")
+    void protect_shouldOpenAtFailureRateThreshold() {
+        StepVerifier.create(circuitBreaker.protect(succeeding())).expectNext("ok").verifyComplete();
+        StepVerifier.create(circuitBreaker.protect(failing())).verifyError(IllegalStateException.class);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        nanoTime.addAndGet(Duration.ofSeconds(4).toNanos());
+        StepVerifier.create(circuitBreaker.protect(succeeding()))
+                .verifyErrorSatisfies(error -> assertEquals(Duration.ofSeconds(6),
+                        ((CircuitOpenException) error).getRetryAfter()));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("Errors that are not failures do not open the circuit")
+    void protect_shouldIgnoreOtherErrors() {
+        for (int call = 0; call < 4; call++) {
+            StepVerifier.create(circuitBreaker.protect(Mono.error(new IllegalArgumentException())))
+                    .verifyError(IllegalArgumentException.class);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    @DisplayName("Trial call after the open duration closes the circuit if it succeeds, opens it again if it fails")
+    void protect_shouldTryOneCallAfterOpenDuration() {
+        StepVerifier.create(circuitBreaker.protect(failing())).verifyError(IllegalStateException.class);
+        StepVerifier.create(circuitBreaker.protect(failing())).verifyError(IllegalStateException.class);
+        nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        StepVerifier.create(circuitBreaker.protect(failing())).verifyError(IllegalStateException.class);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+        StepVerifier.create(circuitBreaker.protect(succeeding())).expectNext("ok").verifyComplete();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private Mono<String> succeeding() {
+        return Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            return "ok";
+        });
+    }
+
+    private Mono<String> failing() {
+        return Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("failure");
+        });
+    }
+}